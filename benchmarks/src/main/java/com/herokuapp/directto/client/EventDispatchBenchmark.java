@@ -0,0 +1,64 @@
+package com.herokuapp.directto.client;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.herokuapp.directto.client.EventSubscription.Event.POLLING;
+import static com.herokuapp.directto.client.EventSubscription.Event.UPLOAD_PROGRESS;
+import static com.herokuapp.directto.client.EventSubscription.Event.UPLOAD_START;
+
+/**
+ * Cost of announcing events, and of reporting upload progress from the copy loop
+ *
+ * @author Ryan Brainard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EventDispatchBenchmark {
+
+    @Param({"0", "1", "4"})
+    public int subscribers;
+
+    private EventSubscription subscription;
+    private DeployEvents events;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        subscription = new EventSubscription();
+        for (int i = 0; i < subscribers; i++) {
+            subscription.subscribe(POLLING, new EventSubscription.Subscriber() {
+                public void handle(EventSubscription.Event event) {
+                    blackhole.consume(event);
+                }
+            });
+            subscription.subscribe(UPLOAD_PROGRESS, new EventSubscription.DetailedSubscriber() {
+                public void handle(EventSubscription.Event event, EventDetails details) {
+                    blackhole.consume(details);
+                }
+            });
+        }
+        events = new DeployEvents(subscription, new ClientMetrics());
+        events.announce(UPLOAD_START);
+    }
+
+    @Benchmark
+    public void announce() {
+        subscription.announce(POLLING);
+    }
+
+    @Benchmark
+    public void announcePoll() {
+        events.announcePoll(1);
+    }
+
+    @Benchmark
+    public void uploadProgress() {
+        events.uploadProgress("war", 65536, 65536, 1 << 30);
+    }
+}
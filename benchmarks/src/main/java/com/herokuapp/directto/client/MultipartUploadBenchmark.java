@@ -0,0 +1,100 @@
+package com.herokuapp.directto.client;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding throughput of multipart upload bodies, without any network. Divide {@code fileSize} by the score for
+ * the time per upload. Output is written to a plain stream, so this measures the pooled-buffer copy path.
+ *
+ * @author Ryan Brainard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MultipartUploadBenchmark {
+
+    @Param({"1048576", "16777216"})
+    public int fileSize;
+
+    @Param({"identity", "gzip", "parallel-gzip"})
+    public String encoding;
+
+    private File file;
+    private Map<String, File> files;
+    private Map<String, ContentCodec> encodings;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkFiles.create("upload-benchmark", fileSize);
+        files = Collections.singletonMap("war", file);
+        if ("gzip".equals(encoding)) {
+            encodings = Collections.singletonMap("war", ContentCodecs.GZIP);
+        } else if ("parallel-gzip".equals(encoding)) {
+            encodings = Collections.singletonMap("war", ContentCodecs.parallelGzip());
+        } else {
+            encodings = Collections.emptyMap();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long writeTo() throws IOException {
+        final CountingOutputStream out = new CountingOutputStream();
+        new MultipartUpload(files, encodings, BufferPool.SHARED).writeTo(out);
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Semi-compressible file contents, so encoders do real work
+     */
+    static final class BenchmarkFiles {
+        static File create(String prefix, int size) throws IOException {
+            final File file = File.createTempFile(prefix, ".war");
+            file.deleteOnExit();
+            final Random random = new Random(42);
+            final byte[] block = new byte[64 * 1024];
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                for (int written = 0; written < size; written += block.length) {
+                    for (int i = 0; i < block.length; i++) {
+                        block[i] = (byte) (random.nextInt(16) + 'a');
+                    }
+                    out.write(block, 0, Math.min(block.length, size - written));
+                }
+            } finally {
+                out.close();
+            }
+            return file;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.models.DeployStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decoding a deploy status response, and of building the string map returned to callers
+ *
+ * @author Ryan Brainard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StatusDecodingBenchmark {
+
+    private final byte[] inProcess = bytes("{\"status\":\"inprocess\",\"message\":\"Building\"}");
+    private final byte[] success = bytes("{\"status\":\"success\",\"message\":\"Deployed v42\",\"release\":42,"
+            + "\"app\":\"benchmark\",\"pipeline\":\"war\",\"elapsed\":12.5,\"cached\":true}");
+
+    @Benchmark
+    public boolean parseInProcess() throws IOException {
+        return DeployStatus.parse(inProcess).isInProcess();
+    }
+
+    @Benchmark
+    public boolean parseSuccess() throws IOException {
+        return DeployStatus.parse(success).isSuccess();
+    }
+
+    @Benchmark
+    public int parseSuccessAsMap() throws IOException {
+        return DeployStatus.parse(success).asMap().size();
+    }
+
+    private static byte[] bytes(String json) {
+        try {
+            return json.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.ClientResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads through {@link DirectToHerokuClient#upload(DeployRequest)} to an in-process {@link DirectToStubServer}
+ * that discards the body, to compare transports over loopback.
+ *
+ * @author Ryan Brainard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UploadBenchmark {
+
+    @Param({"16777216"})
+    public int fileSize;
+
+    @Param({"url-connection", "pooled"})
+    public String transport;
+
+    private DirectToStubServer server;
+    private PooledTransport pooledTransport;
+    private DirectToHerokuClient client;
+    private DeployRequest request;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new DirectToStubServer().setDiscardUploads(true).start();
+        final DirectToHerokuClient.Builder builder = server.newClientBuilder();
+        if ("pooled".equals(transport)) {
+            pooledTransport = new PooledTransport();
+            builder.setTransport(pooledTransport);
+        }
+        client = builder.build();
+        file = MultipartUploadBenchmark.BenchmarkFiles.create("upload-benchmark", fileSize);
+        request = new DeployRequest("war", "benchmark", Collections.singletonMap("war", file));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pooledTransport != null) {
+            pooledTransport.shutdown();
+        }
+        server.stop();
+        file.delete();
+    }
+
+    @Benchmark
+    public int upload() {
+        final ClientResponse response = client.upload(request);
+        response.close();
+        return response.getStatus();
+    }
+}
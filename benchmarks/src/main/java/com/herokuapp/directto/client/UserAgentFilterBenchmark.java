@@ -0,0 +1,51 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandler;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.core.header.InBoundHeaders;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of {@link UserAgentFilter}, against a handler that answers without any I/O
+ *
+ * @author Ryan Brainard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UserAgentFilterBenchmark {
+
+    private WebResource unfiltered;
+    private WebResource filtered;
+
+    @Setup
+    public void setUp() {
+        final Client client = new Client(new ClientHandler() {
+            public ClientResponse handle(ClientRequest request) {
+                return new ClientResponse(200, new InBoundHeaders(), new ByteArrayInputStream(new byte[0]), null);
+            }
+        });
+        unfiltered = client.resource("http://localhost/deploys/1");
+        filtered = client.resource("http://localhost/deploys/1");
+        filtered.addFilter(new UserAgentFilter("benchmark/1.0"));
+    }
+
+    @Benchmark
+    public ClientResponse baseline() {
+        return unfiltered.get(ClientResponse.class);
+    }
+
+    @Benchmark
+    public ClientResponse userAgentFilter() {
+        return filtered.get(ClientResponse.class);
+    }
+}
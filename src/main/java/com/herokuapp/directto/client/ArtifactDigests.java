@@ -0,0 +1,101 @@
+package com.herokuapp.directto.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SHA-256 digests identifying the contents of a deploy, one per file key, as kept by {@link DigestCache} and
+ * recorded by {@link DeployJournal}.
+ * <p/>
+ * A file's digest covers its bytes. A directory's digest covers the paths, sizes and digests of the files selected
+ * by its {@link DirectorySource}, in archive order, so it changes exactly when the archive contents would.
+ * Content encodings are not included; they change how a file is sent, not what is deployed.
+ *
+ * @author Ryan Brainard
+ */
+final class ArtifactDigests {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ArtifactDigests() {
+    }
+
+    /**
+     * Source of the digests of individual files, e.g. reading them or taking them from a cache
+     */
+    interface FileDigests {
+        String digest(File file) throws IOException;
+    }
+
+    /**
+     * @return hex digests by file key, sorted by key, reading every file
+     */
+    static Map<String, String> compute(DeployRequest deployRequest) throws IOException {
+        final DeployRequest source = deployRequest.getArtifactSource();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final FileDigests reading = new FileDigests() {
+            public String digest(File file) throws IOException {
+                return ArtifactDigests.digest(file, buffer);
+            }
+        };
+        final Map<String, String> digests = new TreeMap<String, String>();
+        for (Map.Entry<String, File> file : source.getFiles().entrySet()) {
+            digests.put(file.getKey(), reading.digest(file.getValue()));
+        }
+        for (Map.Entry<String, DirectorySource> directory : source.getDirectories().entrySet()) {
+            digests.put(directory.getKey(), digest(directory.getValue(), reading));
+        }
+        return digests;
+    }
+
+    static String digest(File file, byte[] buffer) throws IOException {
+        final MessageDigest digest = newDigest();
+        update(digest, file, buffer);
+        return hex(digest.digest());
+    }
+
+    /**
+     * @return digest over the paths, sizes and digests of the directory's entries
+     */
+    static String digest(DirectorySource directory, FileDigests files) throws IOException {
+        final MessageDigest digest = newDigest();
+        for (DirectorySource.Entry entry : directory.listEntries()) {
+            digest.update((entry.path + "\u0000" + entry.file.length() + "\u0000" + files.digest(entry.file) + "\n").getBytes("UTF-8"));
+        }
+        return hex(digest.digest());
+    }
+
+    static void update(MessageDigest digest, File file, byte[] buffer) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
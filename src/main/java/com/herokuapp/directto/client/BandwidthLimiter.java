@@ -0,0 +1,206 @@
+package com.herokuapp.directto.client;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shapes upload traffic to a total rate in bytes per second with a token bucket, so that concurrent deploys do not
+ * saturate the uplink. The rate can be changed at any time with {@link #setBytesPerSecond(long)} and applies within
+ * a fraction of a second to uploads already running.
+ * <p/>
+ * Uploads take bandwidth in small grants, served in arrival order, so concurrent uploads share the rate evenly and an
+ * upload that is not sending, e.g. while encoding or waiting on the server, leaves its share to the others.
+ * Bytes are counted as sent on the wire, i.e. after any content encoding. Uploads through a limiter are copied through
+ * a buffer instead of with {@code FileChannel.transferTo}.
+ * <p/>
+ * Share one limiter between clients with {@link DirectToHerokuClient.Builder#setBandwidthLimiter(BandwidthLimiter)}
+ * to apply the rate across all of them.
+ *
+ * @author Ryan Brainard
+ */
+public final class BandwidthLimiter {
+
+    private static final int GRANT_SIZE = 16 * 1024;
+    private static final long MAX_WAIT = 50;
+
+    private final ReentrantLock turn = new ReentrantLock(true);
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final LatencyHistogram throttleTime = new LatencyHistogram();
+    private volatile long bytesPerSecond;
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @param bytesPerSecond total upload rate; 0 for no limit
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        setBytesPerSecond(bytesPerSecond);
+    }
+
+    /**
+     * Changes the total upload rate, including for uploads already running
+     *
+     * @param bytesPerSecond total upload rate; 0 for no limit
+     */
+    public BandwidthLimiter setBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Rate must not be negative");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Uploads currently sending through this limiter
+     */
+    public int getActiveUploads() {
+        return activeUploads.get();
+    }
+
+    /**
+     * Bytes sent through this limiter, after any content encoding
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Total time each upload waited for bandwidth, in microseconds
+     */
+    public LatencyHistogram getThrottleTime() {
+        return throttleTime;
+    }
+
+    /**
+     * Registers an upload, which must be {@link Upload#finish() finished} when done
+     *
+     * @param cancellation checked while waiting for bandwidth, if given
+     */
+    Upload startUpload(DeployCancellation cancellation) {
+        activeUploads.incrementAndGet();
+        return new Upload(cancellation);
+    }
+
+    /**
+     * Takes one grant of bandwidth, waiting for earlier callers first
+     *
+     * @return nanoseconds spent waiting
+     */
+    private long take(int bytes, DeployCancellation cancellation) throws InterruptedIOException {
+        if (bytesPerSecond <= 0) {
+            return 0;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            while (!turn.tryLock(MAX_WAIT, TimeUnit.MILLISECONDS)) {
+                check(cancellation);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for upload bandwidth");
+        }
+        try {
+            while (true) {
+                final long rate = bytesPerSecond;
+                if (rate <= 0) {
+                    break;
+                }
+                final long now = System.nanoTime();
+                final double burst = Math.max(GRANT_SIZE, rate / 10.0);
+                tokens = Math.min(burst, tokens + (now - lastRefill) * (rate / 1e9));
+                lastRefill = now;
+                if (tokens >= bytes) {
+                    tokens -= bytes;
+                    break;
+                }
+
+                check(cancellation);
+                try {
+                    Thread.sleep(Math.max(1, Math.min(MAX_WAIT, (long) Math.ceil((bytes - tokens) * 1000 / rate))));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for upload bandwidth");
+                }
+            }
+        } finally {
+            turn.unlock();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void check(DeployCancellation cancellation) throws InterruptedIOException {
+        if (cancellation != null) {
+            cancellation.checkIO();
+        }
+    }
+
+    /**
+     * Bandwidth taken by one upload, used from a single thread
+     */
+    final class Upload {
+        private final DeployCancellation cancellation;
+        private long waited;
+        private boolean finished;
+
+        private Upload(DeployCancellation cancellation) {
+            this.cancellation = cancellation;
+        }
+
+        /**
+         * Blocks until the bytes may be sent
+         */
+        void acquire(long bytes) throws InterruptedIOException {
+            while (bytes > 0) {
+                final int grant = (int) Math.min(bytes, GRANT_SIZE);
+                waited += take(grant, cancellation);
+                bytesSent.addAndGet(grant);
+                bytes -= grant;
+            }
+        }
+
+        /**
+         * @return a stream that acquires bandwidth for every byte written before passing it on
+         */
+        OutputStream wrap(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    acquire(1);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    while (len > 0) {
+                        final int slice = Math.min(len, GRANT_SIZE);
+                        acquire(slice);
+                        out.write(b, off, slice);
+                        off += slice;
+                        len -= slice;
+                    }
+                }
+            };
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                activeUploads.decrementAndGet();
+                throttleTime.record(waited / 1000);
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.herokuapp.directto.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static com.herokuapp.directto.client.DeploymentException.Reason;
+
+/**
+ * Deploys the same payload with the same pipeline to many apps, e.g. regional or tenant copies of one app.
+ * <p/>
+ * The payload and pipeline are verified once for the whole batch. Parts that are encoded with a {@link ContentCodec}
+ * or archived from a {@link DirectorySource} are encoded once into a temporary directory, which is removed when the
+ * batch completes, and each upload streams the result as is. Resumable uploads encode each chunk on its own, so
+ * their parts are encoded per upload as usual.
+ * <p/>
+ * Deploys run on the client's {@link DirectToHerokuClient#deployAsync(DeployRequest)}, at most
+ * {@code maxConcurrentDeploys} at a time, in the order the apps are given. A failed deploy does not stop the others;
+ * it is reported in that app's {@link Result}.
+ *
+ * @author Ryan Brainard
+ */
+public final class BatchDeployer {
+
+    private final DirectToHerokuClient client;
+    private final int maxConcurrentDeploys;
+
+    public BatchDeployer(DirectToHerokuClient client, int maxConcurrentDeploys) {
+        this.client = client;
+        this.maxConcurrentDeploys = Math.max(1, maxConcurrentDeploys);
+    }
+
+    /**
+     * Deploys to each app and waits for all deploys to complete.
+     *
+     * @param template pipeline, payload and settings for every deploy; its app name is not used
+     * @param appNames apps to deploy to; an app listed more than once is deployed once
+     * @return results by app name, in the order given
+     * @throws VerificationException if the payload, pipeline or an app name fails verification, before anything is uploaded
+     * @throws DeploymentException   if the payload cannot be encoded, or the calling thread is interrupted,
+     *                               in which case deploys in flight are cancelled and no more are started
+     */
+    public Map<String, Result> deploy(DeployRequest template, Collection<String> appNames) throws VerificationException {
+        final List<String> apps = new ArrayList<String>(new LinkedHashSet<String>(appNames));
+        client.verify(template, apps);
+
+        final File workDir = template.isResumableUpload() ? null : createWorkDir();
+        try {
+            final DeployRequest prepared = workDir != null ? prepare(template, workDir) : template;
+            final Map<String, Result> results = new LinkedHashMap<String, Result>();
+            for (String app : apps) {
+                results.put(app, new Result(app));
+            }
+            new Batch(prepared, results.values()).run();
+            return results;
+        } finally {
+            delete(workDir);
+        }
+    }
+
+    /**
+     * @return a copy of the template with its encoded and archived parts replaced by pre-encoded files in the work directory
+     */
+    private static DeployRequest prepare(DeployRequest template, File workDir) {
+        final DeployRequest prepared = template.forApp(template.getAppName());
+        prepared.setArtifactSource(template);
+        int index = 0;
+        for (MultipartUpload.Part part : new MultipartUpload(template, null, null, null, null).getParts()) {
+            if (!part.isDirectory() && part.getCodec() == null) {
+                continue;
+            }
+
+            final File partDir = new File(workDir, "part" + index++);
+            final File file = new File(partDir, part.getFileName());
+            try {
+                if (!partDir.mkdir()) {
+                    throw new IOException("Could not create " + partDir);
+                }
+                final OutputStream out = new FileOutputStream(file);
+                try {
+                    part.writeContentTo(out);
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                throw new DeploymentException(Reason.LOCAL_IO, "Could not encode " + part.getName() + ": " + e.getMessage());
+            }
+
+            prepared.setDirectory(part.getName(), null);
+            prepared.getFiles().put(part.getName(), file);
+            prepared.setContentEncoding(part.getName(),
+                    part.getCodec() != null ? ContentCodecs.preEncoded(part.getCodec().getContentEncoding()) : null);
+        }
+        return prepared;
+    }
+
+    private static File createWorkDir() {
+        try {
+            final File workDir = File.createTempFile("direct-to-batch", "");
+            if (!workDir.delete() || !workDir.mkdir()) {
+                throw new IOException("Could not create " + workDir);
+            }
+            return workDir;
+        } catch (IOException e) {
+            throw new DeploymentException(Reason.LOCAL_IO, "Could not create batch work directory: " + e.getMessage());
+        }
+    }
+
+    private static void delete(File file) {
+        if (file == null) {
+            return;
+        }
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Starts the next deploy each time one completes.
+     * Deploys that complete while a thread is already starting others hand it their slot instead of starting
+     * the next one themselves, so deploys that fail as soon as they are started do not recurse through listeners.
+     */
+    private final class Batch {
+        private final DeployRequest template;
+        private final Iterator<Result> pending;
+        private final CountDownLatch done;
+        private final List<DeployFuture> started = new ArrayList<DeployFuture>();
+        private boolean stopped;
+        private int slots;
+        private boolean starting;
+
+        Batch(DeployRequest template, Collection<Result> results) {
+            this.template = template;
+            this.pending = results.iterator();
+            this.done = new CountDownLatch(results.size());
+        }
+
+        void run() {
+            startNext(maxConcurrentDeploys);
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                stop();
+                Thread.currentThread().interrupt();
+                throw new DeploymentException(Reason.CANCELLED, "Batch deploy interrupted");
+            }
+        }
+
+        private void startNext(int freed) {
+            synchronized (this) {
+                slots += freed;
+                if (starting) {
+                    return;
+                }
+                starting = true;
+            }
+
+            while (true) {
+                final Result result;
+                synchronized (this) {
+                    if (stopped || slots == 0 || !pending.hasNext()) {
+                        starting = false;
+                        return;
+                    }
+                    slots--;
+                    result = pending.next();
+                }
+                start(result);
+            }
+        }
+
+        private void start(final Result result) {
+            result.startTime = System.currentTimeMillis();
+            DeployFuture deploy;
+            try {
+                deploy = client.deployAsync(template.forApp(result.appName));
+            } catch (RuntimeException e) {
+                deploy = new DeployFuture();
+                deploy.fail(e);
+            }
+            synchronized (this) {
+                started.add(deploy);
+            }
+
+            final DeployFuture future = deploy;
+            future.addListener(new Runnable() {
+                public void run() {
+                    result.complete(future);
+                    done.countDown();
+                    startNext(1);
+                }
+            });
+        }
+
+        private void stop() {
+            final List<DeployFuture> toCancel;
+            synchronized (this) {
+                stopped = true;
+                toCancel = new ArrayList<DeployFuture>(started);
+            }
+            for (DeployFuture future : toCancel) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Outcome of the deploy to one app in a batch
+     */
+    public static final class Result {
+        private final String appName;
+        private volatile long startTime;
+        private volatile long duration;
+        private volatile Map<String, String> result;
+        private volatile Throwable failure;
+
+        Result(String appName) {
+            this.appName = appName;
+        }
+
+        private void complete(DeployFuture future) {
+            duration = System.currentTimeMillis() - startTime;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } catch (CancellationException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // not reached; the deploy is already complete
+            }
+        }
+
+        public String getAppName() {
+            return appName;
+        }
+
+        public boolean isSuccess() {
+            return result != null;
+        }
+
+        /**
+         * @return results from the remote service, as from {@link DirectToHerokuClient#deploy(DeployRequest)}, or null if the deploy failed
+         */
+        public Map<String, String> getResult() {
+            return result;
+        }
+
+        /**
+         * @return why the deploy failed, usually a {@link DeploymentException}, or null if it succeeded
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return when the deploy started, in milliseconds since the epoch
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return milliseconds from the start of the deploy until it completed, including upload and polling
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return appName + ": " + (isSuccess() ? "success" : String.valueOf(failure)) + " in " + duration + "ms";
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.herokuapp.directto.client;
+
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed number of fixed-size buffers shared by all uploads for copying file contents.
+ * <p/>
+ * Callers wait until a buffer is available, so the buffers used to copy files stay at {@code bufferSize * maxBuffers}
+ * no matter how large the artifacts are or how many uploads run at once. Encoded and archived parts also buffer the
+ * output of their encoder or archiver in a buffer of the same size of their own while they are being sent, so they
+ * are not covered by the bound.
+ * <p/>
+ * A buffer is held while its upload writes to a slow connection or waits for bandwidth. A caller waiting for a buffer
+ * gives up once its deploy is cancelled or passes its deadline, rather than waiting for another upload to finish.
+ *
+ * @author Ryan Brainard
+ */
+final class BufferPool {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    static final int DEFAULT_MAX_BUFFERS = 32;
+
+    private static final long WAIT_SLICE = 50;
+
+    static final BufferPool SHARED = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BUFFERS);
+
+    private final int bufferSize;
+    private final Semaphore available;
+    private final LinkedList<byte[]> idle = new LinkedList<byte[]>();
+
+    BufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.available = new Semaphore(maxBuffers, true);
+    }
+
+    /**
+     * @param cancellation checked while waiting for a buffer; may be null
+     * @throws InterruptedIOException if the deploy was cancelled or passed its deadline while waiting
+     */
+    byte[] acquire(DeployCancellation cancellation) throws InterruptedException, InterruptedIOException {
+        while (!available.tryAcquire(WAIT_SLICE, TimeUnit.MILLISECONDS)) {
+            if (cancellation != null) {
+                cancellation.checkIO();
+            }
+        }
+        synchronized (idle) {
+            if (!idle.isEmpty()) {
+                return idle.removeFirst();
+            }
+        }
+        return new byte[bufferSize];
+    }
+
+    void release(byte[] buffer) {
+        synchronized (idle) {
+            idle.addFirst(buffer);
+        }
+        available.release();
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,157 @@
+package com.herokuapp.directto.client;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and counters for everything a {@link DirectToHerokuClient} does, accumulated since it was built.
+ * Read them at any time with {@link DirectToHerokuClient#getMetrics()}, or have them pushed periodically to a
+ * {@link MetricsExporter}.
+ *
+ * @author Ryan Brainard
+ */
+public final class ClientMetrics {
+
+    /**
+     * Phases of a deploy. Only phases that complete successfully are recorded.
+     */
+    public static enum Phase {
+        /** {@link DirectToHerokuClient#verify(DeployRequest)} as a whole */
+        VERIFY,
+        /** Getting pipeline metadata during verification, including cache hits */
+        PIPELINE_FETCH,
+        /** Sending the files until the server accepts the deploy */
+        UPLOAD,
+        /** From the upload being accepted until the first status response */
+        FIRST_POLL,
+        /** From the upload being accepted until the deploy completes */
+        POLLING,
+        /** A deploy as a whole, excluding verification */
+        DEPLOY
+    }
+
+    /**
+     * Types of HTTP calls made to the server
+     */
+    public static enum Call {
+        PIPELINE_NAMES,
+        PIPELINE,
+        PREFLIGHT,
+        UPLOAD,
+        UPLOAD_CREATE,
+        UPLOAD_STATUS,
+        UPLOAD_CHUNK,
+        UPLOAD_COMMIT,
+        STATUS
+    }
+
+    private final Map<Phase, LatencyHistogram> phases = new EnumMap<Phase, LatencyHistogram>(Phase.class);
+    private final Map<Call, LatencyHistogram> calls = new EnumMap<Call, LatencyHistogram>(Call.class);
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong skippedDeploys = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> failures = new ConcurrentHashMap<String, AtomicLong>();
+
+    ClientMetrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new LatencyHistogram());
+        }
+        for (Call call : Call.values()) {
+            calls.put(call, new LatencyHistogram());
+        }
+    }
+
+    public LatencyHistogram getPhaseLatency(Phase phase) {
+        return phases.get(phase);
+    }
+
+    public LatencyHistogram getCallLatency(Call call) {
+        return calls.get(call);
+    }
+
+    /**
+     * Bytes of file contents uploaded by completed uploads, before any content encoding
+     */
+    public long getBytesUploaded() {
+        return bytesUploaded.get();
+    }
+
+    /**
+     * Status responses received, including streamed ones
+     */
+    public long getPolls() {
+        return polls.get();
+    }
+
+    /**
+     * Requests repeated after a failure or a {@code Retry-After} response
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Deploys skipped because their files were unchanged since the last deploy
+     */
+    public long getSkippedDeploys() {
+        return skippedDeploys.get();
+    }
+
+    /**
+     * Failed verifications and deploys, counted by the {@link DeploymentException.Reason} of deployment exceptions,
+     * e.g. {@code NOT_ACCEPTED} or {@code POLLING_TIMEOUT}, and by the simple name of the class of other exceptions,
+     * e.g. {@code VerificationException}
+     */
+    public Map<String, Long> getFailures() {
+        final Map<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> failure : failures.entrySet()) {
+            snapshot.put(failure.getKey(), failure.getValue().get());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    void recordPhase(Phase phase, long micros) {
+        phases.get(phase).record(micros);
+    }
+
+    void recordCall(Call call, long micros) {
+        calls.get(call).record(micros);
+    }
+
+    void addBytesUploaded(long bytes) {
+        bytesUploaded.addAndGet(bytes);
+    }
+
+    void recordPoll() {
+        polls.incrementAndGet();
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    void recordSkippedDeploy() {
+        skippedDeploys.incrementAndGet();
+    }
+
+    void recordFailure(Throwable failure) {
+        final String kind = failure instanceof DeploymentException
+                ? ((DeploymentException) failure).getReason().name()
+                : failure.getClass().getSimpleName();
+        AtomicLong counter = failures.get(kind);
+        if (counter == null) {
+            final AtomicLong newCounter = new AtomicLong();
+            counter = failures.putIfAbsent(kind, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+}
@@ -0,0 +1,25 @@
+package com.herokuapp.directto.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes a file part while it is streamed to the server, e.g. to compress it.
+ * Set per file key with {@link DeployRequest#setContentEncoding(String, ContentCodec)}.
+ *
+ * @author Ryan Brainard
+ * @see ContentCodecs
+ */
+public interface ContentCodec {
+
+    /**
+     * Value sent in the part's {@code Content-Encoding} header, e.g. {@code gzip}
+     */
+    String getContentEncoding();
+
+    /**
+     * Wraps the part's output stream. Closing the returned stream must write any remaining encoded bytes;
+     * the underlying request stream is shielded from the close.
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+}
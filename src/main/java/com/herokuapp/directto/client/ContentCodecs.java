@@ -0,0 +1,105 @@
+package com.herokuapp.directto.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Built-in {@link ContentCodec}s
+ *
+ * @author Ryan Brainard
+ */
+public final class ContentCodecs {
+
+    public static final int DEFAULT_PARALLEL_BLOCK_SIZE = 1024 * 1024;
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    static final ExecutorService sharedCompressionExecutor =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory("direct-to-compression"));
+
+    /**
+     * Single-threaded gzip
+     */
+    public static final ContentCodec GZIP = new ContentCodec() {
+        public String getContentEncoding() {
+            return "gzip";
+        }
+
+        public OutputStream encode(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, STREAM_BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * Single-threaded zlib deflate
+     */
+    public static final ContentCodec DEFLATE = new ContentCodec() {
+        public String getContentEncoding() {
+            return "deflate";
+        }
+
+        public OutputStream encode(OutputStream out) throws IOException {
+            return new DeflaterOutputStream(out);
+        }
+    };
+
+    private ContentCodecs() {
+    }
+
+    /**
+     * Marks a part whose file is already encoded, e.g. once for many uploads: the {@code Content-Encoding} header is
+     * sent and the file is streamed as is
+     */
+    static ContentCodec preEncoded(String contentEncoding) {
+        return new PreEncoded(contentEncoding);
+    }
+
+    static final class PreEncoded implements ContentCodec {
+        private final String contentEncoding;
+
+        PreEncoded(String contentEncoding) {
+            this.contentEncoding = contentEncoding;
+        }
+
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        public OutputStream encode(OutputStream out) {
+            return out;
+        }
+    }
+
+    /**
+     * Gzip that compresses blocks of {@link #DEFAULT_PARALLEL_BLOCK_SIZE} bytes on all available cores.
+     *
+     * @see #parallelGzip(int, int)
+     */
+    public static ContentCodec parallelGzip() {
+        return parallelGzip(DEFAULT_PARALLEL_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Gzip that compresses fixed-size blocks concurrently and writes each one as a separate gzip member, in order.
+     * Concatenated members are a valid gzip stream (RFC 1952, section 2.2), so the server decodes it as usual.
+     * Worthwhile for large parts on multi-core machines; small parts compress slightly better with {@link #GZIP}.
+     *
+     * @param blockSize   bytes of input per block
+     * @param parallelism maximum number of blocks compressed at once, which also bounds buffered memory
+     */
+    public static ContentCodec parallelGzip(final int blockSize, final int parallelism) {
+        return new ContentCodec() {
+            public String getContentEncoding() {
+                return "gzip";
+            }
+
+            public OutputStream encode(OutputStream out) throws IOException {
+                return new ParallelGzipOutputStream(out, sharedCompressionExecutor, blockSize, parallelism);
+            }
+        };
+    }
+}
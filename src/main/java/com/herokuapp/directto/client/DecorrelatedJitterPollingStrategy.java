@@ -0,0 +1,32 @@
+package com.herokuapp.directto.client;
+
+import java.util.Random;
+
+/**
+ * Picks each interval at random between the base interval and three times the previous one, up to a maximum.
+ * Spreads out polls from many deploys started at the same time, while still backing off for long builds.
+ *
+ * @author Ryan Brainard
+ */
+public class DecorrelatedJitterPollingStrategy implements PollingStrategy {
+
+    private final long baseInterval;
+    private final long maxInterval;
+    private final Random random;
+
+    public DecorrelatedJitterPollingStrategy(long baseInterval, long maxInterval) {
+        this(baseInterval, maxInterval, new Random());
+    }
+
+    DecorrelatedJitterPollingStrategy(long baseInterval, long maxInterval, Random random) {
+        this.baseInterval = baseInterval;
+        this.maxInterval = maxInterval;
+        this.random = random;
+    }
+
+    public long nextInterval(int attempt, long previousInterval) {
+        final long upper = Math.max(baseInterval, Math.min(maxInterval, 3 * Math.max(previousInterval, baseInterval)));
+        final long interval = baseInterval + (long) (random.nextDouble() * (upper - baseInterval));
+        return Math.min(interval, maxInterval);
+    }
+}
@@ -0,0 +1,196 @@
+package com.herokuapp.directto.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.herokuapp.directto.client.DeploymentException.Reason;
+
+/**
+ * Cancellation state and deadline for a single deploy, shared by its upload and polling steps.
+ * <p/>
+ * Copy loops and polls check it between steps. To stop a step blocked on the network, transports report each
+ * connection they open with {@link #connectionOpened(Closeable)}; the deploy attached to the current thread
+ * closes it when cancelled, which fails the blocked read or write and keeps the connection out of any pool.
+ * A thread makes one request at a time, so only the latest connection of each thread is tracked; a hedged call
+ * attaches the deploy on each thread it sends an attempt from.
+ *
+ * @author Ryan Brainard
+ */
+final class DeployCancellation {
+
+    private static final ThreadLocal<DeployCancellation> attached = new ThreadLocal<DeployCancellation>();
+
+    private final long timeout;
+    private final long deadline;
+    private String reason;
+    private final Map<Thread, Closeable> connections = new HashMap<Thread, Closeable>();
+
+    /**
+     * @param timeout milliseconds from now until the deploy expires; 0 for no deadline
+     */
+    DeployCancellation(long timeout) {
+        this.timeout = timeout;
+        this.deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+    }
+
+    /**
+     * Makes this deploy the one whose connections are tracked on the current thread
+     *
+     * @return the previously attached deploy, to be restored with {@link #detach(DeployCancellation)}
+     */
+    DeployCancellation attach() {
+        final DeployCancellation previous = attached.get();
+        attached.set(this);
+        return previous;
+    }
+
+    void detach(DeployCancellation previous) {
+        synchronized (this) {
+            connections.remove(Thread.currentThread());
+        }
+        if (previous != null) {
+            attached.set(previous);
+        } else {
+            attached.remove();
+        }
+    }
+
+    /**
+     * @return the deploy attached to the current thread, or null
+     */
+    static DeployCancellation current() {
+        return attached.get();
+    }
+
+    /**
+     * Called by transports on the requesting thread for each connection opened
+     */
+    static void connectionOpened(Closeable connection) {
+        final DeployCancellation cancellation = attached.get();
+        if (cancellation != null) {
+            cancellation.track(connection);
+        }
+    }
+
+    private void track(Closeable connection) {
+        synchronized (this) {
+            if (reason == null) {
+                connections.put(Thread.currentThread(), connection);
+                return;
+            }
+        }
+        close(connection);
+    }
+
+    /**
+     * Stops the deploy, closing its current connections
+     *
+     * @return false if it was already cancelled
+     */
+    boolean cancel(String reason) {
+        final Collection<Closeable> toClose;
+        synchronized (this) {
+            if (this.reason != null) {
+                return false;
+            }
+            this.reason = reason;
+            toClose = takeConnections();
+        }
+        close(toClose);
+        return true;
+    }
+
+    /**
+     * Closes the current connections without cancelling the deploy, failing reads blocked on them
+     */
+    void closeConnections() {
+        final Collection<Closeable> toClose;
+        synchronized (this) {
+            toClose = takeConnections();
+        }
+        close(toClose);
+    }
+
+    private Collection<Closeable> takeConnections() {
+        final Collection<Closeable> taken = new ArrayList<Closeable>(connections.values());
+        connections.clear();
+        return taken;
+    }
+
+    /**
+     * Cancels the deploy for passing its deadline
+     */
+    boolean expire() {
+        return cancel("Deploy timed out after " + timeout + "ms");
+    }
+
+    boolean isCancelled() {
+        if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+            expire();
+        }
+        synchronized (this) {
+            return reason != null;
+        }
+    }
+
+    synchronized String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return milliseconds until the deadline, or {@link Long#MAX_VALUE} without one
+     */
+    long remaining() {
+        return deadline > 0 ? Math.max(0, deadline - System.currentTimeMillis()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @throws DeploymentException if the deploy was cancelled or has passed its deadline
+     */
+    void check() {
+        if (isCancelled()) {
+            throw new DeploymentException(Reason.CANCELLED, getReason());
+        }
+    }
+
+    /**
+     * Like {@link #check()}, for steps that can only fail with an {@link IOException}
+     */
+    void checkIO() throws InterruptedIOException {
+        if (isCancelled()) {
+            throw new InterruptedIOException(getReason());
+        }
+    }
+
+    /**
+     * @return a {@link DeploymentException} for the cancellation in place of a failure it caused,
+     *         such as a closed connection; otherwise the failure itself
+     */
+    RuntimeException translate(RuntimeException failure) {
+        if (failure instanceof DeploymentException || !isCancelled()) {
+            return failure;
+        }
+        return new DeploymentException(Reason.CANCELLED, getReason());
+    }
+
+    private static void close(Collection<Closeable> connections) {
+        for (Closeable connection : connections) {
+            close(connection);
+        }
+    }
+
+    private static void close(Closeable connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // swallow
+        } catch (RuntimeException e) {
+            // swallow
+        }
+    }
+}
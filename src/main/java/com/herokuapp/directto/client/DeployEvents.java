@@ -0,0 +1,170 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.EventSubscription.Event;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static com.herokuapp.directto.client.EventSubscription.Event.*;
+
+/**
+ * Announces the events of a single deploy with their details: phase timings, rate-limited upload progress
+ * and throughput, and poll attempt numbers. Phase timings and counters are also recorded in the client's {@link ClientMetrics}.
+ *
+ * @author Ryan Brainard
+ */
+final class DeployEvents {
+
+    private final EventSubscription subscription;
+    private final ClientMetrics metrics;
+    private final Map<Event, Long> phaseStarts = new EnumMap<Event, Long>(Event.class);
+    private final boolean progressSubscribed;
+    private final long progressInterval;
+
+    private long uploadBytes;
+    private long uploadTotal;
+    private long lastProgressTime;
+    private long lastProgressBytes;
+    private boolean polled;
+
+    DeployEvents(EventSubscription subscription, ClientMetrics metrics) {
+        this.subscription = subscription;
+        this.metrics = metrics;
+        this.progressSubscribed = subscription.hasSubscribers(UPLOAD_PROGRESS);
+        this.progressInterval = subscription.getProgressInterval();
+    }
+
+    void announce(Event event) {
+        final long now = System.currentTimeMillis();
+        final Event phaseStart = phaseStartOf(event);
+        if (phaseStart == event) {
+            phaseStarts.put(event, now);
+            if (event == UPLOAD_START) {
+                uploadBytes = 0;
+                lastProgressTime = now;
+                lastProgressBytes = 0;
+            }
+        } else {
+            record(event, now);
+        }
+        if (!subscription.hasSubscribers(event)) {
+            return;
+        }
+
+        if (event == UPLOAD_END) {
+            final long elapsed = phaseElapsed(event, now);
+            subscription.announce(event, new EventDetails(event, now, elapsed, null, uploadBytes, uploadTotal, 0, throughput(uploadBytes, elapsed), 0));
+        } else {
+            subscription.announce(event, new EventDetails(event, now, phaseElapsed(event, now), null, 0, 0, 0, 0, 0));
+        }
+    }
+
+    void announcePoll(int attempt) {
+        if (subscription.hasSubscribers(POLLING)) {
+            final long now = System.currentTimeMillis();
+            subscription.announce(POLLING, new EventDetails(POLLING, now, phaseElapsed(POLLING, now), null, 0, 0, 0, 0, attempt));
+        }
+    }
+
+    /**
+     * Records a status response, polled or streamed
+     */
+    void pollResponded() {
+        metrics.recordPoll();
+        if (!polled) {
+            polled = true;
+            metrics.recordPhase(ClientMetrics.Phase.FIRST_POLL, phaseElapsed(POLL_START, System.currentTimeMillis()) * 1000);
+        }
+    }
+
+    void retried() {
+        metrics.recordRetry();
+    }
+
+    void failed(Throwable failure) {
+        metrics.recordFailure(failure);
+    }
+
+    /**
+     * Total bytes of all parts to be uploaded, if known
+     */
+    void setUploadTotal(long uploadTotal) {
+        this.uploadTotal = uploadTotal;
+    }
+
+    /**
+     * Records bytes sent for a file part, announcing {@link Event#UPLOAD_PROGRESS} at most once per progress interval.
+     * Cheap enough to call for every buffer written.
+     */
+    void uploadProgress(String fileKey, long transferred, long partBytes, long partTotal) {
+        uploadBytes += transferred;
+        if (!progressSubscribed) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final long sinceLast = now - lastProgressTime;
+        if (sinceLast < progressInterval) {
+            return;
+        }
+
+        final double instantaneous = throughput(uploadBytes - lastProgressBytes, sinceLast);
+        lastProgressTime = now;
+        lastProgressBytes = uploadBytes;
+        final long elapsed = phaseElapsed(UPLOAD_PROGRESS, now);
+        subscription.announce(UPLOAD_PROGRESS, new EventDetails(UPLOAD_PROGRESS, now, elapsed, fileKey, partBytes, partTotal,
+                instantaneous, throughput(uploadBytes, elapsed), 0));
+    }
+
+    long getUploadBytes() {
+        return uploadBytes;
+    }
+
+    private void record(Event event, long now) {
+        switch (event) {
+            case DEPLOY_PRE_VERIFICATION_END:
+                metrics.recordPhase(ClientMetrics.Phase.VERIFY, phaseElapsed(event, now) * 1000);
+                break;
+            case UPLOAD_END:
+                metrics.recordPhase(ClientMetrics.Phase.UPLOAD, phaseElapsed(event, now) * 1000);
+                metrics.addBytesUploaded(uploadBytes);
+                break;
+            case POLL_END:
+                metrics.recordPhase(ClientMetrics.Phase.POLLING, phaseElapsed(event, now) * 1000);
+                break;
+            case DEPLOY_END:
+                metrics.recordPhase(ClientMetrics.Phase.DEPLOY, phaseElapsed(event, now) * 1000);
+                break;
+            case DEPLOY_SKIPPED:
+                metrics.recordSkippedDeploy();
+                break;
+        }
+    }
+
+    private long phaseElapsed(Event event, long now) {
+        final Long start = phaseStarts.get(phaseStartOf(event));
+        return start != null ? now - start : 0;
+    }
+
+    private static double throughput(long bytes, long millis) {
+        return millis > 0 ? bytes * 1000.0 / millis : 0;
+    }
+
+    private static Event phaseStartOf(Event event) {
+        switch (event) {
+            case DEPLOY_PRE_VERIFICATION_START:
+            case DEPLOY_PRE_VERIFICATION_END:
+                return DEPLOY_PRE_VERIFICATION_START;
+            case DEPLOY_START:
+            case DEPLOY_END:
+            case DEPLOY_SKIPPED:
+                return DEPLOY_START;
+            case UPLOAD_START:
+            case UPLOAD_PROGRESS:
+            case UPLOAD_END:
+                return UPLOAD_START;
+            default:
+                return POLL_START;
+        }
+    }
+}
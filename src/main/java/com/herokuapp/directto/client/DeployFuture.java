@@ -0,0 +1,176 @@
+package com.herokuapp.directto.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Completion handle for a deployment started with {@link DirectToHerokuClient#deployAsync(DeployRequest)}.
+ * <p/>
+ * On success, {@link #get()} returns the same results as {@link DirectToHerokuClient#deploy(DeployRequest)}.
+ * On failure, the {@link DeploymentException} (or other runtime exception) is the cause of the {@link ExecutionException}.
+ *
+ * @author Ryan Brainard
+ */
+public final class DeployFuture implements Future<Map<String, String>> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<Runnable>();
+    private final List<Runnable> completionHooks = new ArrayList<Runnable>();
+
+    private Future<?> currentTask;
+    private boolean completed;
+    private boolean cancelled;
+    private Map<String, String> result;
+    private Throwable failure;
+
+    DeployFuture() {
+    }
+
+    /**
+     * Registers a listener to be run once this deploy completes, fails or is cancelled.
+     * If already complete, the listener is run immediately on the calling thread.
+     */
+    public DeployFuture addListener(Runnable listener) {
+        synchronized (this) {
+            if (!completed) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+        listener.run();
+        return this;
+    }
+
+    /**
+     * Registers internal bookkeeping to run once this deploy completes, fails or is cancelled, before {@link #get()}
+     * returns, so callers observe its effects. Hooks must not wait on this future.
+     * If already complete, the hook is run immediately on the calling thread.
+     */
+    void addCompletionHook(Runnable hook) {
+        synchronized (this) {
+            if (!completed) {
+                completionHooks.add(hook);
+                return;
+            }
+        }
+        hook.run();
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        final Future<?> task;
+        synchronized (this) {
+            if (completed) {
+                return false;
+            }
+            completed = true;
+            cancelled = true;
+            task = currentTask;
+        }
+        if (task != null) {
+            task.cancel(mayInterruptIfRunning);
+        }
+        complete();
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return completed;
+    }
+
+    synchronized boolean isSucceeded() {
+        return completed && !cancelled && failure == null;
+    }
+
+    public Map<String, String> get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    public Map<String, String> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private synchronized Map<String, String> report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+
+    /**
+     * Tracks the task currently working on this deploy so it can be cancelled.
+     *
+     * @return false if this deploy is already complete and the task should not run
+     */
+    synchronized boolean setCurrentTask(Future<?> task) {
+        if (completed) {
+            task.cancel(false);
+            return false;
+        }
+        currentTask = task;
+        return true;
+    }
+
+    void succeed(Map<String, String> result) {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            this.result = result;
+        }
+        complete();
+    }
+
+    void fail(Throwable failure) {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            this.failure = failure;
+        }
+        complete();
+    }
+
+    private void complete() {
+        final Future<?> task;
+        final List<Runnable> hooks;
+        final List<Runnable> toRun;
+        synchronized (this) {
+            task = currentTask;
+            currentTask = null;
+            hooks = new ArrayList<Runnable>(completionHooks);
+            completionHooks.clear();
+            toRun = new ArrayList<Runnable>(listeners);
+            listeners.clear();
+        }
+        if (task != null) {
+            task.cancel(false); // a poll scheduled before the deploy failed or expired
+        }
+        for (Runnable hook : hooks) {
+            hook.run();
+        }
+        done.countDown();
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+    }
+}
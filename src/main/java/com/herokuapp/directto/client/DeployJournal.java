@@ -0,0 +1,349 @@
+package com.herokuapp.directto.client;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Append-only file recording each deploy's identity, artifact digests and polling URL, so that deploys interrupted by
+ * a restart can be followed to completion with {@link DirectToHerokuClient#resumeDeploys()} instead of uploaded again.
+ * Set on {@link DirectToHerokuClient.Builder#setDeployJournal(DeployJournal)}.
+ * <p/>
+ * Each record is one line of JSON, synced to disk before the deploy continues. A deploy's records are dropped once
+ * the client stops tracking it, whether it succeeded, failed or was cancelled. Whenever more than
+ * {@code compactionThreshold} dropped records have accumulated, the file is rewritten with only the open records on a
+ * background thread. A partially written last record, e.g. from a crash, is ignored when the journal is opened.
+ * <p/>
+ * Digests are defined as for {@link DigestCache}. With a digest cache set on the client, they are taken from it,
+ * so only files it does not know are read to be hashed, and those are then known to later deploys.
+ * Without one, every file is read once more to be hashed before the deploy is uploaded.
+ * <p/>
+ * A journal file must only be opened by one journal at a time; a journal can be shared by several clients.
+ *
+ * @author Ryan Brainard
+ */
+public final class DeployJournal {
+
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+    private static final ExecutorService sharedCompactionExecutor =
+            Executors.newSingleThreadExecutor(new DaemonThreadFactory("direct-to-journal"));
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private static final String RECORD = "record";
+    private static final String START = "start";
+    private static final String UPLOADED = "uploaded";
+    private static final String END = "end";
+
+    private final File file;
+    private final int compactionThreshold;
+    private final Map<String, Entry> open = new LinkedHashMap<String, Entry>();
+    private final List<Entry> recovered;
+    private FileOutputStream out;
+    private int records;
+    private int liveRecords;
+    private boolean compactionScheduled;
+
+    public DeployJournal(File file) throws IOException {
+        this(file, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param compactionThreshold number of records of finished deploys that triggers rewriting the file
+     */
+    public DeployJournal(File file, int compactionThreshold) throws IOException {
+        this.file = file;
+        this.compactionThreshold = Math.max(1, compactionThreshold);
+        load();
+        this.recovered = new ArrayList<Entry>(open.values());
+        synchronized (this) {
+            rewrite();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return deploys left incomplete by a previous process when this journal was opened, and not yet resumed or finished
+     */
+    public synchronized List<Entry> getRecoveredDeploys() {
+        final List<Entry> stillOpen = new ArrayList<Entry>();
+        for (Entry entry : recovered) {
+            if (open.containsKey(entry.getId())) {
+                stillOpen.add(entry);
+            }
+        }
+        return stillOpen;
+    }
+
+    /**
+     * Hands over the recovered deploys still open to the caller, so each is resumed only once
+     */
+    synchronized List<Entry> claimRecoveredDeploys() {
+        final List<Entry> claimed = getRecoveredDeploys();
+        recovered.clear();
+        return claimed;
+    }
+
+    /**
+     * @return deploys not yet finished, including those in progress in this process
+     */
+    public synchronized List<Entry> getIncompleteDeploys() {
+        return new ArrayList<Entry>(open.values());
+    }
+
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Records the start of a deploy, before anything is uploaded, reading every file to compute its digest
+     */
+    Entry started(DeployRequest deployRequest) throws IOException {
+        return started(deployRequest, null);
+    }
+
+    /**
+     * Records the start of a deploy, before anything is uploaded
+     *
+     * @param digests the deploy's digests from the client's {@link DigestCache}, or null to read every file to compute them
+     */
+    Entry started(DeployRequest deployRequest, DigestCache.Capture digests) throws IOException {
+        final Entry entry = new Entry(UUID.randomUUID().toString(), deployRequest.getAppName(), deployRequest.getPipelineName(),
+                new TreeMap<String, String>(digests != null ? digests.complete() : ArtifactDigests.compute(deployRequest)),
+                System.currentTimeMillis());
+        synchronized (this) {
+            append(entry.startRecord());
+            open.put(entry.getId(), entry);
+            liveRecords++;
+        }
+        return entry;
+    }
+
+    /**
+     * Records that the upload was accepted and the deploy can be followed at the polling URL
+     */
+    synchronized void uploaded(Entry entry, String pollingUrl) throws IOException {
+        entry.pollingUrl = pollingUrl;
+        if (open.containsKey(entry.getId())) {
+            append(entry.uploadedRecord());
+            liveRecords++;
+        }
+    }
+
+    /**
+     * Records that the client is no longer tracking the deploy
+     */
+    synchronized void completed(Entry entry) throws IOException {
+        if (open.remove(entry.getId()) == null) {
+            return;
+        }
+        final Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put(RECORD, END);
+        record.put("id", entry.getId());
+        append(record);
+        liveRecords -= entry.isUploaded() ? 2 : 1;
+
+        if (!compactionScheduled && records - liveRecords > compactionThreshold) {
+            compactionScheduled = true;
+            sharedCompactionExecutor.execute(new Runnable() {
+                public void run() {
+                    synchronized (DeployJournal.this) {
+                        compactionScheduled = false;
+                        if (out == null) {
+                            return; // closed
+                        }
+                        try {
+                            rewrite();
+                        } catch (IOException e) {
+                            // keep appending to the current file; compaction is retried after the next completion
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void append(Map<String, Object> record) throws IOException {
+        if (out == null) {
+            throw new IOException("Deploy journal is closed: " + file);
+        }
+        out.write((jsonMapper.writeValueAsString(record) + "\n").getBytes("UTF-8"));
+        out.getFD().sync();
+        records++;
+    }
+
+    /**
+     * Replaces the file with the records of open deploys only
+     */
+    private void rewrite() throws IOException {
+        final File compacted = new File(file.getPath() + ".compact");
+        final FileOutputStream compactedOut = new FileOutputStream(compacted);
+        int written = 0;
+        try {
+            for (Entry entry : open.values()) {
+                compactedOut.write((jsonMapper.writeValueAsString(entry.startRecord()) + "\n").getBytes("UTF-8"));
+                written++;
+                if (entry.isUploaded()) {
+                    compactedOut.write((jsonMapper.writeValueAsString(entry.uploadedRecord()) + "\n").getBytes("UTF-8"));
+                    written++;
+                }
+            }
+            compactedOut.getFD().sync();
+        } finally {
+            compactedOut.close();
+        }
+
+        if (out != null) {
+            out.close();
+        }
+        try {
+            if (!compacted.renameTo(file) && !(file.delete() && compacted.renameTo(file))) {
+                throw new IOException("Could not replace deploy journal: " + file);
+            }
+            records = written;
+            liveRecords = written;
+        } finally {
+            out = new FileOutputStream(file, true);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final Map<?, ?> record;
+                try {
+                    record = jsonMapper.readValue(line, Map.class);
+                } catch (IOException e) {
+                    continue; // partially written record
+                }
+                apply(record);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void apply(Map<?, ?> record) {
+        final String id = String.valueOf(record.get("id"));
+        final Object type = record.get(RECORD);
+        if (START.equals(type)) {
+            final Map<String, String> digests = new HashMap<String, String>();
+            if (record.get("digests") instanceof Map) {
+                for (Map.Entry<?, ?> digest : ((Map<?, ?>) record.get("digests")).entrySet()) {
+                    digests.put(String.valueOf(digest.getKey()), String.valueOf(digest.getValue()));
+                }
+            }
+            final Object time = record.get("time");
+            open.put(id, new Entry(id, (String) record.get("app"), (String) record.get("pipeline"), digests,
+                    time instanceof Number ? ((Number) time).longValue() : 0));
+        } else if (UPLOADED.equals(type) && open.containsKey(id)) {
+            open.get(id).pollingUrl = (String) record.get("location");
+        } else if (END.equals(type)) {
+            open.remove(id);
+        }
+    }
+
+    /**
+     * A deploy recorded in the journal
+     */
+    public static final class Entry {
+        private final String id;
+        private final String appName;
+        private final String pipelineName;
+        private final Map<String, String> digests;
+        private final long startTime;
+        private volatile String pollingUrl;
+
+        Entry(String id, String appName, String pipelineName, Map<String, String> digests, long startTime) {
+            this.id = id;
+            this.appName = appName;
+            this.pipelineName = pipelineName;
+            this.digests = Collections.unmodifiableMap(digests);
+            this.startTime = startTime;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getAppName() {
+            return appName;
+        }
+
+        public String getPipelineName() {
+            return pipelineName;
+        }
+
+        /**
+         * @return SHA-256 of each file key's contents, in hex, as kept by {@link DigestCache}
+         */
+        public Map<String, String> getDigests() {
+            return digests;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return URL the deploy's status is polled at, or null if the upload was not accepted
+         */
+        public String getPollingUrl() {
+            return pollingUrl;
+        }
+
+        public boolean isUploaded() {
+            return pollingUrl != null;
+        }
+
+        private Map<String, Object> startRecord() {
+            final Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put(RECORD, START);
+            record.put("id", id);
+            record.put("app", appName);
+            record.put("pipeline", pipelineName);
+            record.put("digests", digests);
+            record.put("time", startTime);
+            return record;
+        }
+
+        private Map<String, Object> uploadedRecord() {
+            final Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put(RECORD, UPLOADED);
+            record.put("id", id);
+            record.put("location", pollingUrl);
+            return record;
+        }
+
+        @Override
+        public String toString() {
+            return appName + " (" + pipelineName + ") " + id;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.herokuapp.directto.client;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -10,15 +13,33 @@ public final class DeployRequest {
 
     public static final int DEFAULT_POLLING_INTERVAL_INIT = 1000;
     public static final double DEFAULT_POLLING_INTERVAL_MULTIPLIER = 1.5;
+    public static final long DEFAULT_POLLING_INTERVAL_MAX = 15L * 1000L;
     public static final long DEFAULT_POLLING_TIMEOUT = 10L * 60L * 1000L;
+    public static final int DEFAULT_UPLOAD_CHUNK_SIZE = 8 * 1024 * 1024;
+    public static final int DEFAULT_UPLOAD_CHUNK_RETRIES = 5;
+    public static final long DEFAULT_UPLOAD_CHUNK_RETRY_BACKOFF = 1000;
 
     private final String pipelineName;
     private final String appName;
     private final Map<String, File> files;
+    private final Map<String, DirectorySource> directories = new LinkedHashMap<String, DirectorySource>();
     private EventSubscription eventSubscription = new EventSubscription();
     private long pollingIntervalInit = DEFAULT_POLLING_INTERVAL_INIT;
     private double pollingIntervalMultiplier = DEFAULT_POLLING_INTERVAL_MULTIPLIER;
+    private long pollingIntervalMax = DEFAULT_POLLING_INTERVAL_MAX;
+    private PollingStrategy pollingStrategy;
+    private boolean statusStreaming;
     private long pollingTimeout = DEFAULT_POLLING_TIMEOUT;
+    private long deployTimeout;
+    private final Map<String, ContentCodec> contentEncodings = new HashMap<String, ContentCodec>();
+    private boolean resumableUpload;
+    private boolean preflight;
+    private int uploadChunkSize = DEFAULT_UPLOAD_CHUNK_SIZE;
+    private int uploadChunkRetries = DEFAULT_UPLOAD_CHUNK_RETRIES;
+    private long uploadChunkRetryBackoff = DEFAULT_UPLOAD_CHUNK_RETRY_BACKOFF;
+    private String resumeUploadUrl;
+    private boolean skipIfUnchanged;
+    private DeployRequest artifactSource;
 
     public DeployRequest(String pipelineName, String appName, Map<String, File> files) {
         this.pipelineName = pipelineName;
@@ -41,11 +62,189 @@ public final class DeployRequest {
         return this;
     }
 
+    /**
+     * Upper bound on the interval between polls for the default {@link ExponentialPollingStrategy}
+     */
+    public DeployRequest setPollingIntervalMax(long pollingIntervalMax) {
+        this.pollingIntervalMax = pollingIntervalMax;
+        return this;
+    }
+
+    /**
+     * Replaces the default {@link ExponentialPollingStrategy} built from the polling interval settings
+     */
+    public DeployRequest setPollingStrategy(PollingStrategy pollingStrategy) {
+        this.pollingStrategy = pollingStrategy;
+        return this;
+    }
+
+    /**
+     * Asks the server to push status updates as server-sent events over one connection to the polling URL,
+     * completing as soon as a terminal status arrives. Falls back to regular polling if the server answers
+     * with a plain status or the stream ends early.
+     */
+    public DeployRequest setStatusStreaming(boolean statusStreaming) {
+        this.statusStreaming = statusStreaming;
+        return this;
+    }
+
     public DeployRequest setPollingTimeout(long pollingTimeout) {
         this.pollingTimeout = pollingTimeout;
         return this;
     }
 
+    /**
+     * Deadline for the whole deploy, from its start through upload and polling. A deploy still running at the
+     * deadline is cancelled like {@link DeployFuture#cancel(boolean)}, closing its connection even mid-upload,
+     * and fails with a {@link DeploymentException}. The {@link #setPollingTimeout(long)} still applies.
+     *
+     * @param deployTimeout in milliseconds; 0 for no deadline
+     */
+    public DeployRequest setDeployTimeout(long deployTimeout) {
+        this.deployTimeout = deployTimeout;
+        return this;
+    }
+
+    /**
+     * Uploads a directory as the file for a pipeline file key, archived while it is sent.
+     * The key must not also be in {@link #getFiles()}. Not supported with {@link #setResumableUpload(boolean)}.
+     *
+     * @param fileKey key of the file in the pipeline, e.g. {@code war}
+     * @param source  directory to archive, or null to remove it
+     */
+    public DeployRequest setDirectory(String fileKey, DirectorySource source) {
+        if (source != null) {
+            directories.put(fileKey, source);
+        } else {
+            directories.remove(fileKey);
+        }
+        return this;
+    }
+
+    /**
+     * Encodes a file part while it is uploaded, e.g. with {@link ContentCodecs#GZIP}.
+     * The part is sent with a matching {@code Content-Encoding} header.
+     *
+     * @param fileKey key of the file in {@link #getFiles()} or {@link #getDirectories()}
+     * @param codec   encoding to apply, or null to send the file as is
+     */
+    public DeployRequest setContentEncoding(String fileKey, ContentCodec codec) {
+        if (codec != null) {
+            contentEncodings.put(fileKey, codec);
+        } else {
+            contentEncodings.remove(fileKey);
+        }
+        return this;
+    }
+
+    /**
+     * Uploads files in checksummed chunks that are retried individually instead of in a single multipart request.
+     * If the upload still fails, a {@link ResumableUploadException} reports the URL to resume it from.
+     */
+    public DeployRequest setResumableUpload(boolean resumableUpload) {
+        this.resumableUpload = resumableUpload;
+        return this;
+    }
+
+    /**
+     * Sends an {@code OPTIONS} request for the upload URL before uploading, so that an upload the service would reject,
+     * e.g. for a bad API key, an unknown app or a mismatched pipeline, fails within one round trip instead of after the
+     * files are sent. Costs one extra request per deploy. Resumable uploads are rejected as early without it, when
+     * their upload is created.
+     */
+    public DeployRequest setPreflight(boolean preflight) {
+        this.preflight = preflight;
+        return this;
+    }
+
+    /**
+     * @param uploadChunkSize bytes per chunk for resumable uploads
+     */
+    public DeployRequest setUploadChunkSize(int uploadChunkSize) {
+        this.uploadChunkSize = uploadChunkSize;
+        return this;
+    }
+
+    /**
+     * @param uploadChunkRetries number of times a failed chunk is retried before the upload fails
+     */
+    public DeployRequest setUploadChunkRetries(int uploadChunkRetries) {
+        this.uploadChunkRetries = uploadChunkRetries;
+        return this;
+    }
+
+    /**
+     * @param uploadChunkRetryBackoff milliseconds before the first retry of a chunk, doubled on each further retry
+     */
+    public DeployRequest setUploadChunkRetryBackoff(long uploadChunkRetryBackoff) {
+        this.uploadChunkRetryBackoff = uploadChunkRetryBackoff;
+        return this;
+    }
+
+    /**
+     * Continues a resumable upload from the last chunk acknowledged by the server.
+     * Implies {@link #setResumableUpload(boolean)}.
+     *
+     * @param resumeUploadUrl from {@link ResumableUploadException#getUploadUrl()}
+     */
+    public DeployRequest setResumeUploadUrl(String resumeUploadUrl) {
+        this.resumeUploadUrl = resumeUploadUrl;
+        return this;
+    }
+
+    /**
+     * Skips the deploy when the files and directories are identical to the last successful deploy of the same pipeline
+     * to the app, as recorded by the {@link DigestCache} set on {@link DirectToHerokuClient.Builder#setDigestCache(DigestCache)}.
+     * A skipped deploy returns at once with a {@link DirectToHerokuClient#STATUS_SUCCESS} result marked
+     * {@link DirectToHerokuClient#SKIPPED}, and announces {@link EventSubscription.Event#DEPLOY_SKIPPED}.
+     * Has no effect without a digest cache.
+     */
+    public DeployRequest setSkipIfUnchanged(boolean skipIfUnchanged) {
+        this.skipIfUnchanged = skipIfUnchanged;
+        return this;
+    }
+
+    /**
+     * Copies this request for another app, with its own mutable map of files.
+     * The resume upload URL is not copied, as it belongs to the original app's upload.
+     */
+    DeployRequest forApp(String appName) {
+        final DeployRequest copy = new DeployRequest(pipelineName, appName, new LinkedHashMap<String, File>(files));
+        copy.directories.putAll(directories);
+        copy.eventSubscription = eventSubscription;
+        copy.pollingIntervalInit = pollingIntervalInit;
+        copy.pollingIntervalMultiplier = pollingIntervalMultiplier;
+        copy.pollingIntervalMax = pollingIntervalMax;
+        copy.pollingStrategy = pollingStrategy;
+        copy.statusStreaming = statusStreaming;
+        copy.pollingTimeout = pollingTimeout;
+        copy.deployTimeout = deployTimeout;
+        copy.contentEncodings.putAll(contentEncodings);
+        copy.resumableUpload = resumableUpload;
+        copy.preflight = preflight;
+        copy.uploadChunkSize = uploadChunkSize;
+        copy.uploadChunkRetries = uploadChunkRetries;
+        copy.uploadChunkRetryBackoff = uploadChunkRetryBackoff;
+        copy.skipIfUnchanged = skipIfUnchanged;
+        copy.artifactSource = artifactSource;
+        return copy;
+    }
+
+    /**
+     * Marks this request's files as prepared from those of another request, e.g. encoded in advance,
+     * so that digests identify the original artifacts
+     */
+    void setArtifactSource(DeployRequest artifactSource) {
+        this.artifactSource = artifactSource.getArtifactSource();
+    }
+
+    /**
+     * @return the request whose files and directories identify what is deployed; usually this one
+     */
+    DeployRequest getArtifactSource() {
+        return artifactSource != null ? artifactSource : this;
+    }
+
     public String getPipelineName() {
         return pipelineName;
     }
@@ -58,6 +257,10 @@ public final class DeployRequest {
         return files;
     }
 
+    public Map<String, DirectorySource> getDirectories() {
+        return Collections.unmodifiableMap(directories);
+    }
+
     public EventSubscription getEventSubscription() {
         return eventSubscription;
     }
@@ -70,8 +273,58 @@ public final class DeployRequest {
         return pollingIntervalMultiplier;
     }
 
+    public long getPollingIntervalMax() {
+        return pollingIntervalMax;
+    }
+
+    public PollingStrategy getPollingStrategy() {
+        return pollingStrategy != null
+                ? pollingStrategy
+                : new ExponentialPollingStrategy(pollingIntervalInit, pollingIntervalMultiplier, pollingIntervalMax);
+    }
+
+    public boolean isStatusStreaming() {
+        return statusStreaming;
+    }
+
     public long getPollingTimeout() {
         return pollingTimeout;
     }
 
+    public long getDeployTimeout() {
+        return deployTimeout;
+    }
+
+    public Map<String, ContentCodec> getContentEncodings() {
+        return Collections.unmodifiableMap(contentEncodings);
+    }
+
+    public boolean isResumableUpload() {
+        return resumableUpload || resumeUploadUrl != null;
+    }
+
+    public boolean isPreflight() {
+        return preflight;
+    }
+
+    public int getUploadChunkSize() {
+        return uploadChunkSize;
+    }
+
+    public int getUploadChunkRetries() {
+        return uploadChunkRetries;
+    }
+
+    public long getUploadChunkRetryBackoff() {
+        return uploadChunkRetryBackoff;
+    }
+
+    public String getResumeUploadUrl() {
+        return resumeUploadUrl;
+    }
+
+    public boolean isSkipIfUnchanged() {
+        return skipIfUnchanged;
+    }
+
 }
@@ -0,0 +1,250 @@
+package com.herokuapp.directto.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Queues deploys so that each app has at most one deploy in flight, and a deploy that is superseded
+ * before it starts is never uploaded.
+ * <p/>
+ * While a deploy to an app is in flight, the next request for that app waits in the queue. A further request
+ * for the same app replaces the waiting one, keeping its place in the queue and the higher of the two priorities,
+ * and the futures of replaced requests complete with the result of the deploy that replaced them.
+ * Deploys to different apps run on the client's {@link DirectToHerokuClient#deployAsync(DeployRequest)},
+ * at most {@code maxConcurrentDeploys} at a time, highest priority first and in submission order otherwise.
+ * <p/>
+ * Cancelling a future withdraws its request once no other caller is waiting on the same deploy.
+ *
+ * @author Ryan Brainard
+ */
+public final class DeployScheduler {
+
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private final DirectToHerokuClient client;
+    private final int maxConcurrentDeploys;
+    private final Map<String, App> apps = new HashMap<String, App>();
+    private final PriorityQueue<Pending> ready = new PriorityQueue<Pending>();
+    private long sequence;
+    private int running;
+    private int superseded;
+
+    public DeployScheduler(DirectToHerokuClient client, int maxConcurrentDeploys) {
+        this.client = client;
+        this.maxConcurrentDeploys = Math.max(1, maxConcurrentDeploys);
+    }
+
+    public DeployFuture submit(DeployRequest deployRequest) {
+        return submit(deployRequest, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * @param priority deploys with higher priorities start first when more apps are waiting than can run
+     * @return handle for the results of this request, or of the request that superseded it
+     */
+    public DeployFuture submit(DeployRequest deployRequest, int priority) {
+        final DeployFuture future = new DeployFuture();
+        final Pending pending;
+        synchronized (this) {
+            App app = apps.get(deployRequest.getAppName());
+            if (app == null) {
+                app = new App(deployRequest.getAppName());
+                apps.put(app.name, app);
+            }
+
+            if (app.queued != null) {
+                pending = app.queued;
+                ready.remove(pending);
+                pending.deployRequest = deployRequest;
+                pending.priority = Math.max(pending.priority, priority);
+                superseded++;
+            } else {
+                pending = new Pending(app, deployRequest, priority, sequence++);
+                app.queued = pending;
+            }
+            pending.futures.add(future);
+            if (app.inFlight == null) {
+                ready.add(pending);
+            }
+        }
+
+        future.addListener(new Runnable() {
+            public void run() {
+                if (future.isCancelled()) {
+                    withdraw(pending);
+                }
+            }
+        });
+        dispatch();
+        return future;
+    }
+
+    /**
+     * @return deploys currently in flight
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * @return requests waiting to start, at most one per app
+     */
+    public synchronized int getQueuedCount() {
+        int queued = 0;
+        for (App app : apps.values()) {
+            if (app.queued != null) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * @return requests replaced by a newer request for the same app before they started
+     */
+    public synchronized int getSupersededCount() {
+        return superseded;
+    }
+
+    private void dispatch() {
+        final List<Pending> toStart = new ArrayList<Pending>();
+        synchronized (this) {
+            while (running < maxConcurrentDeploys && !ready.isEmpty()) {
+                final Pending next = ready.poll();
+                next.app.queued = null;
+                next.app.inFlight = next;
+                running++;
+                toStart.add(next);
+            }
+        }
+
+        for (final Pending pending : toStart) {
+            DeployFuture started;
+            try {
+                started = client.deployAsync(pending.deployRequest);
+            } catch (RuntimeException e) {
+                started = new DeployFuture();
+                started.fail(e);
+            }
+            final DeployFuture deploy = started;
+            final boolean withdrawn;
+            synchronized (this) {
+                pending.deploy = deploy;
+                withdrawn = pending.isWithdrawn();
+            }
+            if (withdrawn) {
+                deploy.cancel(true);
+            }
+            deploy.addListener(new Runnable() {
+                public void run() {
+                    complete(pending, deploy);
+                }
+            });
+        }
+    }
+
+    private void complete(Pending pending, DeployFuture deploy) {
+        final List<DeployFuture> futures;
+        synchronized (this) {
+            futures = new ArrayList<DeployFuture>(pending.futures);
+            running--;
+            final App app = pending.app;
+            app.inFlight = null;
+            if (app.queued != null) {
+                ready.add(app.queued);
+            } else {
+                apps.remove(app.name);
+            }
+        }
+
+        try {
+            final Map<String, String> result = deploy.get();
+            for (DeployFuture future : futures) {
+                future.succeed(result);
+            }
+        } catch (CancellationException e) {
+            for (DeployFuture future : futures) {
+                future.cancel(false);
+            }
+        } catch (ExecutionException e) {
+            for (DeployFuture future : futures) {
+                future.fail(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // not reached; the deploy is already complete
+        }
+
+        dispatch();
+    }
+
+    private void withdraw(Pending pending) {
+        final DeployFuture deploy;
+        synchronized (this) {
+            if (!pending.isWithdrawn()) {
+                return;
+            }
+            if (pending.app.queued == pending) {
+                pending.app.queued = null;
+                ready.remove(pending);
+                if (pending.app.inFlight == null) {
+                    apps.remove(pending.app.name);
+                }
+                return;
+            }
+            deploy = pending.deploy;
+        }
+        if (deploy != null) {
+            deploy.cancel(true);
+        }
+    }
+
+    private static final class App {
+        final String name;
+        Pending queued;
+        Pending inFlight;
+
+        App(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Pending implements Comparable<Pending> {
+        final App app;
+        final long sequence;
+        final List<DeployFuture> futures = new ArrayList<DeployFuture>();
+        DeployRequest deployRequest;
+        int priority;
+        DeployFuture deploy;
+
+        Pending(App app, DeployRequest deployRequest, int priority, long sequence) {
+            this.app = app;
+            this.deployRequest = deployRequest;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /**
+         * @return true if every caller waiting on this request has cancelled
+         */
+        boolean isWithdrawn() {
+            for (DeployFuture future : futures) {
+                if (!future.isCancelled()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int compareTo(Pending other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
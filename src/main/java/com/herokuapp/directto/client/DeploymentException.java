@@ -5,18 +5,54 @@ package com.herokuapp.directto.client;
  */
 public class DeploymentException extends RuntimeException {
 
+    /**
+     * Kinds of deploy failures, by which {@link ClientMetrics#getFailures()} counts them
+     */
+    public static enum Reason {
+        /** The service rejected the upload, or it was not accepted before the deploy was interrupted */
+        NOT_ACCEPTED,
+        /** The service accepted the upload without saying where to poll for its status */
+        MISSING_LOCATION,
+        /** A status response could not be read */
+        INVALID_STATUS,
+        /** The deploy completed unsuccessfully */
+        UNSUCCESSFUL,
+        /** The deploy was still in process when the polling timeout expired */
+        POLLING_TIMEOUT,
+        /** The deploy was cancelled, interrupted or passed its deadline */
+        CANCELLED,
+        /** A resumable upload could not be completed */
+        UPLOAD_FAILED,
+        /** Local files, digests or the deploy journal could not be read or written */
+        LOCAL_IO,
+        OTHER
+    }
+
+    private final Reason reason;
     private final String details;
 
     public DeploymentException(String msg) {
-        super(msg);
-        details = null;
+        this(Reason.OTHER, msg, null);
     }
 
     public DeploymentException(String msg, String details) {
+        this(Reason.OTHER, msg, details);
+    }
+
+    public DeploymentException(Reason reason, String msg) {
+        this(reason, msg, null);
+    }
+
+    public DeploymentException(Reason reason, String msg, String details) {
         super(msg);
+        this.reason = reason;
         this.details = details;
     }
 
+    public Reason getReason() {
+        return reason;
+    }
+
     public String getDetails() {
         return details;
     }
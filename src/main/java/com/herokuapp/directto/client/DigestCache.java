@@ -0,0 +1,354 @@
+package com.herokuapp.directto.client;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local record of what was last deployed, used to skip deploys of unchanged artifacts with
+ * {@link DeployRequest#setSkipIfUnchanged(boolean)}. Set on {@link DirectToHerokuClient.Builder#setDigestCache(DigestCache)}.
+ * <p/>
+ * For each app and pipeline, the cache keeps the SHA-256 digests of the files and directories of the last successful
+ * deploy. Digests of individual files are kept by path, size and modification time, so an unchanged file is not read
+ * again to be hashed. Deciding whether to skip a deploy needs the digests before uploading, so with skipping requested
+ * a file not in the cache is read once to be hashed and, if the deploy goes ahead, again to be uploaded. Deploys that
+ * do not ask to be skipped hash such files while they are uploaded, reading them only once, unless the client also
+ * has a {@link DeployJournal}, which records the digests before uploading.
+ * Both records are bounded to {@code maxEntries}, dropping the least recently used, and are saved to a JSON file
+ * after each successful deploy. A missing or unreadable file starts an empty cache.
+ * <p/>
+ * A cache file must only be opened by one cache at a time; a cache can be shared by several clients.
+ *
+ * @author Ryan Brainard
+ */
+public final class DigestCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final Map<String, Deployed> deployed;
+    private final Map<String, FileDigest> files;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong fileReads = new AtomicLong();
+
+    public DigestCache(File file) {
+        this(file, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries most apps and pipelines, and most files, to keep digests for
+     */
+    public DigestCache(File file, final int maxEntries) {
+        this.file = file;
+        this.deployed = new LinkedHashMap<String, Deployed>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Deployed> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.files = new LinkedHashMap<String, FileDigest>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileDigest> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        load();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return file digests reused because the file's size and modification time were unchanged
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return file digests computed, whether while the file was uploaded or by reading it separately
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return files read only to compute their digest, in addition to being read for their upload if deployed
+     */
+    public long getFileReads() {
+        return fileReads.get();
+    }
+
+    /**
+     * Forgets the last deploy of the pipeline to the app, so that the next deploy is not skipped
+     */
+    public synchronized void invalidate(String pipelineName, String appName) throws IOException {
+        if (deployed.remove(key(pipelineName, appName)) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Starts collecting digests for a deploy, taking known file digests from the cache
+     */
+    Capture capture(DeployRequest deployRequest) throws IOException {
+        return new Capture(deployRequest.getArtifactSource());
+    }
+
+    /**
+     * @return true if the digests match those of the last successful deploy of the pipeline to the app
+     */
+    synchronized boolean isDeployed(DeployRequest deployRequest, Map<String, String> digests) {
+        final Deployed last = deployed.get(key(deployRequest.getPipelineName(), deployRequest.getAppName()));
+        return last != null && last.digests.equals(digests);
+    }
+
+    /**
+     * Records a successful deploy and saves the cache
+     */
+    synchronized void deployed(DeployRequest deployRequest, Map<String, String> digests) throws IOException {
+        deployed.put(key(deployRequest.getPipelineName(), deployRequest.getAppName()),
+                new Deployed(deployRequest.getPipelineName(), deployRequest.getAppName(), new TreeMap<String, String>(digests)));
+        save();
+    }
+
+    /**
+     * @return digest of the file from the cache, or null if unknown or the file changed since it was hashed
+     */
+    private synchronized String cached(File file, long size, long modified) {
+        final FileDigest cached = files.get(file.getAbsolutePath());
+        if (cached != null && cached.size == size && cached.modified == modified) {
+            hits.incrementAndGet();
+            return cached.digest;
+        }
+        return null;
+    }
+
+    private synchronized void store(File file, long size, long modified, String digest) {
+        files.put(file.getAbsolutePath(), new FileDigest(size, modified, digest));
+    }
+
+    private String digest(File file, byte[] buffer) throws IOException {
+        final long size = file.length();
+        final long modified = file.lastModified();
+        final String cached = cached(file, size, modified);
+        if (cached != null) {
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        fileReads.incrementAndGet();
+        final String hex = ArtifactDigests.digest(file, buffer);
+        if (file.length() == size && file.lastModified() == modified) {
+            store(file, size, modified, hex);
+        }
+        return hex;
+    }
+
+    private String digest(DirectorySource directory, final byte[] buffer) throws IOException {
+        return ArtifactDigests.digest(directory, new ArtifactDigests.FileDigests() {
+            public String digest(File file) throws IOException {
+                return DigestCache.this.digest(file, buffer);
+            }
+        });
+    }
+
+    private static String key(String pipelineName, String appName) {
+        return pipelineName + "\n" + appName;
+    }
+
+    private void save() throws IOException {
+        final List<Map<String, Object>> deployRecords = new ArrayList<Map<String, Object>>();
+        for (Deployed entry : deployed.values()) {
+            final Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put("pipeline", entry.pipelineName);
+            record.put("app", entry.appName);
+            record.put("digests", entry.digests);
+            deployRecords.add(record);
+        }
+        final List<Map<String, Object>> fileRecords = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<String, FileDigest> entry : files.entrySet()) {
+            final Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put("path", entry.getKey());
+            record.put("size", entry.getValue().size);
+            record.put("modified", entry.getValue().modified);
+            record.put("digest", entry.getValue().digest);
+            fileRecords.add(record);
+        }
+        final Map<String, Object> contents = new LinkedHashMap<String, Object>();
+        contents.put("deploys", deployRecords);
+        contents.put("files", fileRecords);
+
+        final File saved = new File(file.getPath() + ".tmp");
+        final FileOutputStream out = new FileOutputStream(saved);
+        try {
+            out.write(jsonMapper.writeValueAsBytes(contents));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!saved.renameTo(file) && !(file.delete() && saved.renameTo(file))) {
+            throw new IOException("Could not replace digest cache: " + file);
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        final Map<?, ?> contents;
+        try {
+            contents = jsonMapper.readValue(file, Map.class);
+        } catch (IOException e) {
+            return; // start empty; the file is replaced on the next save
+        }
+
+        if (contents.get("deploys") instanceof List) {
+            for (Object item : (List<?>) contents.get("deploys")) {
+                if (!(item instanceof Map) || !(((Map<?, ?>) item).get("digests") instanceof Map)) {
+                    continue;
+                }
+                final Map<?, ?> record = (Map<?, ?>) item;
+                final Map<String, String> digests = new TreeMap<String, String>();
+                for (Map.Entry<?, ?> digest : ((Map<?, ?>) record.get("digests")).entrySet()) {
+                    digests.put(String.valueOf(digest.getKey()), String.valueOf(digest.getValue()));
+                }
+                final String pipelineName = String.valueOf(record.get("pipeline"));
+                final String appName = String.valueOf(record.get("app"));
+                deployed.put(key(pipelineName, appName), new Deployed(pipelineName, appName, digests));
+            }
+        }
+        if (contents.get("files") instanceof List) {
+            for (Object item : (List<?>) contents.get("files")) {
+                if (!(item instanceof Map)) {
+                    continue;
+                }
+                final Map<?, ?> record = (Map<?, ?>) item;
+                if (record.get("size") instanceof Number && record.get("modified") instanceof Number && record.get("digest") != null) {
+                    files.put(String.valueOf(record.get("path")), new FileDigest(((Number) record.get("size")).longValue(),
+                            ((Number) record.get("modified")).longValue(), String.valueOf(record.get("digest"))));
+                }
+            }
+        }
+    }
+
+    /**
+     * Digests of one deploy's files and directories by file key. Files not found in the cache can be hashed while
+     * they are uploaded with {@link #update}; any not hashed by the time of {@link #complete()} are read then.
+     */
+    final class Capture {
+        private final Map<String, String> digests = new TreeMap<String, String>();
+        private final Map<String, Pending> pending = new HashMap<String, Pending>();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private Capture(DeployRequest source) throws IOException {
+            for (Map.Entry<String, File> file : source.getFiles().entrySet()) {
+                final long size = file.getValue().length();
+                final long modified = file.getValue().lastModified();
+                final String cached = cached(file.getValue(), size, modified);
+                if (cached != null) {
+                    digests.put(file.getKey(), cached);
+                } else {
+                    pending.put(file.getKey(), new Pending(file.getValue(), size, modified));
+                }
+            }
+            for (Map.Entry<String, DirectorySource> directory : source.getDirectories().entrySet()) {
+                digests.put(directory.getKey(), digest(directory.getValue(), buffer));
+            }
+        }
+
+        /**
+         * @return true if the file uploaded for the key should be passed to {@link #update} from its start
+         */
+        synchronized boolean isPending(String fileKey, File file) {
+            final Pending entry = pending.get(fileKey);
+            if (entry == null || !entry.file.equals(file)) {
+                return false;
+            }
+            entry.digest.reset();
+            entry.hashed = 0;
+            return true;
+        }
+
+        synchronized void update(String fileKey, byte[] bytes, int offset, int length) {
+            final Pending entry = pending.get(fileKey);
+            if (entry != null) {
+                entry.digest.update(bytes, offset, length);
+                entry.hashed += length;
+            }
+        }
+
+        /**
+         * @return digests by file key, reading any file not fully hashed during the upload
+         */
+        synchronized Map<String, String> complete() throws IOException {
+            for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+                final Pending file = entry.getValue();
+                final boolean unchanged = file.file.length() == file.size && file.file.lastModified() == file.modified;
+                if (file.hashed == file.size && unchanged) {
+                    misses.incrementAndGet();
+                    final String hex = ArtifactDigests.hex(file.digest.digest());
+                    store(file.file, file.size, file.modified, hex);
+                    digests.put(entry.getKey(), hex);
+                } else {
+                    digests.put(entry.getKey(), digest(file.file, buffer));
+                }
+            }
+            pending.clear();
+            return digests;
+        }
+    }
+
+    private static final class Pending {
+        final File file;
+        final long size;
+        final long modified;
+        final MessageDigest digest = ArtifactDigests.newDigest();
+        long hashed;
+
+        Pending(File file, long size, long modified) {
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private static final class FileDigest {
+        final long size;
+        final long modified;
+        final String digest;
+
+        FileDigest(long size, long modified, String digest) {
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+        }
+    }
+
+    private static final class Deployed {
+        final String pipelineName;
+        final String appName;
+        final Map<String, String> digests;
+
+        Deployed(String pipelineName, String appName, Map<String, String> digests) {
+            this.pipelineName = pipelineName;
+            this.appName = appName;
+            this.digests = digests;
+        }
+    }
+}
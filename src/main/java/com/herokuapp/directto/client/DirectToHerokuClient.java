@@ -1,5 +1,6 @@
 package com.herokuapp.directto.client;
 
+import com.herokuapp.directto.client.models.DeployStatus;
 import com.herokuapp.directto.client.models.Pipeline;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
@@ -9,21 +10,28 @@ import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.api.client.config.DefaultClientConfig;
 import com.sun.jersey.api.client.filter.HTTPBasicAuthFilter;
 import com.sun.jersey.api.json.JSONConfiguration;
-import com.sun.jersey.multipart.FormDataMultiPart;
-import com.sun.jersey.multipart.file.FileDataBodyPart;
+import org.codehaus.jackson.map.ObjectMapper;
 
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
 import java.net.HttpURLConnection;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.herokuapp.directto.client.DeploymentException.Reason;
 import static com.herokuapp.directto.client.EventSubscription.Event.*;
 
 /**
@@ -35,42 +43,169 @@ public class DirectToHerokuClient {
     public static final String DEFAULT_HOST = "direct-to.herokuapp.com";
     public static final int DEFAULT_PORT = 443;
 
-    public static final String STATUS = "status";
-    public static final String STATUS_SUCCESS = "success";
-    public static final String STATUS_IN_PROCESS = "inprocess";
+    public static final String STATUS = DeployStatus.STATUS;
+    public static final String STATUS_SUCCESS = DeployStatus.STATUS_SUCCESS;
+    public static final String STATUS_IN_PROCESS = DeployStatus.STATUS_IN_PROCESS;
+
+    /**
+     * Result key set to {@code true} for deploys skipped by {@link DeployRequest#setSkipIfUnchanged(boolean)}
+     */
+    public static final String SKIPPED = "skipped";
+
+    public static final int DEFAULT_POLLING_THREADS = 2;
+    public static final int DEFAULT_POLLING_WORKERS = 16;
+    public static final long DEFAULT_METRICS_EXPORT_INTERVAL = 60L * 1000L;
+
+    /**
+     * Threads shared by all clients for the pipeline fetch and file checks of {@link #verify(DeployRequest)}
+     */
+    private static final int VERIFICATION_THREADS = 4;
 
     private static final Client universalClient;
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+    private static final ScheduledExecutorService sharedPollingScheduler =
+            Executors.newScheduledThreadPool(DEFAULT_POLLING_THREADS, new DaemonThreadFactory("direct-to-polling"));
+    private static final ExecutorService sharedPollingExecutor =
+            Executors.newFixedThreadPool(DEFAULT_POLLING_WORKERS, new DaemonThreadFactory("direct-to-poll"));
+    private static final ExecutorService sharedUploadExecutor =
+            Executors.newCachedThreadPool(new DaemonThreadFactory("direct-to-upload"));
+    private static final ExecutorService verificationExecutor =
+            Executors.newFixedThreadPool(VERIFICATION_THREADS, new DaemonThreadFactory("direct-to-verify"));
 
     static {
-        final ClientConfig config = new DefaultClientConfig();
-        config.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE);
-        config.getProperties().put(ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, -1 /* default chunk size */);
-        universalClient = Client.create(config);
+        universalClient = new UrlConnectionTransport().createClient(createClientConfig());
     }
 
     private final WebResource baseResource;
+    private final ScheduledExecutorService pollingScheduler;
+    private final ExecutorService pollingExecutor;
+    private final ExecutorService uploadExecutor;
+    private final PipelineCache pipelineCache;
+    private final RequestLimiter requestLimiter;
+    private final DeployJournal deployJournal;
+    private final DigestCache digestCache;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final ResiliencePolicy resiliencePolicy;
+    private final ClientMetrics metrics = new ClientMetrics();
 
     private DirectToHerokuClient(Builder builder) {
+        pollingScheduler = builder.pollingScheduler != null ? builder.pollingScheduler : sharedPollingScheduler;
+        pollingExecutor = builder.pollingExecutor != null ? builder.pollingExecutor : sharedPollingExecutor;
+        uploadExecutor = builder.uploadExecutor != null ? builder.uploadExecutor : sharedUploadExecutor;
+        pipelineCache = builder.pipelineCache;
+        requestLimiter = builder.requestLimiter;
+        deployJournal = builder.deployJournal;
+        digestCache = builder.digestCache;
+        bandwidthLimiter = builder.bandwidthLimiter;
+        resiliencePolicy = builder.resiliencePolicy;
         String apiKey = builder.apiKey;
         String userAgent = builder.consumersUserAgent;
-        baseResource = universalClient.resource(builder.scheme + "://" + builder.host + ":" + builder.port);
+        final Client client = builder.transport != null ? builder.transport.createClient(createClientConfig()) : universalClient;
+        baseResource = client.resource(builder.scheme + "://" + builder.host + ":" + builder.port);
         baseResource.addFilter(new HTTPBasicAuthFilter("", apiKey));
         baseResource.addFilter(new UserAgentFilter(userAgent));
+        baseResource.addFilter(new MetricsFilter(metrics));
+        if (resiliencePolicy != null) {
+            baseResource.addFilter(new ResilienceFilter(resiliencePolicy, metrics, requestLimiter));
+        }
+
+        if (builder.metricsExporter != null) {
+            pollingScheduler.scheduleAtFixedRate(new MetricsExportTask(metrics, builder.metricsExporter),
+                    builder.metricsExportInterval, builder.metricsExportInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static ClientConfig createClientConfig() {
+        final ClientConfig config = new DefaultClientConfig();
+        config.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE);
+        config.getProperties().put(ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, -1 /* default chunk size */);
+        config.getSingletons().add(new MultipartUploadWriter());
+        return config;
     }
 
     /**
-     * Provides a list of all possible pipelines
+     * Provides a list of all possible pipelines. The list cannot be modified, as it may be shared through the pipeline cache.
      */
     public Collection<String> getPipelineNames() {
         //noinspection unchecked
-        return baseResource.path("/pipelines").get(Map.class).keySet();
+        return Collections.unmodifiableSet(getMetadata("/pipelines", Map.class).keySet());
     }
 
     /**
-     * Provides details about a pipeline
+     * Provides details about a pipeline. The details cannot be modified, as they may be shared through the pipeline cache.
      */
     public Pipeline getPipeline(String pipelineName) {
-        return baseResource.path("/pipelines/" + pipelineName).get(Pipeline.class);
+        return getMetadata("/pipelines/" + pipelineName, Pipeline.class);
+    }
+
+    /**
+     * Latency histograms and counters for calls and deploys made by this client
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Pipeline metadata cache set with {@link Builder#setPipelineCache(PipelineCache)}, or null if caching is disabled
+     */
+    public PipelineCache getPipelineCache() {
+        return pipelineCache;
+    }
+
+    /**
+     * Digest cache set with {@link Builder#setDigestCache(DigestCache)}, or null if disabled
+     */
+    public DigestCache getDigestCache() {
+        return digestCache;
+    }
+
+    /**
+     * Bandwidth limiter set with {@link Builder#setBandwidthLimiter(BandwidthLimiter)}, or null if unlimited
+     */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Resilience policy set with {@link Builder#setResiliencePolicy(ResiliencePolicy)}, or null if disabled
+     */
+    public ResiliencePolicy getResiliencePolicy() {
+        return resiliencePolicy;
+    }
+
+    private <T> T getMetadata(String path, Class<T> type) {
+        final WebResource resource = baseResource.path(path);
+        if (pipelineCache == null) {
+            acquireRequest();
+            return resource.get(type);
+        }
+
+        final String key = resource.getURI().toString();
+        final PipelineCache.Entry cached = pipelineCache.get(key);
+        if (cached != null && cached.isFresh()) {
+            pipelineCache.recordHit();
+            return type.cast(cached.value);
+        }
+
+        acquireRequest();
+        final WebResource.Builder request = resource.getRequestBuilder();
+        if (cached != null && cached.etag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, cached.etag);
+        }
+        final ClientResponse response = request.get(ClientResponse.class);
+        if (response.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            response.close();
+            pipelineCache.revalidated(key, cached);
+            return type.cast(cached.value);
+        }
+        if (response.getStatus() >= 300) {
+            throw new UniformInterfaceException(response);
+        }
+
+        pipelineCache.recordMiss();
+        final T value = response.getEntity(type);
+        pipelineCache.put(key, value, response.getHeaders().getFirst(HttpHeaders.ETAG));
+        return value;
     }
 
     /**
@@ -83,59 +218,84 @@ public class DirectToHerokuClient {
     }
 
     public void verify(DeployRequest deployRequest) throws VerificationException {
-        deployRequest.getEventSubscription().announce(DEPLOY_PRE_VERIFICATION_START);
-
-        final VerificationException.Aggregator problems = new VerificationException.Aggregator();
-
-        if (deployRequest.getAppName() == null || deployRequest.getAppName().trim().equals("")) {
-            problems.addMessage("App name must be populated");
-        }
+        verify(deployRequest, Collections.singleton(deployRequest.getAppName()));
+    }
 
-        Pipeline pipeline = null;
+    /**
+     * Verifies a request for deploying the same payload to each of the apps, fetching the pipeline and checking
+     * files only once
+     */
+    void verify(DeployRequest deployRequest, Collection<String> appNames) throws VerificationException {
+        final DeployEvents events = newEvents(deployRequest);
         try {
-            pipeline = getPipeline(deployRequest.getPipelineName());
-        } catch (UniformInterfaceException e) {
-            problems.addMessage("Invalid pipeline name: " + deployRequest.getPipelineName()).detonate();
+            verify(deployRequest, appNames, events);
+        } catch (VerificationException e) {
+            events.failed(e);
+            throw e;
+        } catch (RuntimeException e) {
+            events.failed(e);
+            throw e;
         }
+    }
+
+    private void verify(final DeployRequest deployRequest, Collection<String> appNames, DeployEvents events) throws VerificationException {
+        events.announce(DEPLOY_PRE_VERIFICATION_START);
 
-        for (Map.Entry<String, String> requiredFile : pipeline.getManifest().getRequiredFileInfo().entrySet()) {
-            if (!deployRequest.getFiles().containsKey(requiredFile.getKey())) {
-                problems.addMessage("Required file not specified: " + requiredFile.getKey() + " (" + requiredFile.getValue() + ")");
+        final Future<Pipeline> pipelineFuture = verificationExecutor.submit(new Callable<Pipeline>() {
+            public Pipeline call() {
+                final long start = System.nanoTime();
+                final Pipeline pipeline = getPipeline(deployRequest.getPipelineName());
+                metrics.recordPhase(ClientMetrics.Phase.PIPELINE_FETCH, (System.nanoTime() - start) / 1000);
+                return pipeline;
             }
+        });
+        final List<String> fileProblems = FileChecks.check(deployRequest.getFiles(), verificationExecutor);
+        fileProblems.addAll(FileChecks.checkDirectories(deployRequest.getFiles(), deployRequest.getDirectories()));
+        if (deployRequest.isResumableUpload() && !deployRequest.getDirectories().isEmpty()) {
+            fileProblems.add("Directories cannot be uploaded with resumable uploads");
         }
 
-        for (Map.Entry<String, File> file : deployRequest.getFiles().entrySet()) {
-            if (file.getValue() == null || !file.getValue().exists()) {
-                problems.addMessage("File not found for: " + file.getKey() + " (" + file.getValue() + ")");
+        final VerificationException.Aggregator problems = new VerificationException.Aggregator();
+
+        for (String appName : appNames) {
+            if (appName == null || appName.trim().equals("")) {
+                problems.addMessage("App name must be populated");
+                break;
             }
         }
 
-        if (new HashSet<File>(deployRequest.getFiles().values()).size() != deployRequest.getFiles().size()) {
-            problems.addMessage("All files must be unique");
+        Pipeline pipeline = null;
+        try {
+            pipeline = pipelineFuture.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UniformInterfaceException) {
+                problems.addMessage("Invalid pipeline name: " + deployRequest.getPipelineName());
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            pipelineFuture.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
         }
 
-        if (deployRequest.getFiles().containsKey("procfile")) {
-            InputStream in = null;
-            try {
-                in = new FileInputStream(deployRequest.getFiles().get("procfile"));
-                if (in.read() == -1) {
-                    problems.addMessage("Procfile must not be empty");
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            } finally {
-                try {
-                    if (in != null) in.close();
-                } catch (IOException e) {
-                    // swallow
+        if (pipeline != null) {
+            for (Map.Entry<String, String> requiredFile : pipeline.getManifest().getRequiredFileInfo().entrySet()) {
+                if (!deployRequest.getFiles().containsKey(requiredFile.getKey()) && !deployRequest.getDirectories().containsKey(requiredFile.getKey())) {
+                    problems.addMessage("Required file not specified: " + requiredFile.getKey() + " (" + requiredFile.getValue() + ")");
                 }
             }
+        }
 
+        for (String fileProblem : fileProblems) {
+            problems.addMessage(fileProblem);
         }
 
         problems.detonate();
 
-        deployRequest.getEventSubscription().announce(DEPLOY_PRE_VERIFICATION_END);
+        events.announce(DEPLOY_PRE_VERIFICATION_END);
     }
 
     /**
@@ -153,96 +313,490 @@ public class DirectToHerokuClient {
         return deploy(new DeployRequest(pipelineName, appName, files));
     }
 
+    /**
+     * Deploys on the calling thread. Interrupting the thread stops the deploy at its next poll.
+     * Use {@link #deployAsync(DeployRequest)} for a handle that can cancel the deploy at any point.
+     */
     public Map<String, String> deploy(DeployRequest deployRequest) {
-        deployRequest.getEventSubscription().announce(DEPLOY_START);
-        final Map<String, String> result = poll(deployRequest, upload(deployRequest));
-        deployRequest.getEventSubscription().announce(DEPLOY_END);
-        return result;
+        final DeployEvents events = newEvents(deployRequest);
+        final DeployCancellation cancellation = new DeployCancellation(deployRequest.getDeployTimeout());
+        final DeployCancellation previous = cancellation.attach();
+        final Future<?> deadline = scheduleDeadline(deployRequest, cancellation, null, events);
+        DeployJournal.Entry journalEntry = null;
+        try {
+            events.announce(DEPLOY_START);
+            final DigestCache.Capture digests = captureDigests(deployRequest);
+            if (isUnchanged(deployRequest, digests)) {
+                events.announce(DEPLOY_SKIPPED);
+                return skippedResult();
+            }
+            journalEntry = journalStarted(deployRequest, digests);
+            final ClientResponse uploadResponse = upload(deployRequest, events, cancellation, digests);
+            final Map<String, String> result = poll(deployRequest, events, cancellation, journalEntry, uploadResponse);
+            recordDeployed(deployRequest, digests);
+            events.announce(DEPLOY_END);
+            return result;
+        } catch (RuntimeException e) {
+            final RuntimeException failure = cancellation.translate(e);
+            events.failed(failure);
+            throw failure;
+        } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            cancellation.detach(previous);
+            journalCompleted(journalEntry);
+        }
+    }
+
+    /**
+     * Deploys without blocking the calling thread.
+     * <p/>
+     * The upload runs on the client's upload executor. Status polls are timed by a small shared scheduler and sent
+     * from a bounded pool of polling workers, so no thread is parked between polls no matter how many deploys are in
+     * flight, and a slow poll only holds up its own deploy.
+     * <p/>
+     * With {@link DeployRequest#setStatusStreaming(boolean)}, the upload thread follows the status stream until it
+     * ends; a stream that stalls is closed once the polling timeout or the deploy's deadline is reached.
+     * <p/>
+     * Cancelling the returned future stops the deploy wherever it is: an upload in progress has its connection
+     * closed and stops within one buffer, and no further polls are made.
+     *
+     * @return handle for the results of the deploy; failures are reported as the cause of an {@link java.util.concurrent.ExecutionException}
+     */
+    public DeployFuture deployAsync(String pipelineName, String appName, Map<String, File> files) {
+        return deployAsync(new DeployRequest(pipelineName, appName, files));
+    }
+
+    public DeployFuture deployAsync(final DeployRequest deployRequest) {
+        final DeployFuture future = new DeployFuture();
+        final DeployEvents events = newEvents(deployRequest);
+        final DeployCancellation cancellation = new DeployCancellation(deployRequest.getDeployTimeout());
+        cancelOnCompletion(future, cancellation, scheduleDeadline(deployRequest, cancellation, future, events));
+        future.setCurrentTask(uploadExecutor.submit(new Runnable() {
+            public void run() {
+                final DeployCancellation previous = cancellation.attach();
+                try {
+                    events.announce(DEPLOY_START);
+                    final DigestCache.Capture digests = captureDigests(deployRequest);
+                    if (isUnchanged(deployRequest, digests)) {
+                        events.announce(DEPLOY_SKIPPED);
+                        future.succeed(skippedResult());
+                        return;
+                    }
+                    final DeployJournal.Entry journalEntry = journalStarted(deployRequest, digests);
+                    future.addCompletionHook(new Runnable() {
+                        public void run() {
+                            journalCompleted(journalEntry);
+                            if (future.isSucceeded()) {
+                                recordDeployed(deployRequest, digests);
+                            }
+                        }
+                    });
+                    final ClientResponse uploadResponse = upload(deployRequest, events, cancellation, digests);
+                    final PollingSession session = startPolling(deployRequest, events, cancellation, journalEntry, uploadResponse);
+                    session.deferRetries();
+                    if (deployRequest.isStatusStreaming() && session.isInProcess()) {
+                        acquireRequest();
+                        session.stream(pollingScheduler);
+                    }
+                    if (session.isInProcess()) {
+                        schedulePoll(future, events, session, 0);
+                    } else {
+                        completeAsync(future, events, session);
+                    }
+                } catch (RuntimeException e) {
+                    failAsync(future, events, cancellation, e);
+                } finally {
+                    cancellation.detach(previous);
+                }
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Fails the deploy once it passes its {@link DeployRequest#setDeployTimeout(long)}, closing any connection in use
+     *
+     * @param future completed with the failure, or null if the deploy runs on the calling thread
+     * @return the scheduled expiry, or null without a deadline
+     */
+    private Future<?> scheduleDeadline(DeployRequest deployRequest, final DeployCancellation cancellation,
+                                       final DeployFuture future, final DeployEvents events) {
+        if (deployRequest.getDeployTimeout() <= 0) {
+            return null;
+        }
+        return pollingScheduler.schedule(new Runnable() {
+            public void run() {
+                if (cancellation.expire() && future != null) {
+                    failAsync(future, events, cancellation, new DeploymentException(Reason.CANCELLED, cancellation.getReason()));
+                }
+            }
+        }, cancellation.remaining(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the deploy's work when its future is cancelled, and its deadline once it completes either way
+     */
+    private static void cancelOnCompletion(final DeployFuture future, final DeployCancellation cancellation, final Future<?> deadline) {
+        future.addCompletionHook(new Runnable() {
+            public void run() {
+                if (future.isCancelled()) {
+                    cancellation.cancel("Deploy cancelled");
+                }
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Resumes deploys left incomplete by a previous process in the {@link DeployJournal} set on
+     * {@link Builder#setDeployJournal(DeployJournal)}, polling their status without uploading again.
+     * Status polling is scheduled like {@link #deployAsync(DeployRequest)}, with default polling settings.
+     * <p/>
+     * Deploys whose upload was not accepted before the interruption cannot be resumed; their futures fail with a
+     * {@link DeploymentException} and they are dropped from the journal. Each recovered deploy is resumed only once.
+     *
+     * @return handles for the resumed deploys, in the order they were started; empty without a journal
+     */
+    public Map<DeployJournal.Entry, DeployFuture> resumeDeploys() {
+        final Map<DeployJournal.Entry, DeployFuture> resumed = new LinkedHashMap<DeployJournal.Entry, DeployFuture>();
+        if (deployJournal == null) {
+            return resumed;
+        }
+
+        for (final DeployJournal.Entry entry : deployJournal.claimRecoveredDeploys()) {
+            final DeployFuture future = new DeployFuture();
+            final DeployCancellation cancellation = new DeployCancellation(0);
+            cancelOnCompletion(future, cancellation, null);
+            future.addCompletionHook(new Runnable() {
+                public void run() {
+                    journalCompleted(entry);
+                }
+            });
+            resumed.put(entry, future);
+
+            if (!entry.isUploaded()) {
+                future.fail(new DeploymentException(Reason.NOT_ACCEPTED, "Upload was not accepted before the deploy was interrupted"));
+                continue;
+            }
+            final DeployRequest deployRequest = new DeployRequest(entry.getPipelineName(), entry.getAppName(), Collections.<String, File>emptyMap());
+            final DeployEvents events = newEvents(deployRequest);
+            events.announce(POLL_START);
+            final PollingSession session = new PollingSession(deployRequest, events, cancellation,
+                    baseResource.path(entry.getPollingUrl()), inProcessStatus());
+            session.deferRetries();
+            schedulePoll(future, events, session, 0);
+        }
+        return resumed;
+    }
+
+    private void schedulePoll(final DeployFuture future, final DeployEvents events, final PollingSession session, long delay) {
+        future.setCurrentTask(pollingScheduler.schedule(new Runnable() {
+            public void run() {
+                final long wait = requestLimiter != null ? requestLimiter.reserveRequest() : 0;
+                if (wait > 0) {
+                    scheduleReservedPoll(future, events, session, wait);
+                } else {
+                    submitPoll(future, events, session);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Polls once a request token reserved from the limiter is due, without parking a scheduler thread until then
+     */
+    private void scheduleReservedPoll(final DeployFuture future, final DeployEvents events, final PollingSession session, long delay) {
+        future.setCurrentTask(pollingScheduler.schedule(new Runnable() {
+            public void run() {
+                submitPoll(future, events, session);
+            }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Hands a due poll from the scheduler to a polling worker, which schedules the next one when it is done
+     */
+    private void submitPoll(final DeployFuture future, final DeployEvents events, final PollingSession session) {
+        try {
+            future.setCurrentTask(pollingExecutor.submit(new Runnable() {
+                public void run() {
+                    pollAsync(future, events, session);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            failAsync(future, events, session.getCancellation(), e);
+        }
+    }
+
+    private void pollAsync(DeployFuture future, DeployEvents events, PollingSession session) {
+        final DeployCancellation cancellation = session.getCancellation();
+        final DeployCancellation previous = cancellation.attach();
+        try {
+            session.poll();
+            if (session.isInProcess()) {
+                schedulePoll(future, events, session, session.nextPollingInterval());
+            } else {
+                completeAsync(future, events, session);
+            }
+        } catch (RuntimeException e) {
+            failAsync(future, events, cancellation, e);
+        } finally {
+            cancellation.detach(previous);
+        }
+    }
+
+    private static void failAsync(DeployFuture future, DeployEvents events, DeployCancellation cancellation, RuntimeException e) {
+        if (future.isDone()) {
+            return; // already cancelled or expired
+        }
+        final RuntimeException failure = cancellation.translate(e);
+        events.failed(failure);
+        future.fail(failure);
+    }
+
+    private void completeAsync(DeployFuture future, DeployEvents events, PollingSession session) {
+        final Map<String, String> result = session.complete();
+        events.announce(DEPLOY_END);
+        future.succeed(result);
     }
 
     protected ClientResponse upload(DeployRequest deployRequest) throws DeploymentException {
-        deployRequest.getEventSubscription().announce(UPLOAD_START);
+        return upload(deployRequest, newEvents(deployRequest), new DeployCancellation(0), null);
+    }
 
-        final WebResource uploadRequest = baseResource.path("/direct/" + deployRequest.getAppName() + "/" + deployRequest.getPipelineName());
+    private ClientResponse upload(DeployRequest deployRequest, DeployEvents events, DeployCancellation cancellation,
+                                  DigestCache.Capture digests) throws DeploymentException {
+        if (requestLimiter == null) {
+            return uploadUnlimited(deployRequest, events, cancellation, digests);
+        }
 
-        final FormDataMultiPart form = new FormDataMultiPart();
-        for (Map.Entry<String, File> file : deployRequest.getFiles().entrySet()) {
-            form.bodyPart(new FileDataBodyPart(file.getKey(), file.getValue()));
+        try {
+            requestLimiter.acquireUpload();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancellation.cancel("Deploy interrupted");
+            throw new DeploymentException(Reason.CANCELLED, "Deploy interrupted");
+        }
+        try {
+            return uploadUnlimited(deployRequest, events, cancellation, digests);
+        } finally {
+            requestLimiter.releaseUpload();
+        }
+    }
+
+    private ClientResponse uploadUnlimited(DeployRequest deployRequest, DeployEvents events, DeployCancellation cancellation,
+                                           DigestCache.Capture digests) throws DeploymentException {
+        cancellation.check();
+        events.announce(UPLOAD_START);
+
+        final ClientResponse uploadResponse;
+        if (deployRequest.isResumableUpload()) {
+            uploadResponse = new ResumableUpload(baseResource, deployRequest, events, cancellation, bandwidthLimiter).upload();
+        } else {
+            final WebResource uploadRequest = baseResource.path("/direct/" + deployRequest.getAppName() + "/" + deployRequest.getPipelineName());
+            if (deployRequest.isPreflight()) {
+                preflight(uploadRequest);
+                cancellation.check();
+            }
+            final MultipartUpload form = new MultipartUpload(deployRequest, events, cancellation, digests, bandwidthLimiter);
+            uploadResponse = uploadRequest.type(form.getMediaType()).post(ClientResponse.class, form);
         }
 
-        final ClientResponse uploadResponse = uploadRequest.type(MediaType.MULTIPART_FORM_DATA_TYPE).post(ClientResponse.class, form);
         if (HttpURLConnection.HTTP_ACCEPTED != uploadResponse.getStatus()) {
-            final String defaultMessage = "Deploy not accepted";
+            throw notAccepted(uploadResponse, "Deploy not accepted");
+        }
+
+        events.announce(UPLOAD_END);
+        return uploadResponse;
+    }
+
+    /**
+     * Asks whether an upload would be accepted, without sending it
+     *
+     * @throws DeploymentException with the service's message if it would not
+     */
+    private static void preflight(WebResource uploadRequest) {
+        final ClientResponse preflightResponse = uploadRequest.options(ClientResponse.class);
+        if (preflightResponse.getStatus() < 200 || preflightResponse.getStatus() >= 300) {
+            throw notAccepted(preflightResponse, "Deploy not accepted");
+        }
+        preflightResponse.close();
+    }
 
-            String customMessage = null;
-            if (MediaType.APPLICATION_JSON_TYPE.isCompatible(uploadResponse.getType())) {
-                final Map body = uploadResponse.getEntity(Map.class);
-                if (body.containsKey("message")) {
+    static DeploymentException notAccepted(ClientResponse response, String defaultMessage) {
+        final String details = response.getEntity(String.class);
+
+        String customMessage = null;
+        if (MediaType.APPLICATION_JSON_TYPE.isCompatible(response.getType())) {
+            try {
+                final Map body = parseJson(details);
+                if (body != null && body.containsKey("message")) {
                     customMessage = body.get("message").toString();
                 }
+            } catch (IOException e) {
+                // not a JSON object; use the default message
             }
-
-            throw new DeploymentException(customMessage != null ? customMessage : defaultMessage, uploadResponse.getEntity(String.class));
         }
 
-        deployRequest.getEventSubscription().announce(UPLOAD_END);
-        return uploadResponse;
+        return new DeploymentException(Reason.NOT_ACCEPTED, customMessage != null ? customMessage : defaultMessage, details);
     }
 
     protected Map<String, String> poll(DeployRequest deployRequest, ClientResponse uploadResponse) {
-        deployRequest.getEventSubscription().announce(POLL_START);
+        return poll(deployRequest, newEvents(deployRequest), new DeployCancellation(0), null, uploadResponse);
+    }
+
+    private Map<String, String> poll(DeployRequest deployRequest, DeployEvents events, DeployCancellation cancellation,
+                                     DeployJournal.Entry journalEntry, ClientResponse uploadResponse) {
+        final PollingSession session = startPolling(deployRequest, events, cancellation, journalEntry, uploadResponse);
+        if (deployRequest.isStatusStreaming() && session.isInProcess()) {
+            acquireRequest();
+            session.stream(pollingScheduler);
+        }
+        while (session.isInProcess()) {
+            acquireRequest();
+            session.poll();
+            if (!session.isInProcess()) {
+                break;
+            }
+
+            try {
+                Thread.sleep(session.nextPollingInterval());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancellation.cancel("Deploy interrupted");
+                throw new DeploymentException(Reason.CANCELLED, "Deploy interrupted");
+            }
+        }
+
+        return session.complete();
+    }
+
+    private PollingSession startPolling(DeployRequest deployRequest, DeployEvents events, DeployCancellation cancellation,
+                                        DeployJournal.Entry journalEntry, ClientResponse uploadResponse) {
+        events.announce(POLL_START);
         final List<String> locationHeaders = uploadResponse.getHeaders().get("Location");
         if (locationHeaders == null || locationHeaders.get(0) == null) {
-            throw new DeploymentException("Location header not found");
+            throw new DeploymentException(Reason.MISSING_LOCATION, "Location header not found");
         }
         final String pollingUrl = locationHeaders.get(0);
+        if (journalEntry != null) {
+            try {
+                deployJournal.uploaded(journalEntry, pollingUrl);
+            } catch (IOException e) {
+                throw new DeploymentException(Reason.LOCAL_IO, "Could not write deploy journal: " + e.getMessage());
+            }
+        }
         final WebResource pollingRequest = baseResource.path(pollingUrl);
 
-        Map<String, String> response = stringify(uploadResponse.getEntity(Map.class));
-        long pollingInterval = deployRequest.getPollingIntervalInit();
-        final long startTime = System.currentTimeMillis();
-        while (STATUS_IN_PROCESS.equals(response.get(STATUS))) {
-            deployRequest.getEventSubscription().announce(POLLING);
-            response = stringify(pollingRequest.get(Map.class));
+        return new PollingSession(deployRequest, events, cancellation, pollingRequest, readStatus(uploadResponse));
+    }
 
-            if (System.currentTimeMillis() - startTime > deployRequest.getPollingTimeout()) {
-                throw new DeploymentException("Polling timed out after " + pollingInterval + "ms");
-            }
+    /**
+     * @return the journal entry for a new deploy, or null without a journal
+     */
+    private DeployJournal.Entry journalStarted(DeployRequest deployRequest, DigestCache.Capture digests) {
+        if (deployJournal == null) {
+            return null;
+        }
+        try {
+            return deployJournal.started(deployRequest, digests);
+        } catch (IOException e) {
+            throw new DeploymentException(Reason.LOCAL_IO, "Could not write deploy journal: " + e.getMessage());
+        }
+    }
 
-            try {
-                Thread.sleep(pollingInterval *= deployRequest.getPollingIntervalMultiplier());
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+    private void journalCompleted(DeployJournal.Entry journalEntry) {
+        if (journalEntry == null) {
+            return;
+        }
+        try {
+            deployJournal.completed(journalEntry);
+        } catch (IOException e) {
+            // swallow; the entry stays open and resuming it later finds the deploy already finished
+        }
+    }
+
+    /**
+     * @return digests being collected for the deploy, or null without a digest cache
+     */
+    private DigestCache.Capture captureDigests(DeployRequest deployRequest) {
+        if (digestCache == null) {
+            return null;
         }
+        try {
+            return digestCache.capture(deployRequest);
+        } catch (IOException e) {
+            throw new DeploymentException(Reason.LOCAL_IO, "Could not compute file digests: " + e.getMessage());
+        }
+    }
 
-        if (!STATUS_SUCCESS.equals(response.get(STATUS))) {
-            final String unsuccessfulMsg = response.get("status") + ":" + response.get("message");
-            throw new DeploymentException(unsuccessfulMsg, response.toString());
+    private boolean isUnchanged(DeployRequest deployRequest, DigestCache.Capture digests) {
+        if (digests == null || !deployRequest.isSkipIfUnchanged()) {
+            return false;
         }
+        try {
+            return digestCache.isDeployed(deployRequest, digests.complete());
+        } catch (IOException e) {
+            throw new DeploymentException(Reason.LOCAL_IO, "Could not compute file digests: " + e.getMessage());
+        }
+    }
 
-        deployRequest.getEventSubscription().announce(POLL_END);
-        return response;
+    private void recordDeployed(DeployRequest deployRequest, DigestCache.Capture digests) {
+        if (digests == null) {
+            return;
+        }
+        try {
+            digestCache.deployed(deployRequest, digests.complete());
+        } catch (IOException e) {
+            // swallow; the next deploy of the same files is not skipped
+        }
+    }
+
+    private static Map<String, String> skippedResult() {
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        result.put(STATUS, STATUS_SUCCESS);
+        result.put("message", "Skipped; files unchanged since the last deploy");
+        result.put(SKIPPED, "true");
+        return result;
     }
 
-    private static Map<String, String> stringify(Map<?, ?> anyMap) {
-        Map<String, String> stringMap = null;
+    private static DeployStatus inProcessStatus() {
         try {
-            //noinspection unchecked
-            stringMap = anyMap.getClass().getConstructor(int.class).newInstance(anyMap.size());
-        } catch (InstantiationException e) {
-            throw new RuntimeException(e);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(e);
-        } catch (NoSuchMethodException e) {
+            return DeployStatus.parse(("{\"" + STATUS + "\":\"" + STATUS_IN_PROCESS + "\"}").getBytes("UTF-8"));
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        for (Map.Entry entry : anyMap.entrySet()) {
-            stringMap.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+    }
+
+    private void acquireRequest() {
+        if (requestLimiter != null) {
+            try {
+                requestLimiter.acquireRequest();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DeploymentException(Reason.CANCELLED, "Interrupted waiting for a request slot");
+            }
+        }
+    }
+
+    private DeployEvents newEvents(DeployRequest deployRequest) {
+        return new DeployEvents(deployRequest.getEventSubscription(), metrics);
+    }
+
+    static Map<?, ?> parseJson(String json) throws IOException {
+        return jsonMapper.readValue(json, Map.class);
+    }
+
+    static DeployStatus readStatus(ClientResponse response) {
+        try {
+            return DeployStatus.parse(response.getEntity(byte[].class));
+        } catch (IOException e) {
+            throw new DeploymentException(Reason.INVALID_STATUS, "Could not read deploy status: " + e.getMessage());
         }
-        return stringMap;
     }
 
     public static final class Builder {
@@ -252,6 +806,18 @@ public class DirectToHerokuClient {
         private int port = DEFAULT_PORT;
         private String apiKey;
         public String consumersUserAgent;
+        private ScheduledExecutorService pollingScheduler;
+        private ExecutorService pollingExecutor;
+        private ExecutorService uploadExecutor;
+        private Transport transport;
+        private PipelineCache pipelineCache;
+        private MetricsExporter metricsExporter;
+        private RequestLimiter requestLimiter;
+        private DeployJournal deployJournal;
+        private DigestCache digestCache;
+        private BandwidthLimiter bandwidthLimiter;
+        private ResiliencePolicy resiliencePolicy;
+        private long metricsExportInterval = DEFAULT_METRICS_EXPORT_INTERVAL;
 
         public Builder setApiKey(String apiKey) {
             this.apiKey = apiKey;
@@ -278,6 +844,113 @@ public class DirectToHerokuClient {
             return this;
         }
 
+        /**
+         * HTTP transport used for all calls made by this client, e.g. a {@link PooledTransport}.
+         * Defaults to a {@link UrlConnectionTransport} shared by all clients.
+         */
+        public Builder setTransport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Caches pipeline metadata used by {@link DirectToHerokuClient#getPipeline(String)},
+         * {@link DirectToHerokuClient#getPipelineNames()} and {@link DirectToHerokuClient#verify(DeployRequest)}.
+         * Disabled by default.
+         */
+        public Builder setPipelineCache(PipelineCache pipelineCache) {
+            this.pipelineCache = pipelineCache;
+            return this;
+        }
+
+        /**
+         * Limits concurrent uploads and the rate of metadata and status requests made by this client, and by any other
+         * client sharing the same limiter. Requests over the limits wait their turn. Unlimited by default.
+         */
+        public Builder setRequestLimiter(RequestLimiter requestLimiter) {
+            this.requestLimiter = requestLimiter;
+            return this;
+        }
+
+        /**
+         * Records deploys in a journal on disk so that deploys interrupted by a restart can be followed to completion
+         * with {@link DirectToHerokuClient#resumeDeploys()}. Adds a digest of the artifacts to the start of each deploy.
+         * Disabled by default.
+         */
+        public Builder setDeployJournal(DeployJournal deployJournal) {
+            this.deployJournal = deployJournal;
+            return this;
+        }
+
+        /**
+         * Retries, hedges and guards with a circuit breaker the metadata and status calls, which are idempotent.
+         * Uploads are not repeated. Disabled by default, so a single failed call fails the deploy.
+         */
+        public Builder setResiliencePolicy(ResiliencePolicy resiliencePolicy) {
+            this.resiliencePolicy = resiliencePolicy;
+            return this;
+        }
+
+        /**
+         * Shapes the uploads of all deploys to a shared rate. Unlimited by default.
+         */
+        public Builder setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+            this.bandwidthLimiter = bandwidthLimiter;
+            return this;
+        }
+
+        /**
+         * Records digests of deployed files so that deploys of unchanged files can be skipped with
+         * {@link DeployRequest#setSkipIfUnchanged(boolean)}. Disabled by default.
+         */
+        public Builder setDigestCache(DigestCache digestCache) {
+            this.digestCache = digestCache;
+            return this;
+        }
+
+        /**
+         * Pushes the client's {@link ClientMetrics} to the exporter every {@link #setMetricsExportInterval(long)}
+         * milliseconds, on the polling scheduler. Exports stop once the client is garbage collected.
+         */
+        public Builder setMetricsExporter(MetricsExporter metricsExporter) {
+            this.metricsExporter = metricsExporter;
+            return this;
+        }
+
+        public Builder setMetricsExportInterval(long metricsExportInterval) {
+            this.metricsExportInterval = metricsExportInterval;
+            return this;
+        }
+
+        /**
+         * Scheduler that times status polls, deadlines and metrics exports for {@link DirectToHerokuClient#deployAsync}.
+         * Only short tasks run on it; polls themselves are sent by the {@link #setPollingExecutor(ExecutorService) polling executor}.
+         * Defaults to a scheduler with {@link DirectToHerokuClient#DEFAULT_POLLING_THREADS} daemon threads shared by all clients.
+         */
+        public Builder setPollingScheduler(ScheduledExecutorService pollingScheduler) {
+            this.pollingScheduler = pollingScheduler;
+            return this;
+        }
+
+        /**
+         * Executor that sends the status polls timed by the {@link #setPollingScheduler(ScheduledExecutorService) polling scheduler}.
+         * Defaults to {@link DirectToHerokuClient#DEFAULT_POLLING_WORKERS} daemon threads shared by all clients.
+         */
+        public Builder setPollingExecutor(ExecutorService pollingExecutor) {
+            this.pollingExecutor = pollingExecutor;
+            return this;
+        }
+
+        /**
+         * Executor used to run uploads for {@link DirectToHerokuClient#deployAsync}. Defaults to a cached pool of daemon
+         * threads shared by all clients. Verification runs on a separate pool, so it never waits behind uploads and can
+         * be called from tasks on this executor.
+         */
+        public Builder setUploadExecutor(ExecutorService uploadExecutor) {
+            this.uploadExecutor = uploadExecutor;
+            return this;
+        }
+
         public DirectToHerokuClient build() {
             return new DirectToHerokuClient(this);
         }
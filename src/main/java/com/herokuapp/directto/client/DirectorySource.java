@@ -0,0 +1,248 @@
+package com.herokuapp.directto.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+/**
+ * A directory archived on the fly while it is uploaded, so no archive is ever written to disk.
+ * Set per file key with {@link DeployRequest#setDirectory(String, DirectorySource)}.
+ * <p/>
+ * Files are selected with Ant-style globs matched against paths relative to the directory, using {@code /} as
+ * the separator: {@code *} and {@code ?} match within a path segment and {@code **} matches any number of segments,
+ * e.g. {@code WEB-INF/lib/*.jar} or {@code **}{@code /*.class}. A file is included if it matches any include glob,
+ * or if there are none, and does not match any exclude glob. Entries are archived in sorted path order, so the
+ * same directory always produces the same archive.
+ * <p/>
+ * Entries are compressed on {@link #setParallelism(int)} cores at once while earlier entries are being sent.
+ * Archive sizes are limited to 4 GB for {@link Format#ZIP} and 8 GB per file for {@link Format#TAR_GZ}.
+ *
+ * @author Ryan Brainard
+ */
+public final class DirectorySource {
+
+    public static enum Format {
+        /**
+         * Zip archive, as used for WAR and JAR files
+         */
+        ZIP(".zip"),
+
+        /**
+         * Gzip compressed tar archive
+         */
+        TAR_GZ(".tar.gz");
+
+        private final String extension;
+
+        private Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final File directory;
+    private final List<String> includes = new ArrayList<String>();
+    private final List<String> excludes = new ArrayList<String>();
+    private Format format = Format.ZIP;
+    private String fileName;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    public DirectorySource(File directory) {
+        this.directory = directory;
+    }
+
+    public DirectorySource include(String... globs) {
+        includes.addAll(Arrays.asList(globs));
+        return this;
+    }
+
+    public DirectorySource exclude(String... globs) {
+        excludes.addAll(Arrays.asList(globs));
+        return this;
+    }
+
+    public DirectorySource setFormat(Format format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * File name sent for the archive, e.g. {@code app.war}.
+     * Defaults to the directory name with the extension of the format.
+     */
+    public DirectorySource setFileName(String fileName) {
+        this.fileName = fileName;
+        return this;
+    }
+
+    /**
+     * @param parallelism maximum number of blocks compressed at once, which also bounds buffered memory
+     */
+    public DirectorySource setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * @param compressionLevel {@link Deflater} level from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DirectorySource setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public String getFileName() {
+        return fileName != null ? fileName : directory.getName() + format.getExtension();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @return files to archive in sorted order; empty if the directory does not exist
+     */
+    List<Entry> listEntries() {
+        final List<Pattern> includePatterns = compile(includes);
+        final List<Pattern> excludePatterns = compile(excludes);
+        final List<Entry> entries = new ArrayList<Entry>();
+        listEntries(directory, "", includePatterns, excludePatterns, new HashSet<String>(), entries);
+        return entries;
+    }
+
+    private static void listEntries(File dir, String prefix, List<Pattern> includes, List<Pattern> excludes,
+                                    Set<String> visited, List<Entry> entries) {
+        if (!visited.add(canonicalPath(dir))) {
+            return; // symlink cycle
+        }
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            final String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                listEntries(child, path + "/", includes, excludes, visited, entries);
+            } else if ((includes.isEmpty() || matchesAny(includes, path)) && !matchesAny(excludes, path)) {
+                entries.add(new Entry(path, child));
+            }
+        }
+    }
+
+    /**
+     * Archives the entries in this source's format. Compression runs on the shared compression executor;
+     * {@code progress} is called on the calling thread as files are read.
+     */
+    void writeTo(List<Entry> entries, OutputStream out, ProgressListener progress) throws IOException {
+        if (format == Format.TAR_GZ) {
+            new TarArchiveWriter(out, ContentCodecs.sharedCompressionExecutor, parallelism, compressionLevel, progress).write(entries);
+        } else {
+            new ZipArchiveWriter(out, ContentCodecs.sharedCompressionExecutor, parallelism, compressionLevel, progress).write(entries);
+        }
+    }
+
+    /**
+     * Converts an Ant-style glob to a regular expression
+     */
+    static Pattern toPattern(String glob) {
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+                    regex.append("(?:.*/)?");
+                    i += 2;
+                } else {
+                    regex.append(".*");
+                    i++;
+                }
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static List<Pattern> compile(List<String> globs) {
+        final List<Pattern> patterns = new ArrayList<Pattern>(globs.size());
+        for (String glob : globs) {
+            patterns.add(toPattern(glob));
+        }
+        return patterns;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String path) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * A file to archive, with its path in the archive
+     */
+    static final class Entry {
+        final String path;
+        final File file;
+
+        Entry(String path, File file) {
+            this.path = path;
+            this.file = file;
+        }
+    }
+
+    interface ProgressListener {
+        /**
+         * @param bytes read from the current file since the last call
+         */
+        void read(long bytes);
+    }
+}
@@ -0,0 +1,106 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.EventSubscription.Event;
+
+/**
+ * Data about an announced {@link Event}, delivered to {@link EventSubscription.DetailedSubscriber}s.
+ * Fields that do not apply to an event are zero or null.
+ *
+ * @author Ryan Brainard
+ */
+public final class EventDetails {
+
+    private final Event event;
+    private final long timestamp;
+    private final long phaseElapsed;
+    private final String fileKey;
+    private final long bytesTransferred;
+    private final long totalBytes;
+    private final double instantaneousThroughput;
+    private final double averageThroughput;
+    private final int pollAttempt;
+
+    EventDetails(Event event, long timestamp, long phaseElapsed, String fileKey, long bytesTransferred, long totalBytes,
+                 double instantaneousThroughput, double averageThroughput, int pollAttempt) {
+        this.event = event;
+        this.timestamp = timestamp;
+        this.phaseElapsed = phaseElapsed;
+        this.fileKey = fileKey;
+        this.bytesTransferred = bytesTransferred;
+        this.totalBytes = totalBytes;
+        this.instantaneousThroughput = instantaneousThroughput;
+        this.averageThroughput = averageThroughput;
+        this.pollAttempt = pollAttempt;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * When the event occurred, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Milliseconds since the start of the phase this event belongs to, e.g. since {@link Event#UPLOAD_START}
+     * for {@link Event#UPLOAD_PROGRESS} and {@link Event#UPLOAD_END}; zero for start events
+     */
+    public long getPhaseElapsed() {
+        return phaseElapsed;
+    }
+
+    /**
+     * File part being uploaded, for {@link Event#UPLOAD_PROGRESS}
+     */
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    /**
+     * Bytes of the file part sent so far for {@link Event#UPLOAD_PROGRESS}, or of all parts for {@link Event#UPLOAD_END}
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * Size of the file part for {@link Event#UPLOAD_PROGRESS}, or of all parts for {@link Event#UPLOAD_END}
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Bytes per second since the previous progress event
+     */
+    public double getInstantaneousThroughput() {
+        return instantaneousThroughput;
+    }
+
+    /**
+     * Bytes per second since the upload started
+     */
+    public double getAverageThroughput() {
+        return averageThroughput;
+    }
+
+    /**
+     * Number of the status poll, starting at 1, for {@link Event#POLLING}
+     */
+    public int getPollAttempt() {
+        return pollAttempt;
+    }
+
+    @Override
+    public String toString() {
+        return event + "{timestamp=" + timestamp + ", phaseElapsed=" + phaseElapsed
+                + (fileKey != null ? ", fileKey=" + fileKey : "")
+                + (totalBytes > 0 ? ", bytesTransferred=" + bytesTransferred + "/" + totalBytes : "")
+                + (averageThroughput > 0 ? ", averageThroughput=" + (long) averageThroughput + "B/s" : "")
+                + (pollAttempt > 0 ? ", pollAttempt=" + pollAttempt : "")
+                + "}";
+    }
+}
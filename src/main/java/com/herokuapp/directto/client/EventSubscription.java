@@ -7,44 +7,112 @@ import java.util.*;
  */
 public final class EventSubscription {
 
+    public static final long DEFAULT_PROGRESS_INTERVAL = 500;
+
     public static enum Event {
         DEPLOY_PRE_VERIFICATION_START,
         DEPLOY_PRE_VERIFICATION_END,
         DEPLOY_START,
         UPLOAD_START,
+        UPLOAD_PROGRESS,
         UPLOAD_END,
         POLL_START,
         POLLING,
         POLL_END,
-        DEPLOY_END
+        DEPLOY_END,
+        /**
+         * Announced instead of the upload, polling and {@link #DEPLOY_END} events when a deploy is skipped
+         * because its files are unchanged, see {@link DeployRequest#setSkipIfUnchanged(boolean)}
+         */
+        DEPLOY_SKIPPED
     }
 
     public static interface Subscriber {
         void handle(Event event);
     }
 
-    private final Map<Event, Set<Subscriber>> subscribers = new EnumMap<Event, Set<Subscriber>>(Event.class);
+    /**
+     * Subscriber that also receives timing, progress and throughput data with each event
+     */
+    public static interface DetailedSubscriber {
+        void handle(Event event, EventDetails details);
+    }
+
+    private final Map<Event, Set<DetailedSubscriber>> subscribers = new EnumMap<Event, Set<DetailedSubscriber>>(Event.class);
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
 
     void announce(Event event) {
         if (subscribers.containsKey(event)) {
-            for (Subscriber subscriber : subscribers.get(event)) {
-                subscriber.handle(event);
+            announce(event, new EventDetails(event, System.currentTimeMillis(), 0, null, 0, 0, 0, 0, 0));
+        }
+    }
+
+    void announce(Event event, EventDetails details) {
+        if (subscribers.containsKey(event)) {
+            for (DetailedSubscriber subscriber : subscribers.get(event)) {
+                subscriber.handle(event, details);
             }
         }
     }
 
+    boolean hasSubscribers(Event event) {
+        return subscribers.containsKey(event);
+    }
+
     public EventSubscription subscribe(Event event, Subscriber subscriber) {
         return subscribe(EnumSet.of(event), subscriber);
     }
 
     public EventSubscription subscribe(EnumSet<Event> events, Subscriber subscriber) {
+        return subscribe(events, new SubscriberAdapter(subscriber));
+    }
+
+    public EventSubscription subscribe(Event event, DetailedSubscriber subscriber) {
+        return subscribe(EnumSet.of(event), subscriber);
+    }
+
+    public EventSubscription subscribe(EnumSet<Event> events, DetailedSubscriber subscriber) {
         for (Event event : events) {
             if (!subscribers.containsKey(event)) {
-                subscribers.put(event, new HashSet<Subscriber>());
+                subscribers.put(event, new HashSet<DetailedSubscriber>());
             }
             subscribers.get(event).add(subscriber);
         }
 
         return this;
     }
+
+    /**
+     * Minimum milliseconds between {@link Event#UPLOAD_PROGRESS} announcements for a deploy
+     */
+    public EventSubscription setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+        return this;
+    }
+
+    long getProgressInterval() {
+        return progressInterval;
+    }
+
+    private static final class SubscriberAdapter implements DetailedSubscriber {
+        private final Subscriber subscriber;
+
+        SubscriberAdapter(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        public void handle(Event event, EventDetails details) {
+            subscriber.handle(event);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SubscriberAdapter && ((SubscriberAdapter) o).subscriber.equals(subscriber);
+        }
+
+        @Override
+        public int hashCode() {
+            return subscriber.hashCode();
+        }
+    }
 }
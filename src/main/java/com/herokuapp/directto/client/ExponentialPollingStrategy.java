@@ -0,0 +1,26 @@
+package com.herokuapp.directto.client;
+
+/**
+ * Multiplies the interval after every poll, up to a maximum.
+ * This is the default, configured from {@link DeployRequest#setPollingIntervalInit(long)},
+ * {@link DeployRequest#setPollingIntervalMultiplier(double)} and {@link DeployRequest#setPollingIntervalMax(long)}.
+ *
+ * @author Ryan Brainard
+ */
+public class ExponentialPollingStrategy implements PollingStrategy {
+
+    private final long initialInterval;
+    private final double multiplier;
+    private final long maxInterval;
+
+    public ExponentialPollingStrategy(long initialInterval, double multiplier, long maxInterval) {
+        this.initialInterval = initialInterval;
+        this.multiplier = multiplier;
+        this.maxInterval = maxInterval;
+    }
+
+    public long nextInterval(int attempt, long previousInterval) {
+        final double interval = initialInterval * Math.pow(multiplier, attempt);
+        return interval < maxInterval ? (long) interval : maxInterval;
+    }
+}
@@ -0,0 +1,130 @@
+package com.herokuapp.directto.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Local filesystem checks for {@link DirectToHerokuClient#verify(DeployRequest)}.
+ * <p/>
+ * Each file is inspected once, resolving its canonical path so that symlinks and {@code ..} segments
+ * pointing at the same file are caught as duplicates. Large file maps are inspected in parallel batches.
+ *
+ * @author Ryan Brainard
+ */
+final class FileChecks {
+
+    static final int BATCH_SIZE = 16;
+
+    private FileChecks() {
+    }
+
+    /**
+     * @return problems found, in the order of the file map
+     */
+    static List<String> check(Map<String, File> files, ExecutorService executor) {
+        final List<Map.Entry<String, File>> entries = new ArrayList<Map.Entry<String, File>>(files.entrySet());
+        final List<FileStatus> statuses = new ArrayList<FileStatus>(entries.size());
+
+        if (entries.size() <= BATCH_SIZE) {
+            statuses.addAll(inspect(entries));
+        } else {
+            final List<Future<List<FileStatus>>> batches = new ArrayList<Future<List<FileStatus>>>();
+            for (int start = 0; start < entries.size(); start += BATCH_SIZE) {
+                final List<Map.Entry<String, File>> batch = entries.subList(start, Math.min(start + BATCH_SIZE, entries.size()));
+                batches.add(executor.submit(new Callable<List<FileStatus>>() {
+                    public List<FileStatus> call() {
+                        return inspect(batch);
+                    }
+                }));
+            }
+            for (Future<List<FileStatus>> batch : batches) {
+                try {
+                    statuses.addAll(batch.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        }
+
+        final List<String> problems = new ArrayList<String>();
+        final Set<String> canonicalPaths = new HashSet<String>();
+        boolean duplicates = false;
+        for (FileStatus status : statuses) {
+            if (!status.exists) {
+                problems.add("File not found for: " + status.key + " (" + status.file + ")");
+            } else if ("procfile".equals(status.key) && status.length == 0) {
+                problems.add("Procfile must not be empty");
+            }
+            if (status.canonicalPath != null && !canonicalPaths.add(status.canonicalPath)) {
+                duplicates = true;
+            }
+        }
+        if (duplicates) {
+            problems.add("All files must be unique");
+        }
+        return problems;
+    }
+
+    /**
+     * @return problems found with directory sources, in the order of the directory map
+     */
+    static List<String> checkDirectories(Map<String, File> files, Map<String, DirectorySource> directories) {
+        final List<String> problems = new ArrayList<String>();
+        for (Map.Entry<String, DirectorySource> directory : directories.entrySet()) {
+            final File dir = directory.getValue().getDirectory();
+            if (files.containsKey(directory.getKey())) {
+                problems.add("File and directory both specified for: " + directory.getKey());
+            }
+            if (dir == null || !dir.isDirectory()) {
+                problems.add("Directory not found for: " + directory.getKey() + " (" + dir + ")");
+            } else if (directory.getValue().listEntries().isEmpty()) {
+                problems.add("No files to archive for: " + directory.getKey() + " (" + dir + ")");
+            }
+        }
+        return problems;
+    }
+
+    private static List<FileStatus> inspect(List<Map.Entry<String, File>> entries) {
+        final List<FileStatus> statuses = new ArrayList<FileStatus>(entries.size());
+        for (Map.Entry<String, File> entry : entries) {
+            statuses.add(new FileStatus(entry.getKey(), entry.getValue()));
+        }
+        return statuses;
+    }
+
+    private static final class FileStatus {
+        final String key;
+        final File file;
+        final String canonicalPath;
+        final boolean exists;
+        final long length;
+
+        FileStatus(String key, File file) {
+            this.key = key;
+            this.file = file;
+            this.exists = file != null && file.exists();
+            this.length = exists ? file.length() : 0;
+            this.canonicalPath = file != null ? canonicalPath(file) : null;
+        }
+
+        private static String canonicalPath(File file) {
+            try {
+                return file.getCanonicalPath();
+            } catch (IOException e) {
+                return file.getAbsolutePath();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.herokuapp.directto.client;
+
+/**
+ * Waits the same amount of time between every poll
+ *
+ * @author Ryan Brainard
+ */
+public class FixedIntervalPollingStrategy implements PollingStrategy {
+
+    private final long interval;
+
+    public FixedIntervalPollingStrategy(long interval) {
+        this.interval = interval;
+    }
+
+    public long nextInterval(int attempt, long previousInterval) {
+        return interval;
+    }
+}
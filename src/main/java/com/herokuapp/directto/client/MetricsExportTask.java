@@ -0,0 +1,35 @@
+package com.herokuapp.directto.client;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Periodically hands a client's metrics to a {@link MetricsExporter}.
+ * <p/>
+ * Only weakly holds the metrics so a scheduled export does not keep an otherwise unused client alive;
+ * once they are collected the task ends itself by throwing, which cancels further runs.
+ *
+ * @author Ryan Brainard
+ */
+final class MetricsExportTask implements Runnable {
+
+    private final WeakReference<ClientMetrics> metrics;
+    private final MetricsExporter exporter;
+
+    MetricsExportTask(ClientMetrics metrics, MetricsExporter exporter) {
+        this.metrics = new WeakReference<ClientMetrics>(metrics);
+        this.exporter = exporter;
+    }
+
+    public void run() {
+        final ClientMetrics current = metrics.get();
+        if (current == null) {
+            throw new IllegalStateException("Client no longer in use");
+        }
+
+        try {
+            exporter.export(current);
+        } catch (RuntimeException e) {
+            // swallow; an exception would cancel all later exports
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.herokuapp.directto.client;
+
+/**
+ * Receives a client's metrics periodically to push them to a monitoring system.
+ * Set with {@link DirectToHerokuClient.Builder#setMetricsExporter(MetricsExporter)}.
+ * <p/>
+ * Metrics are cumulative since the client was built; exporters that report deltas should keep the previous values.
+ * Exports run on the client's polling scheduler, so implementations should return quickly.
+ *
+ * @author Ryan Brainard
+ */
+public interface MetricsExporter {
+
+    void export(ClientMetrics metrics);
+}
@@ -0,0 +1,50 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import static com.herokuapp.directto.client.ClientMetrics.Call;
+
+/**
+ * Times each HTTP call until the response headers are received, by call type.
+ *
+ * @author Ryan Brainard
+ */
+final class MetricsFilter extends ClientFilter {
+
+    private final ClientMetrics metrics;
+
+    MetricsFilter(ClientMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+        final long start = System.nanoTime();
+        final ClientResponse response = getNext().handle(request);
+        metrics.recordCall(classify(request.getMethod(), request.getURI().getPath()), (System.nanoTime() - start) / 1000);
+        return response;
+    }
+
+    static Call classify(String method, String path) {
+        if (path.endsWith("/pipelines")) {
+            return Call.PIPELINE_NAMES;
+        } else if (path.contains("/pipelines/")) {
+            return Call.PIPELINE;
+        } else if ("OPTIONS".equals(method)) {
+            return Call.PREFLIGHT;
+        } else if ("PUT".equals(method)) {
+            return Call.UPLOAD_CHUNK;
+        } else if ("POST".equals(method)) {
+            if (path.endsWith("/uploads")) {
+                return Call.UPLOAD_CREATE;
+            } else if (path.endsWith("/commit")) {
+                return Call.UPLOAD_COMMIT;
+            }
+            return Call.UPLOAD;
+        }
+        return path.contains("/uploads/") ? Call.UPLOAD_STATUS : Call.STATUS;
+    }
+}
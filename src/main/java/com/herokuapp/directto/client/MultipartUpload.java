@@ -0,0 +1,363 @@
+package com.herokuapp.directto.client;
+
+import javax.ws.rs.core.MediaType;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A multipart/form-data upload body that streams file parts instead of staging them in memory.
+ * <p/>
+ * When the transport's output stream is also a {@link WritableByteChannel}, file contents are sent with
+ * {@link FileChannel#transferTo} so the kernel can copy straight from the file to the socket. Otherwise each part is
+ * copied through a single buffer borrowed from a bounded {@link BufferPool}, which keeps heap use flat regardless of
+ * artifact size.
+ * <p/>
+ * Directories from {@link DeployRequest#setDirectory(String, DirectorySource)} are sent as parts archived on the fly.
+ * <p/>
+ * Progress is reported to {@link DeployEvents}, if given, in bytes read from the files before any archiving or encoding.
+ * A {@link DeployCancellation}, if given, is checked before each part and each buffer written, and while waiting for
+ * a pooled buffer, so a cancelled upload stops within one buffer and returns its buffer to the pool.
+ * <p/>
+ * Files still to be hashed by a {@link DigestCache.Capture}, if given, are hashed as they are read for the upload,
+ * which takes the buffered path instead of {@link FileChannel#transferTo}. So does an upload shaped by a
+ * {@link BandwidthLimiter}, if given, which is applied to the bytes written to the transport.
+ *
+ * @author Ryan Brainard
+ */
+final class MultipartUpload {
+
+    private static final String CRLF = "\r\n";
+    private static final String ENCODING = "UTF-8";
+    private static final long TRANSFER_SIZE = 8L * 1024L * 1024L;
+
+    private final String boundary = "Boundary_" + UUID.randomUUID().toString().replace("-", "");
+    private final List<Part> parts;
+    private final BufferPool bufferPool;
+    private final DeployEvents events;
+    private final DeployCancellation cancellation;
+    private final DigestCache.Capture digests;
+    private final BandwidthLimiter bandwidthLimiter;
+
+    MultipartUpload(DeployRequest deployRequest, DeployEvents events, DeployCancellation cancellation, DigestCache.Capture digests,
+                    BandwidthLimiter bandwidthLimiter) {
+        this(deployRequest.getFiles(), deployRequest.getDirectories(), deployRequest.getContentEncodings(), BufferPool.SHARED,
+                events, cancellation, digests, bandwidthLimiter);
+    }
+
+    MultipartUpload(Map<String, File> files) {
+        this(files, Collections.<String, ContentCodec>emptyMap(), BufferPool.SHARED);
+    }
+
+    MultipartUpload(Map<String, File> files, Map<String, ContentCodec> encodings, BufferPool bufferPool) {
+        this(files, Collections.<String, DirectorySource>emptyMap(), encodings, bufferPool, null, null, null, null);
+    }
+
+    MultipartUpload(Map<String, File> files, Map<String, DirectorySource> directories, Map<String, ContentCodec> encodings,
+                    BufferPool bufferPool, DeployEvents events, DeployCancellation cancellation, DigestCache.Capture digests,
+                    BandwidthLimiter bandwidthLimiter) {
+        final List<Part> parts = new ArrayList<Part>(files.size() + directories.size());
+        long total = 0;
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            parts.add(new Part(file.getKey(), file.getValue(), encodings.get(file.getKey())));
+            total += file.getValue().length();
+        }
+        for (Map.Entry<String, DirectorySource> directory : directories.entrySet()) {
+            final Part part = new Part(directory.getKey(), directory.getValue(), encodings.get(directory.getKey()));
+            parts.add(part);
+            total += part.getLength();
+        }
+        this.parts = Collections.unmodifiableList(parts);
+        this.bufferPool = bufferPool;
+        this.events = events;
+        this.cancellation = cancellation;
+        this.digests = digests;
+        this.bandwidthLimiter = bandwidthLimiter;
+        if (events != null) {
+            events.setUploadTotal(total);
+        }
+    }
+
+    MediaType getMediaType() {
+        return new MediaType("multipart", "form-data", Collections.singletonMap("boundary", boundary));
+    }
+
+    List<Part> getParts() {
+        return parts;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        if (bandwidthLimiter == null) {
+            writeParts(out);
+            return;
+        }
+
+        final BandwidthLimiter.Upload upload = bandwidthLimiter.startUpload(cancellation);
+        try {
+            writeParts(upload.wrap(out));
+        } finally {
+            upload.finish();
+        }
+    }
+
+    private void writeParts(OutputStream out) throws IOException {
+        for (Part part : parts) {
+            checkCancelled();
+            out.write(("--" + boundary + CRLF).getBytes(ENCODING));
+            out.write(part.getHeaders().getBytes(ENCODING));
+            out.write(CRLF.getBytes(ENCODING));
+            part.writeContentTo(out);
+            out.write(CRLF.getBytes(ENCODING));
+        }
+        out.write(("--" + boundary + "--" + CRLF).getBytes(ENCODING));
+        out.flush();
+    }
+
+    private void checkCancelled() throws IOException {
+        if (cancellation != null) {
+            cancellation.checkIO();
+        }
+    }
+
+    final class Part {
+        private final String name;
+        private final File file;
+        private final DirectorySource directory;
+        private final List<DirectorySource.Entry> entries;
+        private final ContentCodec codec;
+
+        Part(String name, File file, ContentCodec codec) {
+            this.name = name;
+            this.file = file;
+            this.directory = null;
+            this.entries = null;
+            this.codec = codec;
+        }
+
+        Part(String name, DirectorySource directory, ContentCodec codec) {
+            this.name = name;
+            this.file = null;
+            this.directory = directory;
+            this.entries = directory.listEntries();
+            this.codec = codec;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        ContentCodec getCodec() {
+            return codec;
+        }
+
+        boolean isDirectory() {
+            return directory != null;
+        }
+
+        /**
+         * @return file name sent for the part
+         */
+        String getFileName() {
+            return file != null ? file.getName() : directory.getFileName();
+        }
+
+        /**
+         * @return bytes of file contents to read, before any archiving or encoding
+         */
+        long getLength() {
+            if (file != null) {
+                return file.length();
+            }
+            long length = 0;
+            for (DirectorySource.Entry entry : entries) {
+                length += entry.file.length();
+            }
+            return length;
+        }
+
+        String getHeaders() {
+            return "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + getFileName() + "\"" + CRLF +
+                    "Content-Type: " + MediaType.APPLICATION_OCTET_STREAM + CRLF +
+                    (codec != null ? "Content-Encoding: " + codec.getContentEncoding() + CRLF : "");
+        }
+
+        void writeContentTo(OutputStream out) throws IOException {
+            if (directory != null) {
+                writeArchiveTo(out);
+                return;
+            }
+
+            final boolean hashed = digests != null && digests.isPending(name, file);
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                if (codec != null && !(codec instanceof ContentCodecs.PreEncoded)) {
+                    final CheckedOutputStream target = new CheckedOutputStream(out);
+                    final OutputStream encoded = codec.encode(new BufferedOutputStream(target, bufferPool.getBufferSize()));
+                    boolean completed = false;
+                    try {
+                        copy(in.getChannel(), encoded, hashed);
+                        encoded.close();
+                        completed = true;
+                    } finally {
+                        if (!completed) {
+                            abandon(encoded, target);
+                        }
+                    }
+                } else if (out instanceof WritableByteChannel && !hashed) {
+                    out.flush();
+                    transfer(in.getChannel(), (WritableByteChannel) out);
+                } else {
+                    copy(in.getChannel(), out, hashed);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        private void writeArchiveTo(OutputStream out) throws IOException {
+            final CheckedOutputStream target = new CheckedOutputStream(out);
+            final OutputStream buffered = new BufferedOutputStream(target, bufferPool.getBufferSize());
+            final OutputStream archive = codec != null ? codec.encode(buffered) : buffered;
+            final long size = getLength();
+            boolean completed = false;
+            try {
+                directory.writeTo(entries, archive, new DirectorySource.ProgressListener() {
+                    private long position;
+
+                    public void read(long bytes) {
+                        position += bytes;
+                        progress(bytes, position, size);
+                    }
+                });
+                archive.close();
+                completed = true;
+            } finally {
+                if (!completed) {
+                    abandon(archive, target);
+                }
+            }
+        }
+
+        /**
+         * Releases a failed part's encoder, ending its deflater or cancelling its compression tasks,
+         * without writing what it still holds to the request body
+         */
+        private void abandon(OutputStream encoder, CheckedOutputStream target) {
+            target.discard();
+            if (encoder instanceof ParallelGzipOutputStream) {
+                ((ParallelGzipOutputStream) encoder).abort();
+                return;
+            }
+            try {
+                encoder.close();
+            } catch (IOException e) {
+                // swallow
+            }
+        }
+
+        private void transfer(FileChannel source, WritableByteChannel target) throws IOException {
+            final long size = source.size();
+            long position = 0;
+            while (position < size) {
+                checkCancelled();
+                final long transferred = source.transferTo(position, Math.min(size - position, TRANSFER_SIZE), target);
+                position += transferred;
+                progress(transferred, position, size);
+            }
+        }
+
+        private void copy(FileChannel source, OutputStream target, boolean hashed) throws IOException {
+            final byte[] buffer;
+            try {
+                buffer = bufferPool.acquire(cancellation);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for upload buffer");
+            }
+            try {
+                final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                final long size = source.size();
+                long position = 0;
+                int read;
+                while ((read = source.read(wrapped)) != -1) {
+                    checkCancelled();
+                    if (hashed) {
+                        digests.update(name, buffer, 0, read);
+                    }
+                    target.write(buffer, 0, read);
+                    wrapped.clear();
+                    position += read;
+                    progress(read, position, size);
+                }
+            } finally {
+                bufferPool.release(buffer);
+            }
+        }
+
+        private void progress(long transferred, long position, long size) {
+            if (events != null) {
+                events.uploadProgress(name, transferred, position, size);
+            }
+        }
+    }
+
+    /**
+     * Lets a codec close its own stream to finish encoding without closing the request body,
+     * and stops encoded and archived parts once the upload is cancelled.
+     * Once discarded, anything still written by a failed part's encoder is dropped.
+     */
+    private final class CheckedOutputStream extends FilterOutputStream {
+
+        private boolean discarded;
+
+        CheckedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        void discard() {
+            discarded = true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (discarded) {
+                return;
+            }
+            checkCancelled();
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!discarded) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.herokuapp.directto.client;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Jersey provider that streams a {@link MultipartUpload} to the request body.
+ *
+ * @author Ryan Brainard
+ */
+@Produces(MediaType.MULTIPART_FORM_DATA)
+final class MultipartUploadWriter implements MessageBodyWriter<MultipartUpload> {
+
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return MultipartUpload.class.isAssignableFrom(type);
+    }
+
+    public long getSize(MultipartUpload upload, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    public void writeTo(MultipartUpload upload, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        upload.writeTo(entityStream);
+    }
+}
@@ -0,0 +1,135 @@
+package com.herokuapp.directto.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses fixed-size blocks on an executor, each as its own gzip member, and writes them out in order.
+ * At most {@code parallelism} blocks are in flight, so buffered memory stays around {@code 2 * blockSize * parallelism}.
+ *
+ * @author Ryan Brainard
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int parallelism;
+    private final int compressionLevel;
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    private byte[] block;
+    private int blockLength;
+    private boolean closed;
+
+    ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int blockSize, int parallelism) {
+        this(out, executor, blockSize, parallelism, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int blockSize, int parallelism, int compressionLevel) {
+        this.out = out;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.parallelism = Math.max(1, parallelism);
+        this.compressionLevel = compressionLevel;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            final int copied = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, copied);
+            blockLength += copied;
+            off += copied;
+            len -= copied;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (blockLength > 0 || pending.isEmpty()) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeNextMember();
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Gives up on the stream without writing anything more, cancelling blocks that are still being compressed
+     */
+    void abort() {
+        closed = true;
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        block = null;
+        blockLength = 0;
+    }
+
+    private void submitBlock() throws IOException {
+        if (pending.size() >= parallelism) {
+            writeNextMember();
+        }
+        final byte[] input = block;
+        final int length = blockLength;
+        pending.add(executor.submit(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                final ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+                final GZIPOutputStream gzip = new GZIPOutputStream(member, 8192) {
+                    {
+                        def.setLevel(compressionLevel);
+                    }
+                };
+                gzip.write(input, 0, length);
+                gzip.close();
+                return member.toByteArray();
+            }
+        }));
+        block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void writeNextMember() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            final IOException ioe = new IOException("Compression failed: " + e.getCause());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
+}
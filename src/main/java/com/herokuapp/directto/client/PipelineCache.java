@@ -0,0 +1,134 @@
+package com.herokuapp.directto.client;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache of pipeline metadata with a time-to-live, used by {@link DirectToHerokuClient#getPipeline(String)},
+ * {@link DirectToHerokuClient#getPipelineNames()} and therefore {@link DirectToHerokuClient#verify(DeployRequest)}.
+ * <p/>
+ * Expired entries are revalidated with {@code If-None-Match} when the server provided an {@code ETag}, so unchanged
+ * metadata is not downloaded again. Least recently used entries are evicted once {@code maxEntries} is reached.
+ * A cache can be shared by several clients; entries are keyed by full URL.
+ *
+ * @author Ryan Brainard
+ */
+public class PipelineCache {
+
+    public static final long DEFAULT_TTL = 5L * 60L * 1000L;
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    private final long ttl;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+
+    public PipelineCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param ttl        milliseconds an entry is used without contacting the server
+     * @param maxEntries maximum number of cached responses
+     */
+    public PipelineCache(long ttl, final int maxEntries) {
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Removes the cached details of a pipeline, from every client sharing this cache
+     */
+    public synchronized void invalidate(String pipelineName) {
+        final String suffix = "/pipelines/" + pipelineName;
+        entries.keySet().removeAll(keysEndingWith(suffix));
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Lookups answered from the cache without contacting the server
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Lookups that downloaded the metadata from the server
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Lookups where the server confirmed an expired entry was unchanged
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the entry for a key, fresh or expired, or null if there is none
+     */
+    synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, Object value, String etag) {
+        entries.put(key, new Entry(value, etag, System.currentTimeMillis() + ttl));
+    }
+
+    synchronized void revalidated(String key, Entry entry) {
+        revalidations.incrementAndGet();
+        entries.put(key, new Entry(entry.value, entry.etag, System.currentTimeMillis() + ttl));
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    private List<String> keysEndingWith(String suffix) {
+        final List<String> keys = new ArrayList<String>();
+        for (String key : entries.keySet()) {
+            if (key.endsWith(suffix)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    static final class Entry {
+        final Object value;
+        final String etag;
+        final long expiresAt;
+
+        Entry(Object value, String etag, long expiresAt) {
+            this.value = value;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < expiresAt;
+        }
+    }
+}
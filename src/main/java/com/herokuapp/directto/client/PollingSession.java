@@ -0,0 +1,273 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.models.DeployStatus;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
+
+import javax.ws.rs.core.MediaType;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.herokuapp.directto.client.DeploymentException.Reason;
+import static com.herokuapp.directto.client.DirectToHerokuClient.*;
+import static com.herokuapp.directto.client.EventSubscription.Event.POLL_END;
+
+/**
+ * Polling state for a single deployment, shared by the blocking and asynchronous deploy paths.
+ * Callers decide how to wait between polls.
+ *
+ * @author Ryan Brainard
+ */
+final class PollingSession {
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    private static final MediaType EVENT_STREAM_TYPE = new MediaType("text", "event-stream");
+
+    private final DeployRequest deployRequest;
+    private final DeployEvents events;
+    private final DeployCancellation cancellation;
+    private final WebResource pollingRequest;
+    private final PollingStrategy pollingStrategy;
+    private final long startTime = System.currentTimeMillis();
+    private int attempts;
+    private long pollingInterval;
+    private long retryAfter = -1;
+    private DeployStatus response;
+    private ResilienceFilter.DeferredRetries deferredRetries;
+
+    PollingSession(DeployRequest deployRequest, DeployEvents events, DeployCancellation cancellation,
+                   WebResource pollingRequest, DeployStatus initialResponse) {
+        this.deployRequest = deployRequest;
+        this.events = events;
+        this.cancellation = cancellation;
+        this.pollingRequest = pollingRequest;
+        this.pollingStrategy = deployRequest.getPollingStrategy();
+        this.response = initialResponse;
+    }
+
+    boolean isInProcess() {
+        return response.isInProcess();
+    }
+
+    DeployCancellation getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Leaves polls that fail and should be retried to the caller's schedule, like a {@code Retry-After}: the poll
+     * returns without a new status and {@link #nextPollingInterval()} is the retry's backoff. Used by callers whose
+     * polling threads must not sleep through the backoff.
+     */
+    void deferRetries() {
+        deferredRetries = new ResilienceFilter.DeferredRetries();
+        pollingRequest.setProperty(ResilienceFilter.PROPERTY_DEFERRED_RETRIES, deferredRetries);
+    }
+
+    /**
+     * @throws DeploymentException if the deploy was cancelled or passed its deadline, or the polling timeout expired
+     */
+    void poll() {
+        cancellation.check();
+        events.announcePoll(++attempts);
+
+        final ClientResponse statusResponse;
+        try {
+            statusResponse = pollingRequest.get(ClientResponse.class);
+        } catch (ClientHandlerException e) {
+            if (!isRetryDeferred()) {
+                throw e;
+            }
+            checkTimeout();
+            return;
+        }
+        retryAfter = parseRetryAfter(statusResponse.getHeaders().getFirst("Retry-After"));
+        final int status = statusResponse.getStatus();
+        if ((status == HTTP_TOO_MANY_REQUESTS || status == HTTP_SERVICE_UNAVAILABLE) && retryAfter >= 0) {
+            statusResponse.close();
+            events.retried();
+        } else if (status >= 300) {
+            if (!isRetryDeferred()) {
+                throw new UniformInterfaceException(statusResponse);
+            }
+            statusResponse.close();
+        } else {
+            response = readStatus(statusResponse);
+            events.pollResponded();
+        }
+
+        checkTimeout();
+    }
+
+    /**
+     * @return true if the failed poll is to be retried after the delay now set as {@link #retryAfter}
+     */
+    private boolean isRetryDeferred() {
+        final long delay = deferredRetries != null ? deferredRetries.takeDelay() : -1;
+        if (delay < 0) {
+            return false;
+        }
+        retryAfter = delay;
+        return true;
+    }
+
+    private void checkTimeout() {
+        final long elapsed = System.currentTimeMillis() - startTime;
+        if (isInProcess() && elapsed >= deployRequest.getPollingTimeout()) {
+            throw new DeploymentException(Reason.POLLING_TIMEOUT, "Polling timed out after " + elapsed + "ms");
+        }
+    }
+
+    /**
+     * Follows status updates pushed by the server as server-sent events on the polling URL, until a terminal status.
+     * If the server answers with a regular JSON status instead, it is used like a poll result. Either way, if the
+     * deploy is still in process afterwards, the caller should continue with regular polling.
+     * <p/>
+     * A stream that stalls is closed by a timer on the scheduler once the polling timeout or the deploy's deadline
+     * is reached, even if the transport has no read timeout. Transports that cannot close a connection while it is
+     * being read, like the default one, are given a read timeout of the time remaining instead.
+     *
+     * @throws DeploymentException if the deploy was cancelled or passed its deadline, or the polling timeout expired
+     */
+    void stream(ScheduledExecutorService scheduler) {
+        cancellation.check();
+
+        final long remaining = remaining();
+        final StreamTimeout timeout = new StreamTimeout();
+        final Future<?> timer = scheduler.schedule(timeout, remaining, TimeUnit.MILLISECONDS);
+        pollingRequest.setProperty(ClientConfig.PROPERTY_READ_TIMEOUT, (int) Math.max(1, Math.min(Integer.MAX_VALUE, remaining)));
+        try {
+            followStream();
+        } catch (ClientHandlerException e) {
+            if (!timeout.isExpired() && remaining() > 0) {
+                throw e;
+            }
+        } finally {
+            pollingRequest.getProperties().remove(ClientConfig.PROPERTY_READ_TIMEOUT);
+            timeout.stop();
+            timer.cancel(false);
+        }
+
+        cancellation.check();
+        checkTimeout();
+    }
+
+    private void followStream() {
+        events.announcePoll(++attempts);
+
+        final ClientResponse statusResponse = pollingRequest.accept(EVENT_STREAM_TYPE, MediaType.APPLICATION_JSON_TYPE).get(ClientResponse.class);
+        if (statusResponse.getStatus() >= 300) {
+            statusResponse.close();
+            return;
+        }
+        if (!EVENT_STREAM_TYPE.isCompatible(statusResponse.getType())) {
+            response = readStatus(statusResponse);
+            events.pollResponded();
+            return;
+        }
+
+        try {
+            final BufferedReader eventStream = new BufferedReader(new InputStreamReader(statusResponse.getEntityInputStream(), "UTF-8"));
+            final StringBuilder data = new StringBuilder();
+            String line;
+            while (isInProcess() && (line = eventStream.readLine()) != null) {
+                if (line.startsWith("data:")) {
+                    data.append(data.length() > 0 ? "\n" : "").append(line.substring(line.startsWith("data: ") ? 6 : 5));
+                } else if (line.length() == 0 && data.length() > 0) {
+                    response = DeployStatus.parse(data.toString().getBytes("UTF-8"));
+                    data.setLength(0);
+                    events.pollResponded();
+                    checkTimeout();
+                    if (isInProcess()) {
+                        events.announcePoll(attempts);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // stream broken; fall back to polling
+        } finally {
+            statusResponse.close();
+        }
+    }
+
+    /**
+     * @return milliseconds to wait before the next poll; never past the polling timeout or the deploy's deadline
+     */
+    long nextPollingInterval() {
+        pollingInterval = retryAfter >= 0 ? retryAfter : pollingStrategy.nextInterval(attempts, pollingInterval);
+        return Math.min(pollingInterval, remaining());
+    }
+
+    /**
+     * @return milliseconds until the polling timeout or the deploy's deadline, whichever is sooner
+     */
+    private long remaining() {
+        final long pollingRemaining = deployRequest.getPollingTimeout() - (System.currentTimeMillis() - startTime);
+        return Math.max(0, Math.min(pollingRemaining, cancellation.remaining()));
+    }
+
+    Map<String, String> complete() {
+        if (!response.isSuccess()) {
+            final String unsuccessfulMsg = response.getStatus() + ":" + response.getMessage();
+            throw new DeploymentException(Reason.UNSUCCESSFUL, unsuccessfulMsg, response.toString());
+        }
+
+        events.announce(POLL_END);
+        return response.asMap();
+    }
+
+    /**
+     * @return milliseconds from a {@code Retry-After} header in delta-seconds or HTTP-date form, or -1 if absent or invalid
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000L);
+        } catch (NumberFormatException e) {
+            final SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return Math.max(0, httpDate.parse(retryAfter.trim()).getTime() - System.currentTimeMillis());
+            } catch (ParseException notADate) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Closes the connection of a stream still open when it fires
+     */
+    private final class StreamTimeout implements Runnable {
+        private boolean open = true;
+        private boolean expired;
+
+        public synchronized void run() {
+            if (open) {
+                expired = true;
+                cancellation.closeConnections();
+            }
+        }
+
+        synchronized void stop() {
+            open = false;
+        }
+
+        synchronized boolean isExpired() {
+            return expired;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.herokuapp.directto.client;
+
+/**
+ * Decides how long to wait between deploy status polls.
+ * Set with {@link DeployRequest#setPollingStrategy(PollingStrategy)}.
+ * <p/>
+ * A {@code Retry-After} header on a status response takes precedence over the strategy for that wait,
+ * and no wait ever extends past the deploy's polling timeout.
+ *
+ * @author Ryan Brainard
+ * @see ExponentialPollingStrategy
+ * @see DecorrelatedJitterPollingStrategy
+ * @see FixedIntervalPollingStrategy
+ */
+public interface PollingStrategy {
+
+    /**
+     * @param attempt          number of status polls made so far, starting at 1
+     * @param previousInterval milliseconds waited before the previous poll, or 0 if this is the first wait
+     * @return milliseconds to wait before the next poll
+     */
+    long nextInterval(int attempt, long previousInterval);
+}
@@ -0,0 +1,164 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.client.apache4.ApacheHttpClient4Handler;
+import org.apache.http.HttpConnection;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport backed by a pool of keep-alive connections, so repeated metadata, upload and polling calls
+ * reuse warm connections instead of paying for a new TCP and TLS handshake each time.
+ * <p/>
+ * Settings are applied when the pool is first used; call {@link #shutdown()} to close pooled connections
+ * once all clients using this transport are finished.
+ *
+ * @author Ryan Brainard
+ */
+public class PooledTransport implements Transport {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    public static final long DEFAULT_KEEP_ALIVE = 30L * 1000L;
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private long keepAlive = DEFAULT_KEEP_ALIVE;
+    private int connectTimeout;
+    private int readTimeout;
+
+    private ThreadSafeClientConnManager connectionManager;
+    private DefaultHttpClient httpClient;
+
+    public PooledTransport setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public PooledTransport setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        return this;
+    }
+
+    /**
+     * @param keepAlive longest time in milliseconds an idle connection is kept when the server does not say otherwise.
+     *                  Connections in use are kept for as long as they keep being reused.
+     */
+    public PooledTransport setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * @param connectTimeout in milliseconds; 0 for no timeout
+     */
+    public PooledTransport setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * @param readTimeout socket timeout in milliseconds; 0 for no timeout
+     */
+    public PooledTransport setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    public Client createClient(ClientConfig config) {
+        return new Client(new ApacheHttpClient4Handler(getHttpClient(), null, false), config);
+    }
+
+    /**
+     * Number of open connections currently held by the pool, leased or idle
+     */
+    public synchronized int getConnectionsInPool() {
+        return connectionManager != null ? connectionManager.getConnectionsInPool() : 0;
+    }
+
+    /**
+     * Closes pooled connections that have been idle for longer than their keep-alive. Expired connections are otherwise
+     * only closed when the pool next reaches them, so call this periodically to release them sooner.
+     */
+    public synchronized void closeIdleConnections() {
+        if (connectionManager != null) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(keepAlive, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Closes all pooled connections. Clients using this transport must not be used afterwards.
+     */
+    public synchronized void shutdown() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+            httpClient = null;
+        }
+    }
+
+    private synchronized DefaultHttpClient getHttpClient() {
+        if (httpClient == null) {
+            connectionManager = new ThreadSafeClientConnManager(SchemeRegistryFactory.createDefault());
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+            final HttpParams params = new BasicHttpParams();
+            HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+            HttpConnectionParams.setSoTimeout(params, readTimeout);
+            HttpConnectionParams.setStaleCheckingEnabled(params, true);
+
+            httpClient = new DefaultHttpClient(connectionManager, params);
+            httpClient.setKeepAliveStrategy(new BoundedKeepAliveStrategy(keepAlive));
+            httpClient.addRequestInterceptor(new CancellableConnectionInterceptor());
+        }
+        return httpClient;
+    }
+
+    /**
+     * Lets a cancelled deploy shut down the connection it is blocked on, which also keeps it out of the pool
+     */
+    private static class CancellableConnectionInterceptor implements HttpRequestInterceptor {
+        public void process(HttpRequest request, HttpContext context) {
+            final HttpConnection connection = (HttpConnection) context.getAttribute(ExecutionContext.HTTP_CONNECTION);
+            if (connection != null) {
+                DeployCancellation.connectionOpened(new Closeable() {
+                    public void close() throws IOException {
+                        connection.shutdown();
+                    }
+                });
+            }
+        }
+    }
+
+    private static class BoundedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        private final ConnectionKeepAliveStrategy serverStrategy = new DefaultConnectionKeepAliveStrategy();
+        private final long maxKeepAlive;
+
+        BoundedKeepAliveStrategy(long maxKeepAlive) {
+            this.maxKeepAlive = maxKeepAlive;
+        }
+
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            final long serverKeepAlive = serverStrategy.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, maxKeepAlive) : maxKeepAlive;
+        }
+    }
+}
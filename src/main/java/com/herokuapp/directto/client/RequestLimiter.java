@@ -0,0 +1,124 @@
+package com.herokuapp.directto.client;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the load clients put on the service: a fixed number of uploads may run at once, and metadata and status
+ * requests are paced by a token bucket. Callers over either limit wait in arrival order instead of failing.
+ * <p/>
+ * Share one limiter between clients with {@link DirectToHerokuClient.Builder#setRequestLimiter(RequestLimiter)}
+ * to apply the limits across all of them.
+ *
+ * @author Ryan Brainard
+ */
+public final class RequestLimiter {
+
+    private final int maxConcurrentUploads;
+    private final Semaphore uploadPermits;
+    private final double requestsPerNano;
+    private final int requestBurst;
+    private final LatencyHistogram uploadWaitTime = new LatencyHistogram();
+    private final LatencyHistogram requestWaitTime = new LatencyHistogram();
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @param maxConcurrentUploads uploads allowed at once
+     * @param requestsPerSecond    sustained rate of metadata and status requests, with bursts of up to one second's worth
+     */
+    public RequestLimiter(int maxConcurrentUploads, double requestsPerSecond) {
+        this(maxConcurrentUploads, requestsPerSecond, (int) Math.max(1, Math.ceil(requestsPerSecond)));
+    }
+
+    /**
+     * @param maxConcurrentUploads uploads allowed at once
+     * @param requestsPerSecond    sustained rate of metadata and status requests
+     * @param requestBurst         requests allowed at once after a quiet period
+     */
+    public RequestLimiter(int maxConcurrentUploads, double requestsPerSecond, int requestBurst) {
+        if (maxConcurrentUploads < 1 || requestsPerSecond <= 0 || requestBurst < 1) {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.uploadPermits = new Semaphore(maxConcurrentUploads, true);
+        this.requestsPerNano = requestsPerSecond / 1e9;
+        this.requestBurst = requestBurst;
+        this.tokens = requestBurst;
+    }
+
+    /**
+     * Uploads currently running
+     */
+    public int getActiveUploads() {
+        return maxConcurrentUploads - uploadPermits.availablePermits();
+    }
+
+    /**
+     * Uploads waiting for another upload to finish
+     */
+    public int getUploadQueueDepth() {
+        return uploadPermits.getQueueLength();
+    }
+
+    /**
+     * Metadata and status requests waiting for their turn
+     */
+    public synchronized int getRequestQueueDepth() {
+        refill(System.nanoTime());
+        return tokens < 0 ? (int) Math.ceil(-tokens) : 0;
+    }
+
+    /**
+     * Time uploads waited to start, in microseconds
+     */
+    public LatencyHistogram getUploadWaitTime() {
+        return uploadWaitTime;
+    }
+
+    /**
+     * Time metadata and status requests waited to be sent, in microseconds
+     */
+    public LatencyHistogram getRequestWaitTime() {
+        return requestWaitTime;
+    }
+
+    void acquireUpload() throws InterruptedException {
+        final long start = System.nanoTime();
+        uploadPermits.acquire();
+        uploadWaitTime.record((System.nanoTime() - start) / 1000);
+    }
+
+    void releaseUpload() {
+        uploadPermits.release();
+    }
+
+    /**
+     * Takes a request token, blocking until it is available
+     */
+    void acquireRequest() throws InterruptedException {
+        final long wait = reserveRequest();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes a request token, possibly ahead of time, for callers that would rather schedule the request than block
+     *
+     * @return milliseconds until the request may be sent
+     */
+    synchronized long reserveRequest() {
+        final long now = System.nanoTime();
+        refill(now);
+        tokens -= 1;
+        final long waitNanos = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / requestsPerNano);
+        requestWaitTime.record(waitNanos / 1000);
+        return (waitNanos + 999999) / 1000000;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(requestBurst, tokens + (now - lastRefill) * requestsPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,307 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import javax.ws.rs.core.HttpHeaders;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.herokuapp.directto.client.ClientMetrics.Call;
+
+/**
+ * Applies a {@link ResiliencePolicy} to {@code GET}, {@code HEAD} and {@code OPTIONS} calls; other calls pass through.
+ * So does streamed status, which is closed on purpose once it stalls past its timeout and must not be reopened.
+ * <p/>
+ * Hedged calls run both attempts on a shared pool of daemon threads while the caller waits for the first response,
+ * checking the deploy attached to its thread for cancellation. Each attempt is sent with that deploy attached, so
+ * cancelling it closes both connections. The slower response is closed when it arrives.
+ * <p/>
+ * Each retry and hedge takes a token from the {@link RequestLimiter}, if any, like the call it repeats.
+ * <p/>
+ * Callers that must not block through a backoff, like asynchronous polls, set {@link #PROPERTY_DEFERRED_RETRIES}
+ * on the request. A failed call that should be retried is then returned at once, and the delay before the retry is
+ * left for the caller to schedule.
+ *
+ * @author Ryan Brainard
+ */
+final class ResilienceFilter extends ClientFilter {
+
+    private static final ExecutorService hedgeExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("direct-to-hedge"));
+    private static final long WAIT_SLICE = 50;
+
+    /**
+     * Request property holding the {@link DeferredRetries} of a call whose retries the caller schedules itself
+     */
+    static final String PROPERTY_DEFERRED_RETRIES = ResilienceFilter.class.getName() + ".deferredRetries";
+
+    private final ResiliencePolicy policy;
+    private final ClientMetrics metrics;
+    private final RequestLimiter requestLimiter;
+
+    /**
+     * @param requestLimiter charged for each retry and hedge; may be null
+     */
+    ResilienceFilter(ResiliencePolicy policy, ClientMetrics metrics, RequestLimiter requestLimiter) {
+        this.policy = policy;
+        this.metrics = metrics;
+        this.requestLimiter = requestLimiter;
+    }
+
+    @Override
+    public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+        if (!isIdempotent(request.getMethod()) || isStreaming(request)) {
+            return getNext().handle(request);
+        }
+
+        final Call call = MetricsFilter.classify(request.getMethod(), request.getURI().getPath());
+        final DeployCancellation cancellation = DeployCancellation.current();
+        final DeferredRetries deferred = (DeferredRetries) request.getProperties().get(PROPERTY_DEFERRED_RETRIES);
+        for (int attempt = deferred != null ? deferred.attempts : 0; ; attempt++) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw new ClientHandlerException(new InterruptedIOException(cancellation.getReason()));
+            }
+            if (!policy.allowCall()) {
+                throw new ClientHandlerException("Service unavailable; failing fast until the circuit closes");
+            }
+
+            ClientResponse response = null;
+            ClientHandlerException failure = null;
+            boolean failed = true;
+            try {
+                response = attempt(request, call, cancellation);
+                failed = isRetryable(response);
+            } catch (ClientHandlerException e) {
+                failure = e;
+            } finally {
+                recordOutcome(failed, cancellation);
+            }
+
+            if (!failed || attempt >= policy.getMaxRetries() || (cancellation != null && cancellation.isCancelled())) {
+                if (deferred != null) {
+                    deferred.attempts = 0;
+                }
+                return outcome(response, failure);
+            }
+
+            metrics.recordRetry();
+            if (deferred != null) {
+                deferred.attempts = attempt + 1;
+                deferred.delay = policy.retryDelay(attempt);
+                return outcome(response, failure);
+            }
+            if (response != null) {
+                response.close();
+            }
+            final long delay = Math.max(policy.retryDelay(attempt), reserveRequest());
+            try {
+                Thread.sleep(cancellation != null ? Math.min(delay, cancellation.remaining()) : delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ClientHandlerException(new InterruptedIOException("Interrupted before retrying " + request.getURI()));
+            }
+        }
+    }
+
+    private ClientResponse attempt(ClientRequest request, Call call, DeployCancellation cancellation) {
+        final long hedgeDelay = policy.hedgeDelay(call);
+        if (hedgeDelay < 0) {
+            return timed(request, call);
+        }
+        return new HedgedCall(request, call, cancellation).run(hedgeDelay);
+    }
+
+    /**
+     * Records the outcome of an attempt for the circuit. An attempt that failed because its deploy was cancelled or
+     * passed its deadline says nothing about the service; it only gives up its place as the circuit's trial call.
+     */
+    private void recordOutcome(boolean failed, DeployCancellation cancellation) {
+        if (!failed) {
+            policy.recordSuccess();
+        } else if (cancellation != null && cancellation.isCancelled()) {
+            policy.recordAbandoned();
+        } else {
+            policy.recordFailure();
+        }
+    }
+
+    private static ClientResponse outcome(ClientResponse response, ClientHandlerException failure) {
+        if (failure != null) {
+            throw failure;
+        }
+        return response;
+    }
+
+    /**
+     * @return milliseconds until the limiter lets another request through
+     */
+    private long reserveRequest() {
+        return requestLimiter != null ? requestLimiter.reserveRequest() : 0;
+    }
+
+    private ClientResponse timed(ClientRequest request, Call call) {
+        final long start = System.nanoTime();
+        final ClientResponse response = getNext().handle(request);
+        policy.recordLatency(call, (System.nanoTime() - start) / 1000);
+        return response;
+    }
+
+    /**
+     * @return true for a server error the caller has not been told when to retry
+     */
+    private static boolean isRetryable(ClientResponse response) {
+        final int status = response.getStatus();
+        return status >= 500 && status != 501 && response.getHeaders().getFirst("Retry-After") == null;
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+
+    private static boolean isStreaming(ClientRequest request) {
+        final Object accept = request.getHeaders().getFirst(HttpHeaders.ACCEPT);
+        return accept != null && String.valueOf(accept).contains("text/event-stream");
+    }
+
+    /**
+     * Retries of a call left to the caller, which sends the call again after {@link #takeDelay()} if it is not negative.
+     * Calls sharing it must be sent one at a time.
+     */
+    static final class DeferredRetries {
+        private int attempts;
+        private long delay = -1;
+
+        /**
+         * @return milliseconds to wait before retrying the last call, or -1 if it should not be retried
+         */
+        long takeDelay() {
+            final long taken = delay;
+            delay = -1;
+            return taken;
+        }
+    }
+
+    /**
+     * A call sent once, and again if the first has not answered within the hedge delay
+     */
+    private final class HedgedCall {
+        private final ClientRequest request;
+        private final ClientRequest hedge;
+        private final Call call;
+        private final DeployCancellation cancellation;
+        private final BlockingQueue<Object> outcomes = new LinkedBlockingQueue<Object>();
+        private final AtomicBoolean answered = new AtomicBoolean();
+
+        HedgedCall(ClientRequest request, Call call, DeployCancellation cancellation) {
+            this.request = request;
+            this.hedge = request.clone();
+            this.call = call;
+            this.cancellation = cancellation;
+        }
+
+        ClientResponse run(long hedgeDelay) {
+            submit(request, 0);
+            int outstanding = 1;
+            ClientHandlerException failure = null;
+            long wait = hedgeDelay;
+            while (true) {
+                final Object outcome = await(wait);
+                if (outcome == null) {
+                    policy.recordHedge();
+                    submit(hedge, reserveRequest());
+                    outstanding++;
+                    wait = -1;
+                } else if (outcome instanceof ClientResponse) {
+                    return (ClientResponse) outcome;
+                } else {
+                    failure = failure != null ? failure : (ClientHandlerException) outcome;
+                    if (--outstanding == 0) {
+                        throw failure;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Closes responses no longer waited for, including any that arrive later
+         */
+        private void abandon() {
+            answered.set(true);
+            for (Object outcome : outcomes) {
+                if (outcome instanceof ClientResponse) {
+                    ((ClientResponse) outcome).close();
+                }
+            }
+        }
+
+        /**
+         * @param delay milliseconds to wait for a request token first; the attempt is dropped if answered by then
+         */
+        private void submit(final ClientRequest attempt, final long delay) {
+            hedgeExecutor.execute(new Runnable() {
+                public void run() {
+                    final DeployCancellation previous = cancellation != null ? cancellation.attach() : null;
+                    try {
+                        if (delay > 0) {
+                            Thread.sleep(delay);
+                            if (answered.get()) {
+                                return;
+                            }
+                        }
+                        final ClientResponse response = timed(attempt, call);
+                        if (answered.compareAndSet(false, true)) {
+                            outcomes.add(response);
+                        } else {
+                            response.close();
+                        }
+                    } catch (InterruptedException e) {
+                        outcomes.add(new ClientHandlerException(new InterruptedIOException("Interrupted before sending " + attempt.getURI())));
+                    } catch (ClientHandlerException e) {
+                        outcomes.add(e);
+                    } catch (RuntimeException e) {
+                        outcomes.add(new ClientHandlerException(e));
+                    } finally {
+                        if (cancellation != null) {
+                            cancellation.detach(previous);
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * @param timeout milliseconds, or -1 to wait until an outcome arrives
+         * @return the next response or failure, or null if the timeout passed first
+         */
+        private Object await(long timeout) {
+            final long deadline = System.currentTimeMillis() + timeout;
+            try {
+                while (true) {
+                    if (cancellation != null && cancellation.isCancelled()) {
+                        abandon();
+                        throw new ClientHandlerException(new InterruptedIOException(cancellation.getReason()));
+                    }
+                    final long slice = timeout < 0 ? WAIT_SLICE : Math.min(WAIT_SLICE, deadline - System.currentTimeMillis());
+                    if (slice <= 0) {
+                        return null;
+                    }
+                    final Object outcome = outcomes.poll(slice, TimeUnit.MILLISECONDS);
+                    if (outcome != null) {
+                        return outcome;
+                    }
+                }
+            } catch (InterruptedException e) {
+                abandon();
+                Thread.currentThread().interrupt();
+                throw new ClientHandlerException(new InterruptedIOException("Interrupted waiting for " + request.getURI()));
+            }
+        }
+    }
+}
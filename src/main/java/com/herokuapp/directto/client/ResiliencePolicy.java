@@ -0,0 +1,251 @@
+package com.herokuapp.directto.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.herokuapp.directto.client.ClientMetrics.Call;
+
+/**
+ * Retries, hedging and a circuit breaker for idempotent calls: pipeline metadata, deploy status polls and the status
+ * of resumable uploads. Uploads are never repeated by the policy; resumable uploads retry their own chunks.
+ * <p/>
+ * A call that fails with a connection error, or with a 5xx status without {@code Retry-After}, is retried up to
+ * {@code maxRetries} times with exponential backoff and jitter. Statuses with {@code Retry-After} are left to the
+ * caller, which already honors them. Retries stop early when the deploy is cancelled or reaches its deadline.
+ * Asynchronous deploys schedule the retries of their polls like the next poll, instead of waiting on a polling thread.
+ * <p/>
+ * Once enough latencies of a call type are known, a call that has not answered within the {@code hedgePercentile}
+ * of its type's latency is sent again, and whichever response arrives first is used. Streamed status is neither
+ * retried nor hedged.
+ * <p/>
+ * After {@code circuitFailureThreshold} consecutive failed calls, the circuit opens and calls fail at once with a
+ * {@link com.sun.jersey.api.client.ClientHandlerException} for {@code circuitOpenTime}. The next call is then let
+ * through as a trial, closing the circuit if it succeeds. Calls that fail because their deploy was cancelled or
+ * passed its deadline are not counted as failures.
+ * <p/>
+ * The policy keeps the circuit and latency state. Share one policy between clients of the same service with
+ * {@link DirectToHerokuClient.Builder#setResiliencePolicy(ResiliencePolicy)} so they open the circuit together.
+ *
+ * @author Ryan Brainard
+ */
+public final class ResiliencePolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_RETRY_BACKOFF = 250;
+    public static final long DEFAULT_MAX_RETRY_BACKOFF = 5000;
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+    public static final long DEFAULT_MIN_HEDGE_DELAY = 50;
+    public static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_CIRCUIT_OPEN_TIME = 30L * 1000L;
+
+    /**
+     * Latencies of a call type needed before its calls are hedged
+     */
+    static final int MIN_HEDGE_SAMPLES = 20;
+
+    public static enum CircuitState {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long retryBackoff = DEFAULT_RETRY_BACKOFF;
+    private long maxRetryBackoff = DEFAULT_MAX_RETRY_BACKOFF;
+    private double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+    private long minHedgeDelay = DEFAULT_MIN_HEDGE_DELAY;
+    private int circuitFailureThreshold = DEFAULT_CIRCUIT_FAILURE_THRESHOLD;
+    private long circuitOpenTime = DEFAULT_CIRCUIT_OPEN_TIME;
+
+    private final Map<Call, LatencyHistogram> latencies = new EnumMap<Call, LatencyHistogram>(Call.class);
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final Random random = new Random();
+
+    private CircuitState circuitState = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public ResiliencePolicy() {
+        for (Call call : Call.values()) {
+            latencies.put(call, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * @param maxRetries times a failed call is repeated; 0 to disable retries
+     */
+    public ResiliencePolicy setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * @param retryBackoff milliseconds before the first retry, doubled on each further retry
+     */
+    public ResiliencePolicy setRetryBackoff(long retryBackoff) {
+        this.retryBackoff = retryBackoff;
+        return this;
+    }
+
+    public ResiliencePolicy setMaxRetryBackoff(long maxRetryBackoff) {
+        this.maxRetryBackoff = maxRetryBackoff;
+        return this;
+    }
+
+    /**
+     * @param hedgePercentile latency percentile of a call type after which its calls are sent again; 0 to disable hedging
+     */
+    public ResiliencePolicy setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+        return this;
+    }
+
+    /**
+     * @param minHedgeDelay milliseconds a call is always given before it is hedged
+     */
+    public ResiliencePolicy setMinHedgeDelay(long minHedgeDelay) {
+        this.minHedgeDelay = minHedgeDelay;
+        return this;
+    }
+
+    /**
+     * @param circuitFailureThreshold consecutive failed calls that open the circuit; 0 to disable the circuit breaker
+     */
+    public ResiliencePolicy setCircuitFailureThreshold(int circuitFailureThreshold) {
+        this.circuitFailureThreshold = circuitFailureThreshold;
+        return this;
+    }
+
+    /**
+     * @param circuitOpenTime milliseconds calls fail fast once the circuit opens
+     */
+    public ResiliencePolicy setCircuitOpenTime(long circuitOpenTime) {
+        this.circuitOpenTime = circuitOpenTime;
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    public long getMaxRetryBackoff() {
+        return maxRetryBackoff;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public long getMinHedgeDelay() {
+        return minHedgeDelay;
+    }
+
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    public long getCircuitOpenTime() {
+        return circuitOpenTime;
+    }
+
+    /**
+     * Latencies of individual attempts of a call type, including hedged ones, in microseconds
+     */
+    public LatencyHistogram getLatency(Call call) {
+        return latencies.get(call);
+    }
+
+    /**
+     * Calls sent again because the first attempt was slow
+     */
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * Calls failed at once because the circuit was open
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public synchronized CircuitState getCircuitState() {
+        return circuitState;
+    }
+
+    /**
+     * @return false if the call should fail at once; true lets it through, as the trial call if the open time has passed
+     */
+    synchronized boolean allowCall() {
+        if (circuitState == CircuitState.OPEN && System.currentTimeMillis() - openedAt >= circuitOpenTime) {
+            circuitState = CircuitState.HALF_OPEN;
+            return true;
+        }
+        if (circuitState != CircuitState.CLOSED) {
+            rejections.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        circuitState = CircuitState.CLOSED;
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (circuitState == CircuitState.HALF_OPEN
+                || (circuitFailureThreshold > 0 && consecutiveFailures >= circuitFailureThreshold)) {
+            circuitState = CircuitState.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Records a call given up by its caller; if it was the trial call, the next call is let through instead
+     */
+    synchronized void recordAbandoned() {
+        if (circuitState == CircuitState.HALF_OPEN) {
+            circuitState = CircuitState.OPEN;
+        }
+    }
+
+    void recordLatency(Call call, long micros) {
+        latencies.get(call).record(micros);
+    }
+
+    void recordHedge() {
+        hedges.incrementAndGet();
+    }
+
+    /**
+     * @return milliseconds to wait for a call before hedging it, or -1 if it should not be hedged
+     */
+    long hedgeDelay(Call call) {
+        final LatencyHistogram latency = latencies.get(call);
+        if (hedgePercentile <= 0 || latency.getCount() < MIN_HEDGE_SAMPLES) {
+            return -1;
+        }
+        return Math.max(minHedgeDelay, latency.getPercentile(hedgePercentile) / 1000);
+    }
+
+    /**
+     * @return milliseconds to wait before a retry: half the exponential backoff plus up to as much again at random
+     */
+    long retryDelay(int attempt) {
+        final long backoff = Math.min(retryBackoff << Math.min(attempt, 16), maxRetryBackoff);
+        final double jitter;
+        synchronized (random) {
+            jitter = random.nextDouble();
+        }
+        return backoff / 2 + (long) (jitter * (backoff - backoff / 2));
+    }
+}
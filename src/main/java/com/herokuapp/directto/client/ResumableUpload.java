@@ -0,0 +1,296 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.core.util.Base64;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.herokuapp.directto.client.DeploymentException.Reason;
+
+/**
+ * Uploads files in checksummed chunks that are individually retried, so a failure near the end of a large
+ * upload does not restart the whole transfer.
+ * <p/>
+ * Protocol:
+ * <ol>
+ * <li>{@code POST /direct/{app}/{pipeline}/uploads} with a JSON body of file names and sizes;
+ * answered with {@code 201 Created} and the upload URL in the {@code Location} header</li>
+ * <li>{@code GET {upload}} returns the number of contiguous bytes received for each file key,
+ * e.g. <code>{"files":{"war":{"received":1048576}}}</code></li>
+ * <li>{@code PUT {upload}/files/{key}} sends one chunk with {@code Content-Range} and {@code Content-MD5} headers,
+ * plus {@code Content-Encoding} if the file has a {@link ContentCodec}, in which case each chunk is encoded on its own</li>
+ * <li>{@code POST {upload}/commit} starts the build and is answered like a regular upload,
+ * with {@code 202 Accepted} and the polling URL in the {@code Location} header</li>
+ * </ol>
+ *
+ * @author Ryan Brainard
+ */
+final class ResumableUpload {
+
+    private static final long MAX_RETRY_BACKOFF = 30L * 1000L;
+
+    private final WebResource baseResource;
+    private final DeployRequest deployRequest;
+    private final DeployEvents events;
+    private final DeployCancellation cancellation;
+    private final BandwidthLimiter bandwidthLimiter;
+    private BandwidthLimiter.Upload bandwidth;
+
+    ResumableUpload(WebResource baseResource, DeployRequest deployRequest, DeployEvents events, DeployCancellation cancellation,
+                    BandwidthLimiter bandwidthLimiter) {
+        this.baseResource = baseResource;
+        this.deployRequest = deployRequest;
+        this.events = events;
+        this.cancellation = cancellation;
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    /**
+     * @return response to the commit request
+     * @throws ResumableUploadException if a chunk could not be uploaded within the allowed retries,
+     *                                   or the deploy was cancelled after the upload was created
+     */
+    ClientResponse upload() {
+        if (!deployRequest.getDirectories().isEmpty()) {
+            throw new DeploymentException("Directories cannot be uploaded with resumable uploads");
+        }
+
+        String uploadUrl = deployRequest.getResumeUploadUrl();
+        if (uploadUrl == null) {
+            uploadUrl = createUpload();
+        }
+
+        long total = 0;
+        for (File file : deployRequest.getFiles().values()) {
+            total += file.length();
+        }
+        events.setUploadTotal(total);
+
+        final WebResource uploadResource = baseResource.path(uploadUrl);
+        final Map<String, Long> received = getReceived(uploadResource, uploadUrl);
+        bandwidth = bandwidthLimiter != null ? bandwidthLimiter.startUpload(cancellation) : null;
+        try {
+            for (Map.Entry<String, File> file : deployRequest.getFiles().entrySet()) {
+                final Long offset = received.get(file.getKey());
+                uploadFile(uploadResource, uploadUrl, file.getKey(), file.getValue(), offset != null ? offset : 0);
+            }
+        } finally {
+            if (bandwidth != null) {
+                bandwidth.finish();
+            }
+        }
+
+        checkCancelled(uploadUrl);
+        return uploadResource.path("commit").post(ClientResponse.class);
+    }
+
+    private String createUpload() {
+        final Map<String, Object> fileInfo = new HashMap<String, Object>();
+        for (Map.Entry<String, File> file : deployRequest.getFiles().entrySet()) {
+            final Map<String, Object> info = new HashMap<String, Object>();
+            info.put("filename", file.getValue().getName());
+            info.put("size", file.getValue().length());
+            fileInfo.put(file.getKey(), info);
+        }
+        final Map<String, Object> body = new HashMap<String, Object>();
+        body.put("files", fileInfo);
+
+        final ClientResponse response = baseResource.path("/direct/" + deployRequest.getAppName() + "/" + deployRequest.getPipelineName() + "/uploads")
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, body);
+        final List<String> locationHeaders = response.getHeaders().get("Location");
+        if (HttpURLConnection.HTTP_CREATED != response.getStatus() || locationHeaders == null || locationHeaders.get(0) == null) {
+            throw DirectToHerokuClient.notAccepted(response, "Upload not accepted");
+        }
+        return locationHeaders.get(0);
+    }
+
+    private Map<String, Long> getReceived(WebResource uploadResource, String uploadUrl) {
+        final Map<String, Long> received = new HashMap<String, Long>();
+        final ClientResponse response;
+        try {
+            response = uploadResource.get(ClientResponse.class);
+        } catch (ClientHandlerException e) {
+            throw new ResumableUploadException("Could not get upload status: " + e.getMessage(), null, uploadUrl);
+        }
+        if (HttpURLConnection.HTTP_OK != response.getStatus()) {
+            throw DirectToHerokuClient.notAccepted(response, "Upload not found");
+        }
+
+        final Object files = response.getEntity(Map.class).get("files");
+        if (files instanceof Map) {
+            for (Map.Entry<?, ?> file : ((Map<?, ?>) files).entrySet()) {
+                final Object receivedBytes = file.getValue() instanceof Map ? ((Map<?, ?>) file.getValue()).get("received") : null;
+                if (receivedBytes instanceof Number) {
+                    received.put(String.valueOf(file.getKey()), ((Number) receivedBytes).longValue());
+                }
+            }
+        }
+        return received;
+    }
+
+    private void uploadFile(WebResource uploadResource, String uploadUrl, String fileKey, File file, long offset) {
+        final ContentCodec codec = deployRequest.getContentEncodings().get(fileKey);
+        final WebResource fileResource = uploadResource.path("files/" + fileKey);
+        final FileInputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (IOException e) {
+            throw new DeploymentException(Reason.LOCAL_IO, "Could not read file for " + fileKey + ": " + e.getMessage());
+        }
+        try {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            final byte[] chunk = new byte[(int) Math.min(deployRequest.getUploadChunkSize(), Math.max(size, 1))];
+            while (offset < size) {
+                final int length = (int) Math.min(chunk.length, size - offset);
+                readFully(channel, chunk, length, offset);
+                final long acknowledged = sendChunk(uploadResource, fileResource, uploadUrl, fileKey, codec, chunk, length, offset, size);
+                events.uploadProgress(fileKey, Math.max(0, acknowledged - offset), acknowledged, size);
+                offset = acknowledged;
+            }
+        } catch (IOException e) {
+            throw new ResumableUploadException(Reason.LOCAL_IO, "Could not read file for " + fileKey + ": " + e.getMessage(), null, uploadUrl);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // swallow
+            }
+        }
+    }
+
+    /**
+     * @return offset of the next chunk to send, as acknowledged by the server
+     */
+    private long sendChunk(WebResource uploadResource, WebResource fileResource, String uploadUrl, String fileKey,
+                           ContentCodec codec, byte[] chunk, int length, long offset, long size) throws IOException {
+        final byte[] body = codec != null ? encode(codec, chunk, length) : copyOf(chunk, length);
+        final String contentRange = "bytes " + offset + "-" + (offset + length - 1) + "/" + size;
+        final String contentMd5 = new String(Base64.encode(md5(body)), "US-ASCII");
+
+        for (int attempt = 0; ; attempt++) {
+            checkCancelled(uploadUrl);
+            throttle(uploadUrl, body.length);
+            String failure;
+            try {
+                WebResource.Builder request = fileResource.type(MediaType.APPLICATION_OCTET_STREAM_TYPE)
+                        .header("Content-Range", contentRange)
+                        .header("Content-MD5", contentMd5);
+                if (codec != null) {
+                    request = request.header("Content-Encoding", codec.getContentEncoding());
+                }
+                final ClientResponse response = request.put(ClientResponse.class, body);
+                final int status = response.getStatus();
+                if (status >= 200 && status < 300) {
+                    response.close();
+                    return offset + length;
+                }
+                if (status == HttpURLConnection.HTTP_UNAUTHORIZED || status == HttpURLConnection.HTTP_FORBIDDEN
+                        || status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+                    throw DirectToHerokuClient.notAccepted(response, "Chunk not accepted");
+                }
+                failure = "HTTP " + status;
+                response.close();
+            } catch (ClientHandlerException e) {
+                failure = String.valueOf(e.getMessage());
+            }
+
+            if (attempt >= deployRequest.getUploadChunkRetries()) {
+                throw new ResumableUploadException("Upload of " + fileKey + " failed at " + contentRange + " after " + (attempt + 1) + " attempts",
+                        failure, uploadUrl);
+            }
+
+            events.retried();
+            try {
+                Thread.sleep(Math.min(Math.min(deployRequest.getUploadChunkRetryBackoff() << Math.min(attempt, 16), MAX_RETRY_BACKOFF),
+                        cancellation.remaining()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResumableUploadException(Reason.CANCELLED, "Upload interrupted", null, uploadUrl);
+            }
+
+            try {
+                final Long acknowledged = getReceived(uploadResource, uploadUrl).get(fileKey);
+                if (acknowledged != null && acknowledged != offset) {
+                    return acknowledged;
+                }
+            } catch (ResumableUploadException e) {
+                // status unavailable; retry the same chunk
+            }
+        }
+    }
+
+    /**
+     * Waits for bandwidth to send a chunk, if shaped by a {@link BandwidthLimiter}
+     */
+    private void throttle(String uploadUrl, int length) {
+        if (bandwidth == null) {
+            return;
+        }
+        try {
+            bandwidth.acquire(length);
+        } catch (InterruptedIOException e) {
+            throw new ResumableUploadException(Reason.CANCELLED, e.getMessage(), null, uploadUrl);
+        }
+    }
+
+    /**
+     * Stops a cancelled upload in a state it can be resumed from
+     */
+    private void checkCancelled(String uploadUrl) {
+        if (cancellation.isCancelled()) {
+            throw new ResumableUploadException(Reason.CANCELLED, cancellation.getReason(), null, uploadUrl);
+        }
+    }
+
+    private static void readFully(FileChannel channel, byte[] chunk, int length, long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("File changed during upload");
+            }
+        }
+    }
+
+    private static byte[] encode(ContentCodec codec, byte[] chunk, int length) throws IOException {
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream(length / 2 + 64);
+        final OutputStream out = codec.encode(encoded);
+        out.write(chunk, 0, length);
+        out.close();
+        return encoded.toByteArray();
+    }
+
+    private static byte[] copyOf(byte[] chunk, int length) {
+        if (length == chunk.length) {
+            return chunk;
+        }
+        final byte[] copy = new byte[length];
+        System.arraycopy(chunk, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static byte[] md5(byte[] body) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
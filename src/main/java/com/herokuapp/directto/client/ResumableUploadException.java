@@ -0,0 +1,25 @@
+package com.herokuapp.directto.client;
+
+/**
+ * Thrown when a resumable upload could not be completed. The upload can be continued from the last chunk
+ * acknowledged by the server by passing {@link #getUploadUrl()} to {@link DeployRequest#setResumeUploadUrl(String)}.
+ *
+ * @author Ryan Brainard
+ */
+public class ResumableUploadException extends DeploymentException {
+
+    private final String uploadUrl;
+
+    public ResumableUploadException(String msg, String details, String uploadUrl) {
+        this(Reason.UPLOAD_FAILED, msg, details, uploadUrl);
+    }
+
+    public ResumableUploadException(Reason reason, String msg, String details, String uploadUrl) {
+        super(reason, msg, details);
+        this.uploadUrl = uploadUrl;
+    }
+
+    public String getUploadUrl() {
+        return uploadUrl;
+    }
+}
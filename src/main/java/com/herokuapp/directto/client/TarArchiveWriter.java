@@ -0,0 +1,164 @@
+package com.herokuapp.directto.client;
+
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Streams a gzip compressed POSIX ustar archive of {@link DirectorySource.Entry}s.
+ * <p/>
+ * The tar stream is compressed with {@link ParallelGzipOutputStream}, so files of any size are compressed on
+ * {@code parallelism} cores. Paths too long for a ustar header are written with a GNU long name entry.
+ * Files are archived with mode {@code 0644}; owners and permissions are not preserved.
+ *
+ * @author Ryan Brainard
+ */
+final class TarArchiveWriter {
+
+    private static final int BLOCK = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+    private static final long MAX_SIZE = 077777777777L;
+    private static final String LONG_NAME = "././@LongLink";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final DirectorySource.ProgressListener progress;
+
+    TarArchiveWriter(OutputStream out, ExecutorService executor, int parallelism, int compressionLevel,
+                     DirectorySource.ProgressListener progress) {
+        this.out = new ParallelGzipOutputStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }, executor, ContentCodecs.DEFAULT_PARALLEL_BLOCK_SIZE, parallelism, compressionLevel);
+        this.progress = progress;
+    }
+
+    void write(List<DirectorySource.Entry> entries) throws IOException {
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        for (DirectorySource.Entry entry : entries) {
+            final long size = entry.file.length();
+            if (size > MAX_SIZE) {
+                throw new IOException("File too large for a tar archive: " + entry.path);
+            }
+            writeHeader(entry.path, size, entry.file.lastModified() / 1000L);
+
+            final InputStream in = new FileInputStream(entry.file);
+            try {
+                long remaining = size;
+                while (remaining > 0) {
+                    final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        throw new IOException("File changed during upload: " + entry.path);
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                    progress.read(read);
+                }
+            } finally {
+                in.close();
+            }
+            pad(size);
+        }
+        out.write(new byte[2 * BLOCK]);
+        out.close();
+    }
+
+    private void writeHeader(String path, long size, long modified) throws IOException {
+        final byte[] name = path.getBytes("UTF-8");
+        byte[] prefix = new byte[0];
+        byte[] shortName = name;
+        if (name.length > NAME_LENGTH) {
+            final int split = splitPoint(name);
+            if (split > 0) {
+                prefix = copyOf(name, 0, split);
+                shortName = copyOf(name, split + 1, name.length);
+            } else {
+                final byte[] longName = copyOf(name, 0, name.length + 1);
+                out.write(header(LONG_NAME.getBytes("UTF-8"), new byte[0], longName.length, 0, (byte) 'L'));
+                out.write(longName);
+                pad(longName.length);
+                shortName = copyOf(name, 0, NAME_LENGTH);
+            }
+        }
+        out.write(header(shortName, prefix, size, modified, (byte) '0'));
+    }
+
+    /**
+     * @return index of a {@code /} that splits the name into a ustar prefix and name, or -1 if there is none
+     */
+    private static int splitPoint(byte[] name) {
+        for (int i = Math.min(PREFIX_LENGTH, name.length - 1); i > 0; i--) {
+            if (name[i] == '/' && name.length - i - 1 <= NAME_LENGTH) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] header(byte[] name, byte[] prefix, long size, long modified, byte type) {
+        final byte[] header = new byte[BLOCK];
+        System.arraycopy(name, 0, header, 0, name.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, modified);
+        header[156] = type;
+        putAscii(header, 257, "ustar\0");
+        putAscii(header, 263, "00");
+        System.arraycopy(prefix, 0, header, 345, prefix.length);
+
+        putAscii(header, 148, "        ");
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        header[155] = ' ';
+        return header;
+    }
+
+    private void pad(long size) throws IOException {
+        final int remainder = (int) (size % BLOCK);
+        if (remainder > 0) {
+            out.write(new byte[BLOCK - remainder]);
+        }
+    }
+
+    /**
+     * Zero padded octal number of {@code length - 1} digits followed by a NUL
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        final String octal = Long.toOctalString(value);
+        final int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            final int fromEnd = digits - 1 - i;
+            header[offset + i] = (byte) (fromEnd < octal.length() ? octal.charAt(octal.length() - 1 - fromEnd) : '0');
+        }
+        header[offset + digits] = 0;
+    }
+
+    private static void putAscii(byte[] header, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            header[offset + i] = (byte) value.charAt(i);
+        }
+    }
+
+    private static byte[] copyOf(byte[] bytes, int from, int to) {
+        final byte[] copy = new byte[to - from];
+        System.arraycopy(bytes, from, copy, 0, Math.min(to, bytes.length) - from);
+        return copy;
+    }
+}
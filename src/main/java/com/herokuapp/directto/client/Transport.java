@@ -0,0 +1,23 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+
+/**
+ * Supplies the underlying HTTP client used for all calls made by a {@link DirectToHerokuClient}.
+ * <p/>
+ * Set on {@link DirectToHerokuClient.Builder#setTransport(Transport)}. A single transport instance can be shared by
+ * many clients, in which case they also share its connections.
+ *
+ * @author Ryan Brainard
+ * @see UrlConnectionTransport
+ * @see PooledTransport
+ */
+public interface Transport {
+
+    /**
+     * Creates a Jersey client for the given configuration.
+     * The configuration already contains the JSON and multipart settings required by this library.
+     */
+    Client createClient(ClientConfig config);
+}
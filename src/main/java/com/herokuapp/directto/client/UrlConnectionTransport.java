@@ -0,0 +1,76 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.client.urlconnection.HttpURLConnectionFactory;
+import com.sun.jersey.client.urlconnection.URLConnectionClientHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Default transport, backed by the JDK's {@link java.net.HttpURLConnection}.
+ * <p/>
+ * Keep-alive and connection reuse are controlled JVM-wide by the {@code http.keepAlive} and
+ * {@code http.maxConnections} system properties. Use {@link PooledTransport} for an explicitly sized pool.
+ *
+ * @author Ryan Brainard
+ */
+public class UrlConnectionTransport implements Transport {
+
+    private static final ExecutorService disconnector = Executors.newCachedThreadPool(new DaemonThreadFactory("direct-to-disconnect"));
+
+    private int connectTimeout;
+    private int readTimeout;
+
+    /**
+     * @param connectTimeout in milliseconds; 0 for no timeout
+     */
+    public UrlConnectionTransport setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * @param readTimeout in milliseconds; 0 for no timeout
+     */
+    public UrlConnectionTransport setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    public Client createClient(ClientConfig config) {
+        if (connectTimeout > 0) {
+            config.getProperties().put(ClientConfig.PROPERTY_CONNECT_TIMEOUT, connectTimeout);
+        }
+        if (readTimeout > 0) {
+            config.getProperties().put(ClientConfig.PROPERTY_READ_TIMEOUT, readTimeout);
+        }
+        return new Client(new URLConnectionClientHandler(new CancellableConnectionFactory()), config);
+    }
+
+    /**
+     * Lets a cancelled deploy disconnect the connection it is blocked on.
+     * Disconnecting waits for a read of the response body in progress on another thread to return, so it is done on
+     * a separate thread to keep the caller, e.g. the polling scheduler, from blocking.
+     */
+    private static final class CancellableConnectionFactory implements HttpURLConnectionFactory {
+        public HttpURLConnection getHttpURLConnection(URL url) throws IOException {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            DeployCancellation.connectionOpened(new Closeable() {
+                public void close() {
+                    disconnector.execute(new Runnable() {
+                        public void run() {
+                            connection.disconnect();
+                        }
+                    });
+                }
+            });
+            return connection;
+        }
+    }
+}
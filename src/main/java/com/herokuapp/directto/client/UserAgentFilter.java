@@ -27,7 +27,7 @@ public class UserAgentFilter extends ClientFilter {
 
     @Override
     public ClientResponse handle(ClientRequest cr) throws ClientHandlerException {
-        cr.getHeaders().add(HttpHeaders.USER_AGENT, userAgent);
+        cr.getHeaders().putSingle(HttpHeaders.USER_AGENT, userAgent);
         return getNext().handle(cr);
     }
 
@@ -0,0 +1,360 @@
+package com.herokuapp.directto.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Streams a zip archive of {@link DirectorySource.Entry}s without seeking, so it can be written straight to a request.
+ * <p/>
+ * Files up to {@link #MAX_BUFFERED_ENTRY} bytes are read and deflated on the executor, up to {@code parallelism}
+ * at a time, and written out in order as they complete, each stored as is if deflating does not make it smaller.
+ * Larger files are deflated on the calling thread while they are written, with sizes and checksum in a trailing data
+ * descriptor. Buffered memory stays under about {@code 2 * parallelism * MAX_BUFFERED_ENTRY} bytes.
+ *
+ * @author Ryan Brainard
+ */
+final class ZipArchiveWriter {
+
+    static final int MAX_BUFFERED_ENTRY = 4 * 1024 * 1024;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final CountingOutputStream out;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int compressionLevel;
+    private final DirectorySource.ProgressListener progress;
+    private final LinkedList<PendingEntry> pending = new LinkedList<PendingEntry>();
+    private final List<EntryHeader> written = new ArrayList<EntryHeader>();
+    private long pendingBytes;
+
+    ZipArchiveWriter(OutputStream out, ExecutorService executor, int parallelism, int compressionLevel,
+                     DirectorySource.ProgressListener progress) {
+        this.out = new CountingOutputStream(out);
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.compressionLevel = compressionLevel;
+        this.progress = progress;
+    }
+
+    void write(List<DirectorySource.Entry> entries) throws IOException {
+        if (entries.size() > MAX_ENTRIES) {
+            throw new IOException("Too many files for a zip archive: " + entries.size());
+        }
+        try {
+            for (DirectorySource.Entry entry : entries) {
+                final long length = entry.file.length();
+                if (length > MAX_BUFFERED_ENTRY) {
+                    while (!pending.isEmpty()) {
+                        writeNextPending();
+                    }
+                    writeStreamed(entry);
+                } else {
+                    while (!pending.isEmpty() && (pending.size() >= 2 * parallelism || pendingBytes + length > (long) parallelism * MAX_BUFFERED_ENTRY)) {
+                        writeNextPending();
+                    }
+                    submit(entry, length);
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeNextPending();
+            }
+            writeCentralDirectory();
+            out.flush();
+        } finally {
+            for (PendingEntry entry : pending) {
+                entry.future.cancel(true);
+            }
+        }
+    }
+
+    private void submit(final DirectorySource.Entry entry, final long length) {
+        pending.add(new PendingEntry(length, executor.submit(new Callable<CompressedEntry>() {
+            public CompressedEntry call() throws IOException {
+                return compress(entry, length);
+            }
+        })));
+        pendingBytes += length;
+    }
+
+    private CompressedEntry compress(DirectorySource.Entry entry, long length) throws IOException {
+        final ByteArrayOutputStream contents = new ByteArrayOutputStream((int) length);
+        final InputStream in = new FileInputStream(entry.file);
+        try {
+            final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                contents.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        final byte[] data = contents.toByteArray();
+
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+
+        final ByteArrayOutputStream deflated = new ByteArrayOutputStream(data.length / 2 + 64);
+        final Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            while (!deflater.finished()) {
+                deflated.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        final EntryHeader header = new EntryHeader(entry);
+        header.crc = crc.getValue();
+        header.size = data.length;
+        if (deflated.size() < data.length) {
+            header.method = DEFLATED;
+            header.compressedSize = deflated.size();
+            return new CompressedEntry(header, deflated.toByteArray());
+        } else {
+            header.method = STORED;
+            header.compressedSize = data.length;
+            return new CompressedEntry(header, data);
+        }
+    }
+
+    private void writeNextPending() throws IOException {
+        final PendingEntry next = pending.removeFirst();
+        pendingBytes -= next.length;
+
+        final CompressedEntry entry;
+        try {
+            entry = next.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            final IOException ioe = new IOException("Compression failed: " + e.getCause());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+
+        writeLocalHeader(entry.header);
+        out.write(entry.contents);
+        written.add(entry.header);
+        progress.read(entry.header.size);
+    }
+
+    private void writeStreamed(DirectorySource.Entry entry) throws IOException {
+        final EntryHeader header = new EntryHeader(entry);
+        header.method = DEFLATED;
+        header.flags |= FLAG_DATA_DESCRIPTOR;
+        writeLocalHeader(header);
+
+        final long dataStart = out.count;
+        final CRC32 crc = new CRC32();
+        final Deflater deflater = new Deflater(compressionLevel, true);
+        final InputStream in = new FileInputStream(entry.file);
+        try {
+            final DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, COPY_BUFFER_SIZE);
+            final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                deflated.write(buffer, 0, read);
+                header.size += read;
+                progress.read(read);
+            }
+            deflated.finish();
+        } finally {
+            in.close();
+            deflater.end();
+        }
+        header.crc = crc.getValue();
+        header.compressedSize = out.count - dataStart;
+        checkSize(header.size);
+        checkSize(header.compressedSize);
+
+        final byte[] descriptor = new byte[16];
+        putInt(descriptor, 0, DATA_DESCRIPTOR_SIGNATURE);
+        putInt(descriptor, 4, header.crc);
+        putInt(descriptor, 8, header.compressedSize);
+        putInt(descriptor, 12, header.size);
+        out.write(descriptor);
+        written.add(header);
+    }
+
+    private void writeLocalHeader(EntryHeader header) throws IOException {
+        header.offset = out.count;
+        checkSize(header.offset);
+
+        final boolean deferred = (header.flags & FLAG_DATA_DESCRIPTOR) != 0;
+        final byte[] local = new byte[30 + header.name.length];
+        putInt(local, 0, LOCAL_HEADER_SIGNATURE);
+        putShort(local, 4, VERSION);
+        putShort(local, 6, header.flags);
+        putShort(local, 8, header.method);
+        putInt(local, 10, header.dosTime);
+        putInt(local, 14, deferred ? 0 : header.crc);
+        putInt(local, 18, deferred ? 0 : header.compressedSize);
+        putInt(local, 22, deferred ? 0 : header.size);
+        putShort(local, 26, header.name.length);
+        putShort(local, 28, 0);
+        System.arraycopy(header.name, 0, local, 30, header.name.length);
+        out.write(local);
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        final long start = out.count;
+        checkSize(start);
+        for (EntryHeader header : written) {
+            final byte[] central = new byte[46 + header.name.length];
+            putInt(central, 0, CENTRAL_HEADER_SIGNATURE);
+            putShort(central, 4, VERSION);
+            putShort(central, 6, VERSION);
+            putShort(central, 8, header.flags);
+            putShort(central, 10, header.method);
+            putInt(central, 12, header.dosTime);
+            putInt(central, 16, header.crc);
+            putInt(central, 20, header.compressedSize);
+            putInt(central, 24, header.size);
+            putShort(central, 28, header.name.length);
+            // extra field, comment, disk number, attributes: all zero
+            putInt(central, 42, header.offset);
+            System.arraycopy(header.name, 0, central, 46, header.name.length);
+            out.write(central);
+        }
+        final long size = out.count - start;
+        checkSize(size);
+
+        final byte[] end = new byte[22];
+        putInt(end, 0, END_SIGNATURE);
+        putShort(end, 8, written.size());
+        putShort(end, 10, written.size());
+        putInt(end, 12, size);
+        putInt(end, 16, start);
+        out.write(end);
+    }
+
+    private static void checkSize(long size) throws IOException {
+        if (size > MAX_SIZE) {
+            throw new IOException("Zip archive exceeds 4 GB");
+        }
+    }
+
+    private static void putShort(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(byte[] b, int off, long value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+        b[off + 2] = (byte) (value >>> 16);
+        b[off + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * MS-DOS date and time as stored in zip headers, with the date in the high 16 bits
+     */
+    static long dosTime(long time) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        final int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - 1980) << 25)
+                | ((calendar.get(Calendar.MONTH) + 1) << 21)
+                | (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | (calendar.get(Calendar.MINUTE) << 5)
+                | (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    private static final class EntryHeader {
+        final byte[] name;
+        final long dosTime;
+        int flags = FLAG_UTF8;
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        long offset;
+
+        EntryHeader(DirectorySource.Entry entry) throws IOException {
+            this.name = entry.path.getBytes("UTF-8");
+            this.dosTime = dosTime(entry.file.lastModified());
+        }
+    }
+
+    private static final class CompressedEntry {
+        final EntryHeader header;
+        final byte[] contents;
+
+        CompressedEntry(EntryHeader header, byte[] contents) {
+            this.header = header;
+            this.contents = contents;
+        }
+    }
+
+    private static final class PendingEntry {
+        final long length;
+        final Future<CompressedEntry> future;
+
+        PendingEntry(long length, Future<CompressedEntry> future) {
+            this.length = length;
+            this.future = future;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.herokuapp.directto.client.models;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Status of a deploy as reported by the server.
+ * <p/>
+ * Decoding reads only the {@code status} and {@code message} fields with a streaming parser and keeps the raw response,
+ * so the full map of fields is only built if {@link #asMap()} is asked for anything else.
+ *
+ * @author Ryan Brainard
+ */
+public final class DeployStatus {
+
+    public static final String STATUS = "status";
+    public static final String MESSAGE = "message";
+    public static final String STATUS_SUCCESS = "success";
+    public static final String STATUS_IN_PROCESS = "inprocess";
+
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private final String status;
+    private final String message;
+    private final byte[] json;
+    private final Map<String, String> map = new LazyMap();
+
+    private DeployStatus(String status, String message, byte[] json) {
+        this.status = status;
+        this.message = message;
+        this.json = json;
+    }
+
+    /**
+     * @param json a JSON object; empty for a response without a body
+     * @throws IOException if the response is not a JSON object
+     */
+    public static DeployStatus parse(byte[] json) throws IOException {
+        if (json.length == 0) {
+            return new DeployStatus(null, null, json);
+        }
+
+        final JsonParser parser = jsonMapper.getJsonFactory().createJsonParser(json);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Deploy status is not a JSON object");
+            }
+
+            String status = null;
+            String message = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (STATUS.equals(field)) {
+                    status = value == JsonToken.VALUE_NULL ? "null" : parser.getText();
+                } else if (MESSAGE.equals(field)) {
+                    message = value == JsonToken.VALUE_NULL ? "null" : parser.getText();
+                }
+                parser.skipChildren();
+            }
+            return new DeployStatus(status, message, json);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * @return status such as {@link #STATUS_IN_PROCESS} or {@link #STATUS_SUCCESS}, or null if not reported
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isInProcess() {
+        return STATUS_IN_PROCESS.equals(status);
+    }
+
+    public boolean isSuccess() {
+        return STATUS_SUCCESS.equals(status);
+    }
+
+    /**
+     * All fields of the response with their values as strings, as returned by earlier versions of this client.
+     * Looking up {@link #STATUS} or {@link #MESSAGE} does not build the map.
+     */
+    public Map<String, String> asMap() {
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return map.toString();
+    }
+
+    private final class LazyMap extends AbstractMap<String, String> {
+        private Map<String, String> fields;
+
+        private synchronized Map<String, String> fields() {
+            if (fields == null) {
+                fields = new LinkedHashMap<String, String>();
+                if (json.length > 0) {
+                    try {
+                        final Map<?, ?> values = jsonMapper.readValue(json, 0, json.length, Map.class);
+                        for (Map.Entry<?, ?> field : values.entrySet()) {
+                            fields.put(String.valueOf(field.getKey()), String.valueOf(field.getValue()));
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Deploy status could not be read again", e);
+                    }
+                }
+            }
+            return fields;
+        }
+
+        private synchronized boolean isBuilt() {
+            return fields != null;
+        }
+
+        @Override
+        public String get(Object key) {
+            if (!isBuilt() && STATUS.equals(key)) {
+                return status;
+            } else if (!isBuilt() && MESSAGE.equals(key)) {
+                return message;
+            }
+            return fields().get(key);
+        }
+
+        @Override
+        public String put(String key, String value) {
+            return fields().put(key, value);
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return fields().entrySet();
+        }
+    }
+}
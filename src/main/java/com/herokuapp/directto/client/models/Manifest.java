@@ -2,6 +2,7 @@ package com.herokuapp.directto.client.models;
 
 import org.codehaus.jackson.annotate.JsonProperty;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -18,7 +19,11 @@ public class Manifest {
         return description;
     }
 
+    /**
+     * @return descriptions of the files the pipeline requires, by name; cannot be modified, as pipelines may be
+     *         shared through the pipeline cache
+     */
     public Map<String, String> getRequiredFileInfo() {
-        return requiredFileInfo;
+        return requiredFileInfo != null ? Collections.unmodifiableMap(requiredFileInfo) : null;
     }
 }
@@ -0,0 +1,153 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.herokuapp.directto.client.EventSubscription.Event.UPLOAD_END;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class BandwidthLimiterTest {
+
+    private static final int RATE = 256 * 1024;
+
+    private DirectToStubServer server;
+    private File war;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().setDiscardUploads(true).start();
+        war = File.createTempFile("bandwidth", ".war");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        war.delete();
+    }
+
+    @Test
+    public void testUpload_ShapedToRate() throws Exception {
+        setSize(war, 512 * 1024);
+        final BandwidthLimiter limiter = new BandwidthLimiter(RATE);
+        final DirectToHerokuClient client = server.newClientBuilder().setBandwidthLimiter(limiter).build();
+
+        client.deploy(newRequest("shaped-app"));
+
+        assertTrue(limiter.getBytesSent() >= 512 * 1024);
+        assertEquals(0, limiter.getActiveUploads());
+        assertEquals(1, limiter.getThrottleTime().getCount());
+        assertTrue("throttled " + limiter.getThrottleTime().getMax() + "us", limiter.getThrottleTime().getMax() >= 1700 * 1000);
+    }
+
+    @Test
+    public void testUpload_ConcurrentDeploysShareFairly() throws Exception {
+        setSize(war, 256 * 1024);
+        final DirectToHerokuClient client = server.newClientBuilder().setBandwidthLimiter(new BandwidthLimiter(RATE)).build();
+        final List<EventDetails> uploads = Collections.synchronizedList(new ArrayList<EventDetails>());
+        final EventSubscription subscription = new EventSubscription().subscribe(UPLOAD_END, new EventSubscription.DetailedSubscriber() {
+            public void handle(EventSubscription.Event event, EventDetails details) {
+                uploads.add(details);
+            }
+        });
+
+        final long start = System.currentTimeMillis();
+        final DeployFuture first = client.deployAsync(newRequest("first-app").setEventSubscription(subscription));
+        final DeployFuture second = client.deployAsync(newRequest("second-app").setEventSubscription(subscription));
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("took " + elapsed + "ms", elapsed >= 1700);
+        assertEquals(2, uploads.size());
+        for (EventDetails upload : uploads) {
+            assertTrue("throughput " + upload.getAverageThroughput(), upload.getAverageThroughput() < RATE * 0.8);
+        }
+        final long fastest = Math.min(uploads.get(0).getPhaseElapsed(), uploads.get(1).getPhaseElapsed());
+        final long slowest = Math.max(uploads.get(0).getPhaseElapsed(), uploads.get(1).getPhaseElapsed());
+        assertTrue("uploads took " + fastest + "ms and " + slowest + "ms", fastest > slowest * 0.6);
+    }
+
+    @Test
+    public void testSetBytesPerSecond_AppliesToRunningUpload() throws Exception {
+        setSize(war, 1024 * 1024);
+        final BandwidthLimiter limiter = new BandwidthLimiter(64 * 1024);
+        final DirectToHerokuClient client = server.newClientBuilder().setBandwidthLimiter(limiter).build();
+
+        final DeployFuture future = client.deployAsync(newRequest("adjusted-app"));
+        awaitBytesSent(limiter, 1);
+        assertEquals(1, limiter.getActiveUploads());
+        assertTrue(limiter.getBytesSent() < 1024 * 1024);
+        limiter.setBytesPerSecond(0);
+        future.get(10, TimeUnit.SECONDS); // 16 seconds at the original rate
+
+        assertTrue(limiter.getBytesSent() >= 1024 * 1024);
+        assertEquals(0, limiter.getActiveUploads());
+    }
+
+    @Test
+    public void testUpload_CancelledWhileThrottled() throws Exception {
+        setSize(war, 1024 * 1024);
+        final BandwidthLimiter limiter = new BandwidthLimiter(16 * 1024);
+        final DirectToHerokuClient client = server.newClientBuilder().setBandwidthLimiter(limiter).build();
+
+        try {
+            client.deployAsync(newRequest("cancelled-app").setDeployTimeout(300)).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("Deploy timed out after 300ms", e.getCause().getMessage());
+        }
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getActiveUploads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, limiter.getActiveUploads());
+        assertEquals(1, limiter.getThrottleTime().getCount());
+        assertTrue(limiter.getBytesSent() < 1024 * 1024);
+    }
+
+    @Test
+    public void testResumableUpload_ShapedToRate() throws Exception {
+        setSize(war, 512 * 1024);
+        final DirectToHerokuClient client = server.newClientBuilder().setBandwidthLimiter(new BandwidthLimiter(RATE)).build();
+
+        final long start = System.currentTimeMillis();
+        client.deploy(newRequest("resumable-app").setResumableUpload(true).setUploadChunkSize(64 * 1024));
+
+        assertTrue(System.currentTimeMillis() - start >= 1500);
+        assertEquals(512 * 1024, server.getReceivedFiles("resumable-app").get("war").length);
+    }
+
+    private static void awaitBytesSent(BandwidthLimiter limiter, long bytes) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getBytesSent() < bytes && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private DeployRequest newRequest(String appName) {
+        return new DeployRequest("war", appName, Collections.singletonMap("war", war)).setPollingIntervalInit(20);
+    }
+
+    private static void setSize(File file, long size) throws Exception {
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(size);
+        } finally {
+            out.close();
+        }
+    }
+}
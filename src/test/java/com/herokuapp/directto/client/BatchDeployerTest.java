@@ -0,0 +1,178 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static com.herokuapp.directto.client.EventSubscription.Event.DEPLOY_END;
+import static com.herokuapp.directto.client.EventSubscription.Event.DEPLOY_START;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class BatchDeployerTest {
+
+    private DirectToStubServer server;
+    private DirectToHerokuClient client;
+    private File war;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().setBuildDuration(100).start();
+        client = server.newClientBuilder().build();
+        war = File.createTempFile("batch", ".war");
+        final OutputStream out = new FileOutputStream(war);
+        try {
+            out.write("batch war contents".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        war.delete();
+    }
+
+    @Test
+    public void testDeploy_BoundedParallelismWithResultsInOrder() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final EventSubscription subscription = new EventSubscription()
+                .subscribe(DEPLOY_START, new EventSubscription.Subscriber() {
+                    public void handle(EventSubscription.Event event) {
+                        final int current = inFlight.incrementAndGet();
+                        synchronized (maxInFlight) {
+                            maxInFlight.set(Math.max(maxInFlight.get(), current));
+                        }
+                    }
+                })
+                .subscribe(DEPLOY_END, new EventSubscription.Subscriber() {
+                    public void handle(EventSubscription.Event event) {
+                        inFlight.decrementAndGet();
+                    }
+                });
+
+        final List<String> apps = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            apps.add("app-" + i);
+        }
+        final Map<String, BatchDeployer.Result> results = new BatchDeployer(client, 3).deploy(newTemplate().setEventSubscription(subscription), apps);
+
+        assertEquals(apps, new ArrayList<String>(results.keySet()));
+        for (String app : apps) {
+            final BatchDeployer.Result result = results.get(app);
+            assertTrue(result.isSuccess());
+            assertEquals(STATUS_SUCCESS, result.getResult().get(STATUS));
+            assertTrue(result.getDuration() >= 100);
+            assertEquals("batch war contents", new String(server.getReceivedFiles(app).get("war"), "UTF-8"));
+        }
+        assertTrue(maxInFlight.get() <= 3);
+        assertEquals(1, server.getMetadataRequestCount());
+    }
+
+    @Test
+    public void testDeploy_FailureIsolatedToApp() throws Exception {
+        server.rejectUploads("forbidden");
+        final Map<String, BatchDeployer.Result> results = new BatchDeployer(client, 2)
+                .deploy(newTemplate(), Arrays.asList("first", "forbidden", "last"));
+
+        assertTrue(results.get("first").isSuccess());
+        assertTrue(results.get("last").isSuccess());
+        final BatchDeployer.Result rejected = results.get("forbidden");
+        assertFalse(rejected.isSuccess());
+        assertEquals("Not allowed to deploy to forbidden", rejected.getFailure().getMessage());
+    }
+
+    @Test
+    public void testDeploy_EncodesOnce() throws Exception {
+        final AtomicInteger encodings = new AtomicInteger();
+        final ContentCodec countingGzip = new ContentCodec() {
+            public String getContentEncoding() {
+                return "gzip";
+            }
+
+            public OutputStream encode(OutputStream out) throws IOException {
+                encodings.incrementAndGet();
+                return ContentCodecs.GZIP.encode(out);
+            }
+        };
+
+        final Map<String, BatchDeployer.Result> results = new BatchDeployer(client, 4)
+                .deploy(newTemplate().setContentEncoding("war", countingGzip), Arrays.asList("a", "b", "c", "d"));
+
+        assertEquals(1, encodings.get());
+        for (BatchDeployer.Result result : results.values()) {
+            assertTrue(result.isSuccess());
+            assertEquals("gzip", server.getReceivedEncoding(result.getAppName(), "war"));
+            assertEquals("batch war contents", new String(server.getReceivedFiles(result.getAppName()).get("war"), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testDeploy_ImmediateFailuresDoNotRecurse() throws Exception {
+        final ExecutorService rejecting = Executors.newSingleThreadExecutor();
+        rejecting.shutdown();
+        final DirectToHerokuClient rejectingClient = server.newClientBuilder().setUploadExecutor(rejecting).build();
+        final List<String> apps = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            apps.add("app" + i);
+        }
+
+        final List<Map<String, BatchDeployer.Result>> results = new ArrayList<Map<String, BatchDeployer.Result>>();
+        final Throwable[] failure = new Throwable[1];
+        final Thread batch = new Thread(null, new Runnable() {
+            public void run() {
+                try {
+                    results.add(new BatchDeployer(rejectingClient, 2).deploy(newTemplate(), apps));
+                } catch (Throwable e) {
+                    failure[0] = e;
+                }
+            }
+        }, "batch", 256 * 1024);
+        batch.start();
+        batch.join();
+
+        assertNull(failure[0]);
+        assertEquals(apps.size(), results.get(0).size());
+        for (BatchDeployer.Result result : results.get(0).values()) {
+            assertFalse(result.isSuccess());
+        }
+    }
+
+    @Test
+    public void testDeploy_VerifiesBeforeUploading() throws Exception {
+        try {
+            new BatchDeployer(client, 2).deploy(newTemplate(), Arrays.asList("good", " "));
+            fail();
+        } catch (VerificationException e) {
+            assertTrue(e.getMessage().contains("App name must be populated"));
+        }
+        assertEquals(0, server.getUploadCount("good"));
+    }
+
+    private DeployRequest newTemplate() {
+        return new DeployRequest("war", null, Collections.singletonMap("war", war)).setPollingIntervalInit(20);
+    }
+}
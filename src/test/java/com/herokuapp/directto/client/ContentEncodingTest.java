@@ -0,0 +1,116 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End-to-end tests of compressed file parts against {@link DirectToStubServer}, which decodes them.
+ *
+ * @author Ryan Brainard
+ */
+public class ContentEncodingTest {
+
+    private static final String APP_NAME = "encoded-app";
+
+    private DirectToStubServer server;
+    private DirectToHerokuClient client;
+    private File war;
+    private byte[] warContents;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        client = server.newClientBuilder().build();
+        warContents = compressibleBytes(3 * 1024 * 1024 + 17);
+        war = writeTempFile(warContents);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        war.delete();
+    }
+
+    @Test
+    public void testDeploy_Identity() throws Exception {
+        deploy(null);
+        assertNull(server.getReceivedEncoding(APP_NAME, "war"));
+    }
+
+    @Test
+    public void testDeploy_Gzip() throws Exception {
+        deploy(ContentCodecs.GZIP);
+        assertEquals("gzip", server.getReceivedEncoding(APP_NAME, "war"));
+    }
+
+    @Test
+    public void testDeploy_Deflate() throws Exception {
+        deploy(ContentCodecs.DEFLATE);
+        assertEquals("deflate", server.getReceivedEncoding(APP_NAME, "war"));
+    }
+
+    @Test
+    public void testDeploy_ParallelGzip() throws Exception {
+        deploy(ContentCodecs.parallelGzip(256 * 1024, 4));
+        assertEquals("gzip", server.getReceivedEncoding(APP_NAME, "war"));
+    }
+
+    @Test
+    public void testDeploy_ParallelGzip_EmptyFile() throws Exception {
+        final File empty = writeTempFile(new byte[0]);
+        try {
+            final Map<String, File> files = new HashMap<String, File>();
+            files.put("war", empty);
+            client.deploy(new DeployRequest("war", APP_NAME, files).setContentEncoding("war", ContentCodecs.parallelGzip()).setPollingIntervalInit(10));
+            assertEquals(0, server.getReceivedFiles(APP_NAME).get("war").length);
+        } finally {
+            empty.delete();
+        }
+    }
+
+    private void deploy(ContentCodec codec) {
+        final Map<String, File> files = new HashMap<String, File>();
+        files.put("war", war);
+        final DeployRequest request = new DeployRequest("war", APP_NAME, files)
+                .setContentEncoding("war", codec)
+                .setPollingIntervalInit(10);
+
+        assertEquals(STATUS_SUCCESS, client.deploy(request).get(STATUS));
+        assertTrue("Decoded contents must match", Arrays.equals(warContents, server.getReceivedFiles(APP_NAME).get("war")));
+    }
+
+    private static byte[] compressibleBytes(int length) {
+        final byte[] bytes = new byte[length];
+        final Random random = new Random(42);
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return bytes;
+    }
+
+    private static File writeTempFile(byte[] contents) throws IOException {
+        final File file = File.createTempFile("encoded", ".war");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
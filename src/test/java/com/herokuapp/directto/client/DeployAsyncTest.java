@@ -0,0 +1,134 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class DeployAsyncTest {
+
+    private static final int DEPLOYS = 24;
+
+    private DirectToStubServer server;
+    private File war;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        war = File.createTempFile("async", ".war");
+        final OutputStream out = new FileOutputStream(war);
+        try {
+            out.write("async war".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        war.delete();
+    }
+
+    @Test
+    public void testSlowPolls_DoNotDelayOtherDeploys() throws Exception {
+        server.stallNextGets(DirectToHerokuClient.DEFAULT_POLLING_THREADS, 3000);
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+
+        final long start = System.currentTimeMillis();
+        final List<DeployFuture> futures = deployAll(client);
+        int completed = 0;
+        for (DeployFuture future : futures) {
+            try {
+                assertEquals(STATUS_SUCCESS, future.get(Math.max(1, start + 1500 - System.currentTimeMillis()), TimeUnit.MILLISECONDS).get(STATUS));
+                completed++;
+            } catch (TimeoutException e) {
+                // one of the stalled polls
+            }
+        }
+
+        assertEquals(DEPLOYS - DirectToHerokuClient.DEFAULT_POLLING_THREADS, completed);
+        for (DeployFuture future : futures) {
+            assertEquals(STATUS_SUCCESS, future.get(5, TimeUnit.SECONDS).get(STATUS));
+        }
+    }
+
+    @Test
+    public void testCancel_StopsPollsOfConcurrentDeploys() throws Exception {
+        server.setBuildDuration(10000);
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+
+        final List<DeployFuture> futures = deployAll(client);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (server.getStatusRequestCount() < 2 * DEPLOYS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (DeployFuture future : futures) {
+            assertTrue(future.cancel(true));
+        }
+        Thread.sleep(50);
+        final int polls = server.getStatusRequestCount();
+        Thread.sleep(300);
+
+        assertEquals(polls, server.getStatusRequestCount());
+        for (DeployFuture future : futures) {
+            try {
+                future.get();
+                fail();
+            } catch (CancellationException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testCancel_ReleasesStalledPoll() throws Exception {
+        server.setBuildDuration(10000).stallNextGets(100, 10000);
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+
+        final List<DeployFuture> futures = deployAll(client);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (server.getUploadRequestCount() < DEPLOYS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200); // every polling worker is waiting on a stalled poll
+        for (DeployFuture future : futures) {
+            future.cancel(true);
+        }
+
+        server.setBuildDuration(0).stallNextGets(0, 0);
+        final long start = System.currentTimeMillis();
+        assertEquals(STATUS_SUCCESS, client.deployAsync(newRequest("after-cancel")).get(5, TimeUnit.SECONDS).get(STATUS));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    private List<DeployFuture> deployAll(DirectToHerokuClient client) {
+        final List<DeployFuture> futures = new ArrayList<DeployFuture>();
+        for (int i = 0; i < DEPLOYS; i++) {
+            futures.add(client.deployAsync(newRequest("async-app-" + i)));
+        }
+        return futures;
+    }
+
+    private DeployRequest newRequest(String appName) {
+        return new DeployRequest("war", appName, Collections.singletonMap("war", war)).setPollingIntervalInit(20);
+    }
+}
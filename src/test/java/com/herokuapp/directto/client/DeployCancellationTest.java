@@ -0,0 +1,161 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class DeployCancellationTest {
+
+    private DirectToStubServer server;
+    private ExecutorService uploadExecutor;
+    private File war;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        uploadExecutor = Executors.newSingleThreadExecutor();
+        war = File.createTempFile("cancellation", ".war");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        uploadExecutor.shutdownNow();
+        war.delete();
+    }
+
+    @Test
+    public void testCancel_ClosesUploadInProgress() throws Exception {
+        server.setBandwidthLimit(256 * 1024);
+        setSize(war, 64 * 1024 * 1024);
+        final DirectToHerokuClient client = server.newClientBuilder().setUploadExecutor(uploadExecutor).build();
+
+        final DeployFuture future = client.deployAsync(newRequest());
+        Thread.sleep(300);
+        assertTrue(future.cancel(true));
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException e) {
+            // expected
+        }
+
+        assertUploadThreadReleased();
+        assertEquals(0, server.getUploadCount("cancel-app"));
+    }
+
+    @Test
+    public void testDeployTimeout_CoversUpload() throws Exception {
+        server.setBandwidthLimit(256 * 1024);
+        setSize(war, 64 * 1024 * 1024);
+        final DirectToHerokuClient client = server.newClientBuilder().setUploadExecutor(uploadExecutor).build();
+
+        final long start = System.currentTimeMillis();
+        try {
+            client.deployAsync(newRequest().setDeployTimeout(300)).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("Deploy timed out after 300ms", e.getCause().getMessage());
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertUploadThreadReleased();
+    }
+
+    @Test
+    public void testDeployTimeout_CoversPolling() throws Exception {
+        server.setBuildDuration(10000);
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+
+        final long start = System.currentTimeMillis();
+        try {
+            client.deploy(newRequest().setDeployTimeout(300));
+            fail();
+        } catch (DeploymentException e) {
+            assertEquals("Deploy timed out after 300ms", e.getMessage());
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    public void testCancel_StopsScheduledPolls() throws Exception {
+        server.setBuildDuration(10000);
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+
+        final DeployFuture future = client.deployAsync(newRequest());
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (server.getStatusRequestCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(future.cancel(true));
+        Thread.sleep(50);
+        final int polls = server.getStatusRequestCount();
+        Thread.sleep(300);
+        assertEquals(polls, server.getStatusRequestCount());
+    }
+
+    @Test
+    public void testInterrupt_FailsDeployAndKeepsInterruptFlag() throws Exception {
+        server.setBuildDuration(10000);
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+
+        final Thread deployer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    client.deploy(newRequest());
+                } catch (Exception e) {
+                    failure.set(e);
+                    interrupted.set(Thread.currentThread().isInterrupted());
+                }
+            }
+        });
+        deployer.start();
+        Thread.sleep(300);
+        deployer.interrupt();
+        deployer.join(5000);
+
+        assertTrue(failure.get() instanceof DeploymentException);
+        assertEquals("Deploy interrupted", failure.get().getMessage());
+        assertTrue(interrupted.get());
+    }
+
+    private void assertUploadThreadReleased() throws Exception {
+        uploadExecutor.submit(new Runnable() {
+            public void run() {
+            }
+        }).get(2, TimeUnit.SECONDS);
+    }
+
+    private DeployRequest newRequest() {
+        return new DeployRequest("war", "cancel-app", Collections.singletonMap("war", war)).setPollingIntervalInit(20);
+    }
+
+    private static void setSize(File file, long size) throws IOException {
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(size);
+        } finally {
+            out.close();
+        }
+    }
+}
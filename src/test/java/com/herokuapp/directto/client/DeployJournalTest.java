@@ -0,0 +1,190 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.ClientResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class DeployJournalTest {
+
+    private DirectToStubServer server;
+    private File journalFile;
+    private File war;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        journalFile = File.createTempFile("deploys", ".journal");
+        journalFile.delete();
+        war = File.createTempFile("journal", ".war");
+        write(war, "war contents");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        journalFile.delete();
+        war.delete();
+    }
+
+    @Test
+    public void testDeploy_RecordsDroppedOnCompletion() throws Exception {
+        final DeployJournal journal = new DeployJournal(journalFile);
+        final DirectToHerokuClient client = server.newClientBuilder().setDeployJournal(journal).build();
+
+        assertEquals(STATUS_SUCCESS, client.deploy(newRequest()).get(STATUS));
+        assertEquals(STATUS_SUCCESS, client.deployAsync(newRequest()).get().get(STATUS));
+        assertTrue(journal.getIncompleteDeploys().isEmpty());
+        journal.close();
+
+        assertTrue(new DeployJournal(journalFile).getRecoveredDeploys().isEmpty());
+    }
+
+    @Test
+    public void testResumeDeploys_PollsWithoutUploadingAgain() throws Exception {
+        final DeployJournal crashed = new DeployJournal(journalFile);
+        final DirectToHerokuClient crashedClient = server.newClientBuilder().setDeployJournal(crashed).build();
+        final DeployJournal.Entry entry = crashed.started(newRequest());
+        final ClientResponse uploadResponse = crashedClient.upload(newRequest());
+        crashed.uploaded(entry, uploadResponse.getHeaders().getFirst("Location"));
+        crashed.close();
+
+        final DeployJournal journal = new DeployJournal(journalFile);
+        assertEquals(1, journal.getRecoveredDeploys().size());
+        final DeployJournal.Entry recovered = journal.getRecoveredDeploys().get(0);
+        assertEquals(entry.getId(), recovered.getId());
+        assertEquals("journal-app", recovered.getAppName());
+        assertEquals(entry.getDigests(), recovered.getDigests());
+        assertEquals(64, recovered.getDigests().get("war").length());
+
+        final DirectToHerokuClient client = server.newClientBuilder().setDeployJournal(journal).build();
+        final Map<DeployJournal.Entry, DeployFuture> resumed = client.resumeDeploys();
+        assertEquals(1, resumed.size());
+        assertEquals(STATUS_SUCCESS, resumed.get(recovered).get().get(STATUS));
+        assertEquals(1, server.getUploadCount("journal-app"));
+        assertTrue(journal.getIncompleteDeploys().isEmpty());
+        assertTrue("Each deploy is resumed only once", client.resumeDeploys().isEmpty());
+    }
+
+    @Test
+    public void testResumeDeploys_InterruptedUploadFails() throws Exception {
+        final DeployJournal crashed = new DeployJournal(journalFile);
+        crashed.started(newRequest());
+        crashed.close();
+
+        final DeployJournal journal = new DeployJournal(journalFile);
+        final DeployFuture future = server.newClientBuilder().setDeployJournal(journal).build().resumeDeploys().values().iterator().next();
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DeploymentException);
+        }
+        assertTrue(journal.getIncompleteDeploys().isEmpty());
+    }
+
+    @Test
+    public void testOpen_IgnoresPartiallyWrittenRecord() throws Exception {
+        final DeployJournal crashed = new DeployJournal(journalFile);
+        crashed.started(newRequest());
+        crashed.close();
+        final FileOutputStream torn = new FileOutputStream(journalFile, true);
+        torn.write("{\"record\":\"sta".getBytes("UTF-8"));
+        torn.close();
+
+        final DeployJournal journal = new DeployJournal(journalFile);
+        assertEquals(1, journal.getRecoveredDeploys().size());
+        assertEquals(1, countLines(journalFile));
+    }
+
+    @Test
+    public void testCompleted_CompactsInBackground() throws Exception {
+        final DeployJournal journal = new DeployJournal(journalFile, 10);
+        final DeployJournal.Entry open = journal.started(newRequest());
+        for (int i = 0; i < 20; i++) {
+            journal.completed(journal.started(newRequest()));
+        }
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (countLines(journalFile) > 12 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(countLines(journalFile) <= 12);
+        journal.close();
+
+        final DeployJournal reopened = new DeployJournal(journalFile);
+        assertEquals(1, reopened.getRecoveredDeploys().size());
+        assertEquals(open.getId(), reopened.getRecoveredDeploys().get(0).getId());
+    }
+
+    @Test
+    public void testStarted_DigestsTakenFromDigestCache() throws Exception {
+        final File cacheFile = File.createTempFile("digests", ".json");
+        cacheFile.delete();
+        final File dir = File.createTempFile("journal", "");
+        dir.delete();
+        dir.mkdir();
+        write(new File(dir, "index.html"), "static contents");
+        try {
+            final DeployRequest request = newRequest().setDirectory("static", new DirectorySource(dir));
+            final DigestCache cache = new DigestCache(cacheFile);
+            cache.capture(request).complete();
+            final long fileReads = cache.getFileReads();
+
+            final DeployJournal journal = new DeployJournal(journalFile);
+            final DeployJournal.Entry entry = journal.started(request, cache.capture(request));
+            journal.close();
+
+            assertEquals("Files known to the cache must not be read again", fileReads, cache.getFileReads());
+            assertEquals(ArtifactDigests.compute(request), entry.getDigests());
+        } finally {
+            new File(dir, "index.html").delete();
+            dir.delete();
+            cacheFile.delete();
+        }
+    }
+
+    private DeployRequest newRequest() {
+        return new DeployRequest("war", "journal-app", Collections.singletonMap("war", war)).setPollingIntervalInit(10);
+    }
+
+    private static int countLines(File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            int lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static com.herokuapp.directto.client.EventSubscription.Event.UPLOAD_START;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class DeploySchedulerTest {
+
+    private DirectToStubServer server;
+    private DirectToHerokuClient client;
+    private final List<File> files = new ArrayList<File>();
+    private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().setBuildDuration(200).start();
+        client = server.newClientBuilder().build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSubmit_SupersedesQueuedRequests() throws Exception {
+        final DeployScheduler scheduler = new DeployScheduler(client, 4);
+        final DeployFuture first = scheduler.submit(newRequest("app", "v1"));
+        final DeployFuture second = scheduler.submit(newRequest("app", "v2"));
+        final DeployFuture third = scheduler.submit(newRequest("app", "v3"));
+        final DeployFuture fourth = scheduler.submit(newRequest("app", "v4"));
+
+        assertEquals(1, scheduler.getRunningCount());
+        assertEquals(1, scheduler.getQueuedCount());
+        for (DeployFuture future : Arrays.asList(first, second, third, fourth)) {
+            assertEquals(STATUS_SUCCESS, future.get().get(STATUS));
+        }
+
+        assertEquals(Arrays.asList("app:v1", "app:v4"), started);
+        assertEquals(2, server.getUploadCount("app"));
+        assertEquals("v4", new String(server.getReceivedFiles("app").get("war"), "UTF-8"));
+        assertEquals(2, scheduler.getSupersededCount());
+        assertEquals(0, scheduler.getRunningCount());
+    }
+
+    @Test
+    public void testSubmit_BoundedParallelismByPriority() throws Exception {
+        final DeployScheduler scheduler = new DeployScheduler(client, 1);
+        final List<DeployFuture> futures = new ArrayList<DeployFuture>();
+        futures.add(scheduler.submit(newRequest("first", "v1")));
+        futures.add(scheduler.submit(newRequest("low", "v1"), -1));
+        futures.add(scheduler.submit(newRequest("normal", "v1")));
+        futures.add(scheduler.submit(newRequest("high", "v1"), 10));
+        assertEquals(1, scheduler.getRunningCount());
+        assertEquals(3, scheduler.getQueuedCount());
+
+        for (DeployFuture future : futures) {
+            assertEquals(STATUS_SUCCESS, future.get().get(STATUS));
+        }
+        assertEquals(Arrays.asList("first:v1", "high:v1", "normal:v1", "low:v1"), started);
+    }
+
+    @Test
+    public void testCancel_WithdrawsQueuedRequest() throws Exception {
+        final DeployScheduler scheduler = new DeployScheduler(client, 1);
+        final DeployFuture first = scheduler.submit(newRequest("first", "v1"));
+        final DeployFuture withdrawn = scheduler.submit(newRequest("withdrawn", "v1"));
+        final DeployFuture kept = scheduler.submit(newRequest("kept", "v1"));
+
+        assertTrue(withdrawn.cancel(false));
+        assertEquals(STATUS_SUCCESS, first.get().get(STATUS));
+        assertEquals(STATUS_SUCCESS, kept.get().get(STATUS));
+        assertEquals(0, server.getUploadCount("withdrawn"));
+        assertEquals(Arrays.asList("first:v1", "kept:v1"), started);
+    }
+
+    @Test
+    public void testSubmit_FailureIsolatedToApp() throws Exception {
+        final DeployScheduler scheduler = new DeployScheduler(client, 2);
+        final DeployFuture failing = scheduler.submit(newRequest("failing", "v1").setResumeUploadUrl("/uploads/999"));
+        final DeployFuture succeeding = scheduler.submit(newRequest("succeeding", "v1"));
+
+        try {
+            failing.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("Upload not found", e.getCause().getMessage());
+        }
+        assertEquals(STATUS_SUCCESS, succeeding.get().get(STATUS));
+    }
+
+    private DeployRequest newRequest(final String appName, final String version) throws IOException {
+        final File war = File.createTempFile("scheduler", ".war");
+        files.add(war);
+        final FileOutputStream out = new FileOutputStream(war);
+        try {
+            out.write(version.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        final EventSubscription subscription = new EventSubscription().subscribe(UPLOAD_START, new EventSubscription.Subscriber() {
+            public void handle(EventSubscription.Event event) {
+                started.add(appName + ":" + version);
+            }
+        });
+        return new DeployRequest("war", appName, Collections.singletonMap("war", war))
+                .setEventSubscription(subscription)
+                .setPollingIntervalInit(10);
+    }
+}
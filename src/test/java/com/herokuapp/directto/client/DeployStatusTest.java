@@ -0,0 +1,80 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.models.DeployStatus;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class DeployStatusTest {
+
+    @Test
+    public void testParse_ReadsStatusAndMessage() throws Exception {
+        final DeployStatus status = parse("{\"details\":{\"steps\":[1,2]},\"status\":\"success\",\"message\":\"Deployed v42\"}");
+
+        assertEquals("success", status.getStatus());
+        assertEquals("Deployed v42", status.getMessage());
+        assertTrue(status.isSuccess());
+        assertFalse(status.isInProcess());
+    }
+
+    @Test
+    public void testAsMap_MatchesPreviousStringConversion() throws Exception {
+        final Map<String, String> map = parse("{\"status\":\"success\",\"release\":42,\"elapsed\":12.5,\"cached\":true,\"app\":null,"
+                + "\"details\":{\"stack\":\"cedar\"},\"steps\":[\"a\",\"b\"]}").asMap();
+
+        final Map<String, String> expected = new LinkedHashMap<String, String>();
+        expected.put("status", "success");
+        expected.put("release", "42");
+        expected.put("elapsed", "12.5");
+        expected.put("cached", "true");
+        expected.put("app", "null");
+        expected.put("details", "{stack=cedar}");
+        expected.put("steps", "[a, b]");
+        assertEquals(expected, map);
+        assertEquals(expected.toString(), map.toString());
+    }
+
+    @Test
+    public void testAsMap_StatusLookupsBeforeAndAfterBuilding() throws Exception {
+        final Map<String, String> map = parse("{\"status\":\"inprocess\",\"message\":\"Building\"}").asMap();
+
+        assertEquals("inprocess", map.get(DirectToHerokuClient.STATUS));
+        assertEquals("Building", map.get("message"));
+        assertNull(map.get("other"));
+        map.put("extra", "value");
+        assertEquals("inprocess", map.get(DirectToHerokuClient.STATUS));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void testParse_EmptyBody() throws Exception {
+        final DeployStatus status = DeployStatus.parse(new byte[0]);
+
+        assertNull(status.getStatus());
+        assertTrue(status.asMap().isEmpty());
+    }
+
+    @Test
+    public void testParse_NotAnObject() throws Exception {
+        try {
+            parse("[\"success\"]");
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private static DeployStatus parse(String json) throws IOException {
+        return DeployStatus.parse(json.getBytes("UTF-8"));
+    }
+}
@@ -8,12 +8,14 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 import static com.herokuapp.directto.client.DirectToHerokuClient.*;
 import static com.herokuapp.directto.client.EventSubscription.Event;
 import static com.herokuapp.directto.client.EventSubscription.Event.*;
 import static com.herokuapp.directto.client.EventSubscription.Subscriber;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Ryan Brainard
@@ -39,6 +41,21 @@ public class DeploymentTest extends DirectToHerokuClientBaseTest {
         assertEquals(EnumSet.of(DEPLOY_START, UPLOAD_START, UPLOAD_END, POLL_START, POLLING, POLL_END, DEPLOY_END), recordedEvents);
     }
 
+    @Test
+    public void testDeployAsync() throws Exception {
+        final DeployFuture future = client.deployAsync(new DeployRequest(WAR_PIPELINE, appName, warBundle).setEventSubscription(subscription));
+        assertEquals(STATUS_SUCCESS, future.get().get(STATUS));
+        assertTrue(future.isDone());
+        assertEquals(EnumSet.of(DEPLOY_START, UPLOAD_START, UPLOAD_END, POLL_START, POLLING, POLL_END, DEPLOY_END), recordedEvents);
+    }
+
+    @Test
+    public void testDeployAsync_NoAccessToApp() throws Exception {
+        exceptions.expect(ExecutionException.class);
+        exceptions.expectMessage("API key must be provided for user with access to app");
+        client.deployAsync(WAR_PIPELINE, UUID.randomUUID().toString(), warBundle).get();
+    }
+
     @Test
     public void testDeploy_NoApiKeySet() throws Exception {
         final DirectToHerokuClient clientWithNoApiKeySet = new Builder().setApiKey("").build();
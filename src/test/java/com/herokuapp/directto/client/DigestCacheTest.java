@@ -0,0 +1,148 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.SKIPPED;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static com.herokuapp.directto.client.EventSubscription.Event.DEPLOY_SKIPPED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Ryan Brainard
+ */
+public class DigestCacheTest {
+
+    private DirectToStubServer server;
+    private File war;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        war = File.createTempFile("digests", ".war");
+        write(war, "first war");
+        cacheFile = File.createTempFile("digests", ".json");
+        cacheFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        war.delete();
+        cacheFile.delete();
+    }
+
+    @Test
+    public void testDeploy_SkipsUnchanged() throws Exception {
+        final DirectToHerokuClient client = server.newClientBuilder().setDigestCache(new DigestCache(cacheFile)).build();
+        final AtomicInteger skips = new AtomicInteger();
+        final EventSubscription subscription = new EventSubscription().subscribe(DEPLOY_SKIPPED, new EventSubscription.Subscriber() {
+            public void handle(EventSubscription.Event event) {
+                skips.incrementAndGet();
+            }
+        });
+
+        assertNull(client.deploy(newRequest().setEventSubscription(subscription)).get(SKIPPED));
+        final Map<String, String> result = client.deploy(newRequest().setEventSubscription(subscription));
+
+        assertEquals(STATUS_SUCCESS, result.get(STATUS));
+        assertEquals("true", result.get(SKIPPED));
+        assertEquals(1, skips.get());
+        assertEquals(1, server.getUploadCount("digest-app"));
+        assertEquals(1, client.getMetrics().getSkippedDeploys());
+    }
+
+    @Test
+    public void testDeploy_UnchangedFileNotRehashed() throws Exception {
+        final DigestCache cache = new DigestCache(cacheFile);
+        final DirectToHerokuClient client = server.newClientBuilder().setDigestCache(cache).build();
+
+        client.deploy(newRequest());
+        assertEquals(1, cache.getMisses());
+        client.deploy(newRequest());
+        client.deployAsync(newRequest()).get();
+
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testDeploy_FileReadOnceWithoutSkipping() throws Exception {
+        final DigestCache cache = new DigestCache(cacheFile);
+        final DirectToHerokuClient client = server.newClientBuilder().setDigestCache(cache).build();
+
+        client.deploy(newRequest().setSkipIfUnchanged(false));
+
+        assertEquals(1, server.getUploadCount("digest-app"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getFileReads());
+    }
+
+    @Test
+    public void testDeploy_FileReadTwiceWhenSkippingRequested() throws Exception {
+        final DigestCache cache = new DigestCache(cacheFile);
+        final DirectToHerokuClient client = server.newClientBuilder().setDigestCache(cache).build();
+
+        client.deploy(newRequest());
+
+        assertEquals(1, server.getUploadCount("digest-app"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getFileReads());
+    }
+
+    @Test
+    public void testDeploy_ChangedFileIsDeployed() throws Exception {
+        final DirectToHerokuClient client = server.newClientBuilder().setDigestCache(new DigestCache(cacheFile)).build();
+
+        client.deploy(newRequest());
+        write(war, "second war, changed");
+        final Map<String, String> result = client.deploy(newRequest());
+
+        assertNull(result.get(SKIPPED));
+        assertEquals(2, server.getUploadCount("digest-app"));
+        assertEquals("second war, changed", new String(server.getReceivedFiles("digest-app").get("war"), "UTF-8"));
+    }
+
+    @Test
+    public void testDeploy_CachePersistsAcrossInstances() throws Exception {
+        server.newClientBuilder().setDigestCache(new DigestCache(cacheFile)).build().deploy(newRequest());
+
+        final DigestCache reloaded = new DigestCache(cacheFile);
+        final Map<String, String> result = server.newClientBuilder().setDigestCache(reloaded).build().deployAsync(newRequest()).get();
+
+        assertEquals("true", result.get(SKIPPED));
+        assertEquals(1, server.getUploadCount("digest-app"));
+        assertEquals(0, reloaded.getMisses());
+
+        reloaded.invalidate("war", "digest-app");
+        assertNull(server.newClientBuilder().setDigestCache(new DigestCache(cacheFile)).build().deploy(newRequest()).get(SKIPPED));
+        assertEquals(2, server.getUploadCount("digest-app"));
+    }
+
+    private DeployRequest newRequest() {
+        return new DeployRequest("war", "digest-app", Collections.singletonMap("war", war))
+                .setPollingIntervalInit(20)
+                .setSkipIfUnchanged(true);
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
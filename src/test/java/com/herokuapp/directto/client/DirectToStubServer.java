@@ -0,0 +1,749 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.core.util.Base64;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jvnet.mimepull.MIMEMessage;
+import org.jvnet.mimepull.MIMEPart;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * In-process stand-in for the Direct-To service, for tests that must run without network access or credentials.
+ * <p/>
+ * Uploads to {@code /direct/{app}/{pipeline}} are parsed, decoded according to each part's {@code Content-Encoding}
+ * and recorded by app name. Each deploy reports {@code inprocess} for a configurable number of polls before succeeding.
+ * Pipeline metadata is served with {@code ETag}s. The chunk protocol used by {@link DeployRequest#setResumableUpload(boolean)} is also implemented, with failure injection.
+ * <p/>
+ * For load and soak tests, every request can be delayed by a fixed latency, upload bodies can be read at a limited
+ * bandwidth, a fraction of requests can fail, and builds can be made to take a minimum duration.
+ *
+ * @author Ryan Brainard
+ */
+public class DirectToStubServer {
+
+    private static final Pattern DIRECT_PATH = Pattern.compile("/direct/([^/]+)/([^/]+)");
+    private static final Pattern CREATE_UPLOAD_PATH = Pattern.compile("/direct/([^/]+)/([^/]+)/uploads");
+    private static final Pattern UPLOAD_PATH = Pattern.compile("/uploads/(\\d+)(?:/(commit|files/([^/]+)))?");
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+    private static final Pattern DEPLOY_PATH = Pattern.compile("/deploys/(\\d+)");
+    private static final Pattern PIPELINE_PATH = Pattern.compile("/pipelines(?:/([^/]+))?");
+    private static final Map<String, String> PIPELINES = new LinkedHashMap<String, String>();
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=\"?([^\";]+)\"?");
+    private static final int BACKLOG = 1024;
+
+    static {
+        PIPELINES.put("war", pipelineJson("war", "Directly deploy a war that will be executed with tomcat runner",
+                "\"war\":\"The war file to be deployed alongside tomcat runner\""));
+        PIPELINES.put("fatjar", pipelineJson("fatjar", "Directly deploy a fat jar",
+                "\"jar\":\"the fat jar\",\"procfile\":\"The Procfile\""));
+        PIPELINES.put("targz", pipelineJson("targz", "Directly deploy a tar.gz",
+                "\"targz\":\"the tar.gz\",\"procfile\":\"The Procfile\""));
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("direct-to-stub"));
+    private final AtomicInteger deployIds = new AtomicInteger();
+    private final Map<Integer, AtomicInteger> pollsRemaining = new ConcurrentHashMap<Integer, AtomicInteger>();
+    private final Map<String, Map<String, byte[]>> receivedFiles = new ConcurrentHashMap<String, Map<String, byte[]>>();
+    private final Map<String, AtomicInteger> uploadCounts = new ConcurrentHashMap<String, AtomicInteger>();
+    private final Map<String, String> receivedEncodings = new ConcurrentHashMap<String, String>();
+    private final Set<String> rejectedApps = Collections.synchronizedSet(new HashSet<String>());
+    private volatile boolean rejectUnread;
+    private final Set<String> clientConnections = Collections.synchronizedSet(new HashSet<String>());
+    private final Map<Integer, ChunkedUpload> chunkedUploads = new ConcurrentHashMap<Integer, ChunkedUpload>();
+    private final AtomicInteger storedChunks = new AtomicInteger();
+    private final AtomicInteger failingChunkPuts = new AtomicInteger();
+    private volatile int maxStoredChunks = -1;
+    private final AtomicInteger metadataRequests = new AtomicInteger();
+    private final AtomicInteger preflightRequests = new AtomicInteger();
+    private final AtomicInteger uploadRequests = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    private volatile int buildPolls = 1;
+    private final AtomicInteger unavailablePolls = new AtomicInteger();
+    private final AtomicInteger statusRequests = new AtomicInteger();
+    private volatile boolean statusStreaming;
+    private volatile boolean silentStreams;
+    private volatile long buildStepDuration = 10;
+    private volatile boolean discardUploads;
+    private volatile long latency;
+    private volatile long bandwidthLimit = -1;
+    private volatile double errorRate;
+    private volatile long buildDuration;
+    private final Random random = new Random();
+    private final Map<Integer, Long> buildsReadyAt = new ConcurrentHashMap<Integer, Long>();
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+    private final AtomicInteger failingGets = new AtomicInteger();
+    private final AtomicInteger stalledGets = new AtomicInteger();
+    private volatile long getStall;
+
+    public DirectToStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/direct/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                if (simulateNetwork(exchange)) {
+                    handleUpload(exchange);
+                }
+            }
+        });
+        server.createContext("/pipelines", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                if (simulateNetwork(exchange)) {
+                    handlePipelines(exchange);
+                }
+            }
+        });
+        server.createContext("/uploads/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                if (simulateNetwork(exchange)) {
+                    handleChunkedUpload(exchange);
+                }
+            }
+        });
+        server.createContext("/deploys/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                if (simulateNetwork(exchange)) {
+                    handleStatus(exchange);
+                }
+            }
+        });
+    }
+
+    public DirectToStubServer start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Client builder pointed at this server
+     */
+    public DirectToHerokuClient.Builder newClientBuilder() {
+        return new DirectToHerokuClient.Builder().setScheme("http").setHost("localhost").setPort(getPort()).setApiKey("stub-api-key");
+    }
+
+    /**
+     * Number of status polls that report {@code inprocess} before a deploy succeeds
+     */
+    public DirectToStubServer setBuildPolls(int buildPolls) {
+        this.buildPolls = buildPolls;
+        return this;
+    }
+
+    /**
+     * Answers the next status polls with {@code 503 Service Unavailable} and {@code Retry-After: 0}
+     */
+    public DirectToStubServer setUnavailablePolls(int count) {
+        unavailablePolls.set(count);
+        return this;
+    }
+
+    /**
+     * Pushes status as server-sent events to clients that accept {@code text/event-stream}
+     */
+    public DirectToStubServer setStatusStreaming(boolean statusStreaming) {
+        this.statusStreaming = statusStreaming;
+        return this;
+    }
+
+    /**
+     * Opens status streams without ever sending an event, like a stalled server or proxy
+     */
+    public DirectToStubServer setSilentStreams(boolean silentStreams) {
+        this.silentStreams = silentStreams;
+        return this;
+    }
+
+    /**
+     * Reads multipart upload bodies without parsing or recording them, so the server costs as little as possible
+     * when measuring the client
+     */
+    public DirectToStubServer setDiscardUploads(boolean discardUploads) {
+        this.discardUploads = discardUploads;
+        return this;
+    }
+
+    /**
+     * Answers uploads and preflight requests for the app with {@code 403 Forbidden} and a JSON message
+     */
+    public DirectToStubServer rejectUploads(String appName) {
+        rejectedApps.add(appName);
+        return this;
+    }
+
+    /**
+     * Answers rejected uploads without reading their bodies first, like a server that refuses a request as soon as it
+     * sees the headers and then closes the connection
+     */
+    public DirectToStubServer setRejectUnread(boolean rejectUnread) {
+        this.rejectUnread = rejectUnread;
+        return this;
+    }
+
+    /**
+     * Milliseconds to wait before handling each request
+     */
+    public DirectToStubServer setLatency(long latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Bytes per second at which each request body is read; -1 for no limit
+     */
+    public DirectToStubServer setBandwidthLimit(long bandwidthLimit) {
+        this.bandwidthLimit = bandwidthLimit;
+        return this;
+    }
+
+    /**
+     * Fraction of requests, between 0 and 1, answered with {@code 500 Internal Server Error} instead of being handled
+     */
+    public DirectToStubServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Answers the next {@code GET} requests with {@code 500 Internal Server Error}, without {@code Retry-After}
+     */
+    public DirectToStubServer failNextGets(int count) {
+        failingGets.set(count);
+        return this;
+    }
+
+    /**
+     * Delays the next {@code GET} requests by the given milliseconds before handling them
+     */
+    public DirectToStubServer stallNextGets(int count, long stall) {
+        getStall = stall;
+        stalledGets.set(count);
+        return this;
+    }
+
+    /**
+     * Number of requests failed by {@link #setErrorRate(double)} or {@link #failNextGets(int)}
+     */
+    public int getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Minimum milliseconds from an upload being accepted until its deploy succeeds, in addition to {@link #setBuildPolls(int)}
+     */
+    public DirectToStubServer setBuildDuration(long buildDuration) {
+        this.buildDuration = buildDuration;
+        return this;
+    }
+
+    /**
+     * Milliseconds between events when streaming status; one event per build poll
+     */
+    public DirectToStubServer setBuildStepDuration(long buildStepDuration) {
+        this.buildStepDuration = buildStepDuration;
+        return this;
+    }
+
+    /**
+     * Number of status polls received
+     */
+    public int getStatusRequestCount() {
+        return statusRequests.get();
+    }
+
+    /**
+     * Rejects the next chunk uploads with {@code 503 Service Unavailable} without storing them
+     */
+    public DirectToStubServer failNextChunkPuts(int count) {
+        failingChunkPuts.set(count);
+        return this;
+    }
+
+    /**
+     * Rejects all chunk uploads once this many chunks have been stored, simulating an outage; -1 for no limit
+     */
+    public DirectToStubServer setMaxStoredChunks(int maxStoredChunks) {
+        this.maxStoredChunks = maxStoredChunks;
+        return this;
+    }
+
+    /**
+     * Number of chunks accepted across all resumable uploads
+     */
+    public int getStoredChunkCount() {
+        return storedChunks.get();
+    }
+
+    /**
+     * Number of distinct client connections that requests have arrived on
+     */
+    public int getConnectionCount() {
+        return clientConnections.size();
+    }
+
+    /**
+     * Number of requests for {@code /pipelines} and {@code /pipelines/{name}}
+     */
+    public int getMetadataRequestCount() {
+        return metadataRequests.get();
+    }
+
+    /**
+     * Number of {@code OPTIONS} requests for upload URLs
+     */
+    public int getPreflightCount() {
+        return preflightRequests.get();
+    }
+
+    /**
+     * Number of multipart upload requests received, whether or not they were accepted
+     */
+    public int getUploadRequestCount() {
+        return uploadRequests.get();
+    }
+
+    /**
+     * Number of metadata requests answered with {@code 304 Not Modified}
+     */
+    public int getNotModifiedCount() {
+        return notModifiedResponses.get();
+    }
+
+    /**
+     * Decoded contents of the files most recently deployed to an app, by file key
+     */
+    public Map<String, byte[]> getReceivedFiles(String appName) {
+        return receivedFiles.get(appName);
+    }
+
+    /**
+     * Number of deploys accepted for an app
+     */
+    public int getUploadCount(String appName) {
+        final AtomicInteger count = uploadCounts.get(appName);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * {@code Content-Encoding} of a received file part, or null if it was sent as is
+     */
+    public String getReceivedEncoding(String appName, String fileKey) {
+        return receivedEncodings.get(appName + "/" + fileKey);
+    }
+
+    private void handlePipelines(HttpExchange exchange) throws IOException {
+        metadataRequests.incrementAndGet();
+        final Matcher path = PIPELINE_PATH.matcher(exchange.getRequestURI().getPath());
+        final String json;
+        if (!path.matches()) {
+            json = null;
+        } else if (path.group(1) == null) {
+            final StringBuilder all = new StringBuilder("{");
+            for (Map.Entry<String, String> pipeline : PIPELINES.entrySet()) {
+                all.append(all.length() > 1 ? "," : "").append('"').append(pipeline.getKey()).append("\":").append(pipeline.getValue());
+            }
+            json = all.append('}').toString();
+        } else {
+            json = PIPELINES.get(path.group(1));
+        }
+
+        if (json == null) {
+            respond(exchange, 404, "{\"message\":\"Not found\"}");
+            return;
+        }
+
+        final String etag = "\"" + Integer.toHexString(json.hashCode()) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedResponses.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+        } else {
+            respond(exchange, 200, json);
+        }
+    }
+
+    private void handleUpload(HttpExchange exchange) throws IOException {
+        final Matcher createUploadPath = CREATE_UPLOAD_PATH.matcher(exchange.getRequestURI().getPath());
+        if ("POST".equals(exchange.getRequestMethod()) && createUploadPath.matches()) {
+            final int uploadId = deployIds.incrementAndGet();
+            chunkedUploads.put(uploadId, new ChunkedUpload(createUploadPath.group(1)));
+            readFully(exchange.getRequestBody());
+            exchange.getResponseHeaders().add("Location", "/uploads/" + uploadId);
+            respond(exchange, 201, "{}");
+            return;
+        }
+
+        final Matcher path = DIRECT_PATH.matcher(exchange.getRequestURI().getPath());
+        if ("OPTIONS".equals(exchange.getRequestMethod()) && path.matches()) {
+            handlePreflight(exchange, path.group(1));
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod()) || !path.matches()) {
+            respond(exchange, 404, "{\"message\":\"Not found\"}");
+            return;
+        }
+        final String appName = path.group(1);
+        uploadRequests.incrementAndGet();
+
+        if (rejectedApps.contains(appName)) {
+            if (!rejectUnread) {
+                discard(requestBody(exchange));
+            }
+            respond(exchange, 403, "{\"message\":\"Not allowed to deploy to " + appName + "\"}");
+            return;
+        }
+        if (discardUploads) {
+            discard(requestBody(exchange));
+            acceptDeploy(exchange, appName);
+            return;
+        }
+
+        final Matcher boundary = BOUNDARY.matcher(String.valueOf(exchange.getRequestHeaders().getFirst("Content-Type")));
+        if (!boundary.find()) {
+            respond(exchange, 400, "{\"message\":\"Multipart body required\"}");
+            return;
+        }
+
+        final Map<String, byte[]> files = new HashMap<String, byte[]>();
+        final List<MIMEPart> parts = new MIMEMessage(requestBody(exchange), boundary.group(1)).getAttachments();
+        for (MIMEPart part : parts) {
+            final String name = parseName(part.getHeader("Content-Disposition").get(0));
+            final List<String> encodingHeader = part.getHeader("Content-Encoding");
+            final String encoding = encodingHeader != null && !encodingHeader.isEmpty() ? encodingHeader.get(0) : null;
+            if (encoding != null) {
+                receivedEncodings.put(appName + "/" + name, encoding);
+            } else {
+                receivedEncodings.remove(appName + "/" + name);
+            }
+            files.put(name, readFully(decode(part.readOnce(), encoding)));
+        }
+        receivedFiles.put(appName, files);
+        acceptDeploy(exchange, appName);
+    }
+
+    private void handlePreflight(HttpExchange exchange, String appName) throws IOException {
+        preflightRequests.incrementAndGet();
+        if (rejectedApps.contains(appName)) {
+            respond(exchange, 403, "{\"message\":\"Not allowed to deploy to " + appName + "\"}");
+        } else {
+            exchange.getResponseHeaders().set("Allow", "OPTIONS, POST");
+            respond(exchange, 200, "{}");
+        }
+    }
+
+    private void acceptDeploy(HttpExchange exchange, String appName) throws IOException {
+        synchronized (uploadCounts) {
+            if (!uploadCounts.containsKey(appName)) {
+                uploadCounts.put(appName, new AtomicInteger());
+            }
+        }
+        uploadCounts.get(appName).incrementAndGet();
+        final int deployId = deployIds.incrementAndGet();
+        pollsRemaining.put(deployId, new AtomicInteger(buildPolls));
+        buildsReadyAt.put(deployId, System.currentTimeMillis() + buildDuration);
+        exchange.getResponseHeaders().add("Location", "/deploys/" + deployId);
+        respond(exchange, 202, "{\"status\":\"inprocess\"}");
+    }
+
+    private void handleChunkedUpload(HttpExchange exchange) throws IOException {
+        final Matcher path = UPLOAD_PATH.matcher(exchange.getRequestURI().getPath());
+        final ChunkedUpload upload = path.matches() ? chunkedUploads.get(Integer.valueOf(path.group(1))) : null;
+        if (upload == null) {
+            respond(exchange, 404, "{\"message\":\"Upload not found\"}");
+        } else if ("GET".equals(exchange.getRequestMethod()) && path.group(2) == null) {
+            respond(exchange, 200, upload.toJson());
+        } else if ("POST".equals(exchange.getRequestMethod()) && "commit".equals(path.group(2))) {
+            readFully(exchange.getRequestBody());
+            final Map<String, byte[]> files = new HashMap<String, byte[]>();
+            for (Map.Entry<String, ByteArrayOutputStream> file : upload.files.entrySet()) {
+                files.put(file.getKey(), file.getValue().toByteArray());
+            }
+            receivedFiles.put(upload.appName, files);
+            acceptDeploy(exchange, upload.appName);
+        } else if ("PUT".equals(exchange.getRequestMethod()) && path.group(3) != null) {
+            handleChunk(exchange, upload, path.group(3));
+        } else {
+            respond(exchange, 404, "{\"message\":\"Not found\"}");
+        }
+    }
+
+    private void handleChunk(HttpExchange exchange, ChunkedUpload upload, String fileKey) throws IOException {
+        final byte[] body = readFully(requestBody(exchange));
+        if (failingChunkPuts.getAndDecrement() > 0 || (maxStoredChunks >= 0 && storedChunks.get() >= maxStoredChunks)) {
+            respond(exchange, 503, "{\"message\":\"Unavailable\"}");
+            return;
+        }
+
+        final Matcher range = CONTENT_RANGE.matcher(String.valueOf(exchange.getRequestHeaders().getFirst("Content-Range")));
+        final String contentMd5 = exchange.getRequestHeaders().getFirst("Content-MD5");
+        if (!range.matches() || contentMd5 == null || !contentMd5.equals(md5(body))) {
+            respond(exchange, 400, "{\"message\":\"Bad chunk\"}");
+            return;
+        }
+
+        final byte[] chunk = readFully(decode(new ByteArrayInputStream(body), exchange.getRequestHeaders().getFirst("Content-Encoding")));
+        synchronized (upload) {
+            if (!upload.files.containsKey(fileKey)) {
+                upload.files.put(fileKey, new ByteArrayOutputStream());
+            }
+            final ByteArrayOutputStream file = upload.files.get(fileKey);
+            final long start = Long.parseLong(range.group(1));
+            if (start != file.size() || Long.parseLong(range.group(2)) - start + 1 != chunk.length) {
+                respond(exchange, 409, upload.toJson());
+                return;
+            }
+            file.write(chunk);
+            storedChunks.incrementAndGet();
+            respond(exchange, 200, upload.toJson());
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        statusRequests.incrementAndGet();
+        if (unavailablePolls.getAndDecrement() > 0) {
+            exchange.getResponseHeaders().set("Retry-After", "0");
+            respond(exchange, 503, "{\"message\":\"Unavailable\"}");
+            return;
+        }
+
+        final Matcher path = DEPLOY_PATH.matcher(exchange.getRequestURI().getPath());
+        final AtomicInteger remaining = path.matches() ? pollsRemaining.get(Integer.valueOf(path.group(1))) : null;
+        final long readyAt = remaining != null ? buildsReadyAt.get(Integer.valueOf(path.group(1))) : 0;
+        final String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (remaining != null && statusStreaming && accept != null && accept.contains("text/event-stream")) {
+            streamStatus(exchange, remaining, readyAt);
+        } else if (remaining == null) {
+            respond(exchange, 404, "{\"message\":\"Not found\"}");
+        } else if (remaining.decrementAndGet() >= 0 || System.currentTimeMillis() < readyAt) {
+            respond(exchange, 200, "{\"status\":\"inprocess\"}");
+        } else {
+            respond(exchange, 200, "{\"status\":\"success\",\"message\":\"Deployed\"}");
+        }
+    }
+
+    private void streamStatus(HttpExchange exchange, AtomicInteger remaining, long readyAt) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+            while (silentStreams) {
+                Thread.sleep(buildStepDuration);
+            }
+            while (remaining.decrementAndGet() >= 0 || System.currentTimeMillis() < readyAt) {
+                out.write("data: {\"status\":\"inprocess\"}\n\n".getBytes("UTF-8"));
+                out.flush();
+                Thread.sleep(buildStepDuration);
+            }
+            out.write(": done\ndata: {\"status\":\"success\",\ndata: \"message\":\"Deployed\"}\n\n".getBytes("UTF-8"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Applies latency and error injection
+     *
+     * @return false if the request was already answered
+     */
+    private boolean simulateNetwork(HttpExchange exchange) throws IOException {
+        clientConnections.add(exchange.getRemoteAddress().toString());
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        final boolean get = "GET".equals(exchange.getRequestMethod());
+        if (get && stalledGets.getAndDecrement() > 0) {
+            try {
+                Thread.sleep(getStall);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        boolean fail = get && failingGets.getAndDecrement() > 0;
+        synchronized (random) {
+            fail |= errorRate > 0 && random.nextDouble() < errorRate;
+        }
+        if (fail) {
+            injectedErrors.incrementAndGet();
+            discard(requestBody(exchange));
+            respond(exchange, 500, "{\"message\":\"Injected failure\"}");
+            return false;
+        }
+        return true;
+    }
+
+    private InputStream requestBody(HttpExchange exchange) {
+        final InputStream body = exchange.getRequestBody();
+        return bandwidthLimit > 0 ? new ThrottledInputStream(body, bandwidthLimit) : body;
+    }
+
+    private static String pipelineJson(String name, String description, String requiredFileInfo) {
+        return "{\"name\":\"" + name + "\",\"call\":{\"method\":\"POST\",\"url\":\"/direct/<your app>/" + name + "\"}," +
+                "\"manifest\":{\"description\":\"" + description + "\",\"requiredFileInfo\":{" + requiredFileInfo + "}}}";
+    }
+
+    private static String md5(byte[] body) {
+        try {
+            return new String(Base64.encode(MessageDigest.getInstance("MD5").digest(body)), "US-ASCII");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String parseName(String contentDisposition) {
+        final Matcher name = Pattern.compile("name=\"([^\"]*)\"").matcher(contentDisposition);
+        return name.find() ? name.group(1) : null;
+    }
+
+    private static InputStream decode(InputStream in, String encoding) throws IOException {
+        if ("gzip".equals(encoding)) {
+            return new GZIPInputStream(in);
+        } else if ("deflate".equals(encoding)) {
+            return new InflaterInputStream(in);
+        } else {
+            return in;
+        }
+    }
+
+    private static void discard(InputStream in) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        while (in.read(buffer) != -1) {
+            // discard
+        }
+        in.close();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        final byte[] body = json.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * Reads no faster than a number of bytes per second, measured from the first read
+     */
+    private static final class ThrottledInputStream extends FilterInputStream {
+        private final long bytesPerSecond;
+        private long start = -1;
+        private long bytesRead;
+
+        ThrottledInputStream(InputStream in, long bytesPerSecond) {
+            super(in);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int read() throws IOException {
+            throttle(1);
+            final int read = super.read();
+            bytesRead += read >= 0 ? 1 : 0;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int allowed = (int) Math.min(len, Math.max(1, bytesPerSecond / 10));
+            throttle(allowed);
+            final int read = super.read(b, off, allowed);
+            bytesRead += Math.max(0, read);
+            return read;
+        }
+
+        private void throttle(int next) throws InterruptedIOException {
+            if (start < 0) {
+                start = System.currentTimeMillis();
+            }
+            final long due = start + (bytesRead + next) * 1000L / bytesPerSecond;
+            final long wait = due - System.currentTimeMillis();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private static class ChunkedUpload {
+        final String appName;
+        final Map<String, ByteArrayOutputStream> files = new HashMap<String, ByteArrayOutputStream>();
+
+        ChunkedUpload(String appName) {
+            this.appName = appName;
+        }
+
+        synchronized String toJson() {
+            final StringBuilder json = new StringBuilder("{\"files\":{");
+            for (Map.Entry<String, ByteArrayOutputStream> file : files.entrySet()) {
+                if (json.charAt(json.length() - 1) != '{') {
+                    json.append(',');
+                }
+                json.append('"').append(file.getKey()).append("\":{\"received\":").append(file.getValue().size()).append('}');
+            }
+            return json.append("}}").toString();
+        }
+    }
+}
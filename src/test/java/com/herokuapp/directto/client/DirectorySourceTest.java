@@ -0,0 +1,277 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class DirectorySourceTest {
+
+    private static final DirectorySource.ProgressListener NO_PROGRESS = new DirectorySource.ProgressListener() {
+        public void read(long bytes) {
+        }
+    };
+
+    private File dir;
+    private Map<String, byte[]> contents;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("directory-source", "dir");
+        dir.delete();
+        dir.mkdirs();
+
+        contents = new LinkedHashMap<String, byte[]>();
+        final Random random = new Random(3);
+        final byte[] large = new byte[ZipArchiveWriter.MAX_BUFFERED_ENTRY + 1000];
+        random.nextBytes(large);
+        contents.put("WEB-INF/lib/large.jar", large);
+        contents.put("WEB-INF/web.xml", "<web-app/>".getBytes("UTF-8"));
+        contents.put("empty.txt", new byte[0]);
+        contents.put("index.html", repeat("<p>hello</p>", 1000).getBytes("UTF-8"));
+        contents.put("static/" + repeat("nested/", 20) + "long-name-" + repeat("x", 100) + ".css", "body {}".getBytes("UTF-8"));
+        for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+            writeFile(file.getKey(), file.getValue());
+        }
+        writeFile("WEB-INF/classes/App.class", new byte[]{(byte) 0xca, (byte) 0xfe});
+        writeFile("target/ignored.log", new byte[10]);
+        contents.put("WEB-INF/classes/App.class", new byte[]{(byte) 0xca, (byte) 0xfe});
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    @Test
+    public void testListEntries_IncludesAndExcludes() throws Exception {
+        assertEquals(Arrays.asList("WEB-INF/classes/App.class", "WEB-INF/lib/large.jar", "WEB-INF/web.xml"),
+                paths(new DirectorySource(dir).include("WEB-INF/**").listEntries()));
+        assertEquals(Arrays.asList("WEB-INF/classes/App.class"),
+                paths(new DirectorySource(dir).include("**/*.class").listEntries()));
+        assertEquals(Arrays.asList("WEB-INF/lib/large.jar", "WEB-INF/web.xml"),
+                paths(new DirectorySource(dir).include("WEB-INF/*/*.jar", "WEB-INF/web.?ml").listEntries()));
+        assertFalse(paths(new DirectorySource(dir).exclude("target/**").listEntries()).contains("target/ignored.log"));
+    }
+
+    @Test
+    public void testToPattern() throws Exception {
+        assertTrue(DirectorySource.toPattern("**/*.class").matcher("App.class").matches());
+        assertTrue(DirectorySource.toPattern("**/*.class").matcher("a/b/App.class").matches());
+        assertFalse(DirectorySource.toPattern("*.class").matcher("a/App.class").matches());
+        assertFalse(DirectorySource.toPattern("a.b").matcher("axb").matches());
+    }
+
+    @Test
+    public void testWriteTo_ZipRoundTrip() throws Exception {
+        final byte[] archive = write(new DirectorySource(dir).exclude("target/**").setParallelism(3));
+
+        final Map<String, byte[]> streamed = new LinkedHashMap<String, byte[]>();
+        final ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive));
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            streamed.put(entry.getName(), read(zip));
+        }
+        assertContents(streamed);
+
+        final File file = File.createTempFile("directory-source", ".zip");
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(archive);
+            out.close();
+            final ZipFile zipFile = new ZipFile(file);
+            try {
+                final Map<String, byte[]> indexed = new LinkedHashMap<String, byte[]>();
+                for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                    final ZipEntry indexedEntry = entries.nextElement();
+                    indexed.put(indexedEntry.getName(), read(zipFile.getInputStream(indexedEntry)));
+                }
+                assertContents(indexed);
+            } finally {
+                zipFile.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWriteTo_TarGzRoundTrip() throws Exception {
+        final byte[] archive = write(new DirectorySource(dir).exclude("target/**").setFormat(DirectorySource.Format.TAR_GZ));
+
+        final InputStream tar = new GZIPInputStream(new ByteArrayInputStream(archive));
+        final Map<String, byte[]> extracted = new LinkedHashMap<String, byte[]>();
+        String longName = null;
+        byte[] header;
+        while ((header = readBlocks(tar, 1)) != null && header[0] != 0) {
+            final int size = Integer.parseInt(new String(header, 124, 11, "US-ASCII"), 8);
+            final byte[] data = readBlocks(tar, (size + 511) / 512);
+            if (header[156] == 'L') {
+                longName = new String(data, 0, size - 1, "UTF-8");
+                continue;
+            }
+            String name = cString(header, 0, 100);
+            final String prefix = cString(header, 345, 155);
+            if (longName != null) {
+                name = longName;
+                longName = null;
+            } else if (prefix.length() > 0) {
+                name = prefix + "/" + name;
+            }
+            final byte[] fileContents = new byte[size];
+            System.arraycopy(data, 0, fileContents, 0, size);
+            extracted.put(name, fileContents);
+        }
+        assertContents(extracted);
+    }
+
+    @Test
+    public void testDeploy_Directory() throws Exception {
+        final DirectToStubServer server = new DirectToStubServer().start();
+        try {
+            final DeployRequest request = new DeployRequest("war", "directory-app", Collections.<String, File>emptyMap())
+                    .setDirectory("war", new DirectorySource(dir).exclude("target/**").setFileName("app.war"))
+                    .setPollingIntervalInit(10);
+            final DirectToHerokuClient client = server.newClientBuilder().build();
+            client.verify(request);
+            assertEquals(STATUS_SUCCESS, client.deploy(request).get(STATUS));
+
+            final ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(server.getReceivedFiles("directory-app").get("war")));
+            final Map<String, byte[]> received = new LinkedHashMap<String, byte[]>();
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                received.put(entry.getName(), read(zip));
+            }
+            assertContents(received);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testVerify_DirectoryProblems() throws Exception {
+        final DirectToStubServer server = new DirectToStubServer().start();
+        try {
+            final DeployRequest request = new DeployRequest("war", "directory-app", Collections.<String, File>emptyMap())
+                    .setDirectory("war", new DirectorySource(new File(dir, "missing")))
+                    .setResumableUpload(true);
+            server.newClientBuilder().build().verify(request);
+            fail();
+        } catch (VerificationException e) {
+            assertTrue(e.getMessage().contains("Directory not found for: war"));
+            assertTrue(e.getMessage().contains("Directories cannot be uploaded with resumable uploads"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private byte[] write(DirectorySource source) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.writeTo(source.listEntries(), out, NO_PROGRESS);
+        return out.toByteArray();
+    }
+
+    private void assertContents(Map<String, byte[]> actual) {
+        assertEquals(new ArrayList<String>(new TreeSet<String>(contents.keySet())), new ArrayList<String>(actual.keySet()));
+        for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+            assertTrue("Contents must match for " + file.getKey(), Arrays.equals(file.getValue(), actual.get(file.getKey())));
+        }
+    }
+
+    private static List<String> paths(List<DirectorySource.Entry> entries) {
+        final List<String> paths = new ArrayList<String>();
+        for (DirectorySource.Entry entry : entries) {
+            paths.add(entry.path);
+        }
+        return paths;
+    }
+
+    private static byte[] readBlocks(InputStream in, int blocks) throws IOException {
+        final byte[] data = new byte[blocks * 512];
+        int position = 0;
+        while (position < data.length) {
+            final int read = in.read(data, position, data.length - position);
+            if (read == -1) {
+                return null;
+            }
+            position += read;
+        }
+        return data;
+    }
+
+    private static String cString(byte[] bytes, int offset, int length) throws IOException {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, "UTF-8");
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static String repeat(String value, int times) {
+        final StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            repeated.append(value);
+        }
+        return repeated.toString();
+    }
+
+    private void writeFile(String path, byte[] data) throws IOException {
+        final File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,121 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.EventSubscription.Event;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import static com.herokuapp.directto.client.EventSubscription.Event.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Brainard
+ */
+public class EventDetailsTest {
+
+    private final File war = new File(ClassLoader.getSystemResource("sample-war.war").getPath());
+    private final Map<String, File> files = Collections.singletonMap("war", war);
+    private DirectToStubServer server;
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testDeploy_DetailsForEachPhase() throws Exception {
+        server = new DirectToStubServer().setBuildPolls(2).start();
+        final List<EventDetails> details = new ArrayList<EventDetails>();
+        final EventSubscription subscription = new EventSubscription()
+                .setProgressInterval(0)
+                .subscribe(EnumSet.allOf(Event.class), new EventSubscription.DetailedSubscriber() {
+                    public void handle(Event event, EventDetails eventDetails) {
+                        assertEquals(event, eventDetails.getEvent());
+                        details.add(eventDetails);
+                    }
+                });
+
+        server.newClientBuilder().build().deploy(newRequest(subscription));
+
+        final EventDetails progress = first(details, UPLOAD_PROGRESS);
+        assertEquals("war", progress.getFileKey());
+        assertEquals(war.length(), progress.getTotalBytes());
+        assertTrue(progress.getBytesTransferred() > 0);
+
+        final EventDetails uploadEnd = first(details, UPLOAD_END);
+        assertEquals(war.length(), uploadEnd.getBytesTransferred());
+        assertEquals(war.length(), uploadEnd.getTotalBytes());
+        assertNull(uploadEnd.getFileKey());
+
+        final List<Integer> attempts = new ArrayList<Integer>();
+        for (EventDetails eventDetails : details) {
+            if (eventDetails.getEvent() == POLLING) {
+                attempts.add(eventDetails.getPollAttempt());
+            }
+        }
+        assertEquals(Arrays.asList(1, 2, 3), attempts);
+
+        final EventDetails deployEnd = first(details, DEPLOY_END);
+        assertTrue(deployEnd.getPhaseElapsed() >= first(details, POLL_END).getPhaseElapsed());
+        assertEquals(0, first(details, DEPLOY_START).getPhaseElapsed());
+    }
+
+    @Test
+    public void testDeploy_ProgressIsRateLimited() throws Exception {
+        server = new DirectToStubServer().start();
+        final List<EventDetails> progress = new ArrayList<EventDetails>();
+        final EventSubscription subscription = new EventSubscription()
+                .setProgressInterval(60000)
+                .subscribe(UPLOAD_PROGRESS, new EventSubscription.DetailedSubscriber() {
+                    public void handle(Event event, EventDetails eventDetails) {
+                        progress.add(eventDetails);
+                    }
+                });
+
+        server.newClientBuilder().build().deploy(newRequest(subscription));
+
+        assertTrue(progress.isEmpty());
+    }
+
+    @Test
+    public void testSubscriber_StillReceivesEvents() throws Exception {
+        server = new DirectToStubServer().start();
+        final List<Event> events = new ArrayList<Event>();
+        final EventSubscription.Subscriber subscriber = new EventSubscription.Subscriber() {
+            public void handle(Event event) {
+                events.add(event);
+            }
+        };
+        final EventSubscription subscription = new EventSubscription()
+                .subscribe(EnumSet.of(UPLOAD_START, UPLOAD_END), subscriber)
+                .subscribe(UPLOAD_START, subscriber);
+
+        server.newClientBuilder().build().deploy(newRequest(subscription));
+
+        assertEquals(Arrays.asList(UPLOAD_START, UPLOAD_END), events);
+    }
+
+    private DeployRequest newRequest(EventSubscription subscription) {
+        return new DeployRequest("war", "app", files)
+                .setEventSubscription(subscription)
+                .setPollingStrategy(new FixedIntervalPollingStrategy(10));
+    }
+
+    private static EventDetails first(List<EventDetails> details, Event event) {
+        for (EventDetails eventDetails : details) {
+            if (eventDetails.getEvent() == event) {
+                return eventDetails;
+            }
+        }
+        throw new AssertionError("No " + event);
+    }
+}
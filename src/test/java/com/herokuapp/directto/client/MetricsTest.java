@@ -0,0 +1,150 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.ClientMetrics.Call;
+import com.herokuapp.directto.client.ClientMetrics.Phase;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class MetricsTest {
+
+    private final File war = new File(ClassLoader.getSystemResource("sample-war.war").getPath());
+    private final Map<String, File> files = Collections.singletonMap("war", war);
+    private DirectToStubServer server;
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testHistogram_BucketsCoverValues() throws Exception {
+        for (long value : new long[]{0, 1, 3, 4, 7, 8, 9, 1000, 123456789, Long.MAX_VALUE}) {
+            final long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertTrue(value + " <= " + upperBound, value <= upperBound);
+            assertTrue(value + " within 25% of " + upperBound, upperBound - value <= value / 4 + 1);
+        }
+    }
+
+    @Test
+    public void testHistogram_Percentiles() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50500, histogram.getMean(), 0.1);
+        assertTrue(histogram.getPercentile(50) >= 50000 && histogram.getPercentile(50) <= 50000 * 1.25);
+        assertEquals(100000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testDeploy_RecordsPhasesCallsAndCounters() throws Exception {
+        server = new DirectToStubServer().setBuildPolls(2).setUnavailablePolls(1).start();
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+        final DeployRequest request = new DeployRequest("war", "app", files).setPollingStrategy(new FixedIntervalPollingStrategy(10));
+
+        client.verify(request);
+        client.deploy(request);
+
+        final ClientMetrics metrics = client.getMetrics();
+        for (Phase phase : Phase.values()) {
+            assertEquals(phase.name(), 1, metrics.getPhaseLatency(phase).getCount());
+        }
+        assertEquals(1, metrics.getCallLatency(Call.PIPELINE).getCount());
+        assertEquals(1, metrics.getCallLatency(Call.UPLOAD).getCount());
+        assertEquals(4, metrics.getCallLatency(Call.STATUS).getCount());
+        assertEquals(war.length(), metrics.getBytesUploaded());
+        assertEquals(3, metrics.getPolls());
+        assertEquals(1, metrics.getRetries());
+        assertTrue(metrics.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testClassify_PreflightSeparateFromStatus() throws Exception {
+        assertEquals(Call.PREFLIGHT, MetricsFilter.classify("OPTIONS", "/direct/app/war"));
+        assertEquals(Call.STATUS, MetricsFilter.classify("GET", "/deploys/1"));
+
+        server = new DirectToStubServer().start();
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+        client.deploy(new DeployRequest("war", "app", files).setPreflight(true).setPollingStrategy(new FixedIntervalPollingStrategy(10)));
+
+        assertEquals(1, client.getMetrics().getCallLatency(Call.PREFLIGHT).getCount());
+        assertEquals(client.getMetrics().getPolls(), client.getMetrics().getCallLatency(Call.STATUS).getCount());
+    }
+
+    @Test
+    public void testFailures_CountedByKind() throws Exception {
+        server = new DirectToStubServer().rejectUploads("forbidden").start();
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+
+        try {
+            client.verify(new DeployRequest("war", "", files));
+            fail();
+        } catch (VerificationException expected) {
+        }
+        try {
+            client.deploy(new DeployRequest("war", "app", Collections.singletonMap("war", new File("missing.war"))));
+            fail();
+        } catch (RuntimeException expected) {
+        }
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.deploy(new DeployRequest("war", "forbidden", files));
+                fail();
+            } catch (DeploymentException e) {
+                assertEquals(DeploymentException.Reason.NOT_ACCEPTED, e.getReason());
+            }
+        }
+        server.setBuildDuration(10000);
+        try {
+            client.deploy(new DeployRequest("war", "app", files).setPollingTimeout(100).setPollingStrategy(new FixedIntervalPollingStrategy(10)));
+            fail();
+        } catch (DeploymentException e) {
+            assertEquals(DeploymentException.Reason.POLLING_TIMEOUT, e.getReason());
+        }
+
+        final Map<String, Long> failures = client.getMetrics().getFailures();
+        assertEquals(Long.valueOf(1), failures.get("VerificationException"));
+        assertEquals(Long.valueOf(2), failures.get("NOT_ACCEPTED"));
+        assertEquals(Long.valueOf(1), failures.get("POLLING_TIMEOUT"));
+        assertEquals(4, failures.size());
+        assertEquals(0, client.getMetrics().getPhaseLatency(Phase.VERIFY).getCount());
+    }
+
+    @Test
+    public void testExporter_CalledPeriodically() throws Exception {
+        server = new DirectToStubServer().start();
+        final CountDownLatch exports = new CountDownLatch(2);
+        final DirectToHerokuClient client = server.newClientBuilder()
+                .setMetricsExportInterval(10)
+                .setMetricsExporter(new MetricsExporter() {
+                    public void export(ClientMetrics metrics) {
+                        exports.countDown();
+                        throw new RuntimeException("exporter failures do not stop exports");
+                    }
+                })
+                .build();
+
+        assertTrue(exports.await(5, TimeUnit.SECONDS));
+        assertEquals(0, client.getMetrics().getPolls());
+    }
+}
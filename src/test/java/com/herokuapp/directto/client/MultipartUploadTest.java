@@ -0,0 +1,228 @@
+package com.herokuapp.directto.client;
+
+import org.junit.Test;
+import org.jvnet.mimepull.MIMEMessage;
+import org.jvnet.mimepull.MIMEPart;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class MultipartUploadTest {
+
+    @Test
+    public void testWriteTo_PartsRoundTrip() throws Exception {
+        final Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put("war", createFile("war contents"));
+        files.put("procfile", createFile("web: java -jar app.jar"));
+        final MultipartUpload upload = new MultipartUpload(files);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        upload.writeTo(out);
+
+        final String boundary = upload.getMediaType().getParameters().get("boundary");
+        final List<MIMEPart> parts = new MIMEMessage(new ByteArrayInputStream(out.toByteArray()), boundary).getAttachments();
+        assertEquals(2, parts.size());
+        assertTrue(parts.get(0).getHeader("Content-Disposition").get(0).contains("name=\"war\""));
+        assertEquals("war contents", read(parts.get(0).readOnce()));
+        assertTrue(parts.get(1).getHeader("Content-Disposition").get(0).contains("name=\"procfile\""));
+        assertEquals("web: java -jar app.jar", read(parts.get(1).readOnce()));
+    }
+
+    @Test
+    public void testWriteTo_LargeFileThroughBoundedBuffer() throws Exception {
+        final File largeFile = createSparseFile(256L * 1024L * 1024L);
+        try {
+            final CountingOutputStream out = new CountingOutputStream();
+            new MultipartUpload(singleFile(largeFile), Collections.<String, ContentCodec>emptyMap(), new BufferPool(4096, 1)).writeTo(out);
+
+            assertTrue(out.count > largeFile.length());
+            assertTrue("Writes must not exceed the pooled buffer size", out.largestWrite <= 4096);
+        } finally {
+            largeFile.delete();
+        }
+    }
+
+    @Test
+    public void testWriteTo_CancelledWhileWaitingForBuffer() throws Exception {
+        final File file = createFile("war contents");
+        final BufferPool pool = new BufferPool(4096, 1);
+        final byte[] held = pool.acquire(null);
+        final DeployCancellation cancellation = new DeployCancellation(0);
+        final MultipartUpload upload = new MultipartUpload(singleFile(file), Collections.<String, DirectorySource>emptyMap(),
+                Collections.<String, ContentCodec>emptyMap(), pool, null, cancellation, null, null);
+        final IOException[] failure = new IOException[1];
+        final Thread uploader = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    upload.writeTo(new ByteArrayOutputStream());
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        uploader.start();
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (uploader.getState() != Thread.State.WAITING && uploader.getState() != Thread.State.TIMED_WAITING
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        cancellation.cancel("Deploy cancelled");
+        uploader.join(5000);
+
+        try {
+            assertTrue(!uploader.isAlive());
+            assertTrue(failure[0] instanceof InterruptedIOException);
+        } finally {
+            pool.release(held);
+            uploader.join();
+        }
+    }
+
+    @Test
+    public void testWriteTo_CancelledEncoderClosedWithoutWritingToBody() throws Exception {
+        final File file = createFile(new String(new char[3 * 4096]).replace('\0', 'a'));
+        final DeployCancellation cancellation = new DeployCancellation(0);
+        final CountingOutputStream body = new CountingOutputStream();
+        final long[] writtenBeforeCancel = new long[1];
+        final boolean[] encoderClosed = new boolean[1];
+        final ContentCodec codec = new ContentCodec() {
+            public String getContentEncoding() {
+                return "gzip";
+            }
+
+            public OutputStream encode(OutputStream target) throws IOException {
+                return new GZIPOutputStream(target) {
+                    @Override
+                    public synchronized void write(byte[] b, int off, int len) throws IOException {
+                        super.write(b, off, len);
+                        writtenBeforeCancel[0] = body.count;
+                        cancellation.cancel("Deploy cancelled");
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        encoderClosed[0] = true;
+                        super.close();
+                    }
+                };
+            }
+        };
+        final MultipartUpload upload = new MultipartUpload(singleFile(file), Collections.<String, DirectorySource>emptyMap(),
+                Collections.singletonMap("war", codec), new BufferPool(4096, 1), null, cancellation, null, null);
+
+        try {
+            upload.writeTo(body);
+            fail();
+        } catch (InterruptedIOException e) {
+            assertTrue(encoderClosed[0]);
+            assertEquals("Nothing may reach the body after the part fails", writtenBeforeCancel[0], body.count);
+        }
+    }
+
+    @Test
+    public void testWriteTo_ChannelTargetUsesTransfer() throws Exception {
+        final File largeFile = createSparseFile(16L * 1024L * 1024L);
+        try {
+            final CountingChannelOutputStream out = new CountingChannelOutputStream();
+            new MultipartUpload(singleFile(largeFile)).writeTo(out);
+
+            assertEquals(largeFile.length(), out.channelCount);
+        } finally {
+            largeFile.delete();
+        }
+    }
+
+    private static Map<String, File> singleFile(File file) {
+        final Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put("war", file);
+        return files;
+    }
+
+    private static File createFile(String contents) throws IOException {
+        final File file = File.createTempFile("multipart", ".tmp");
+        file.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static File createSparseFile(long length) throws IOException {
+        final File file = File.createTempFile("large", ".war");
+        final RandomAccessFile largeness = new RandomAccessFile(file, "rw");
+        largeness.setLength(length);
+        largeness.close();
+        return file;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+        int largestWrite;
+
+        @Override
+        public void write(int b) throws IOException {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+            largestWrite = Math.max(largestWrite, len);
+        }
+    }
+
+    private static class CountingChannelOutputStream extends CountingOutputStream implements WritableByteChannel {
+        long channelCount;
+
+        public int write(ByteBuffer src) throws IOException {
+            final int remaining = src.remaining();
+            src.position(src.limit());
+            channelCount += remaining;
+            return remaining;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
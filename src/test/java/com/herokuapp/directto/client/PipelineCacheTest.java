@@ -0,0 +1,145 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.models.Pipeline;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class PipelineCacheTest {
+
+    private DirectToStubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testGetPipeline_FreshEntryIsNotFetchedAgain() throws Exception {
+        final PipelineCache cache = new PipelineCache();
+        final DirectToHerokuClient client = server.newClientBuilder().setPipelineCache(cache).build();
+
+        final Pipeline first = client.getPipeline("war");
+        assertSame(first, client.getPipeline("war"));
+        assertEquals("war", first.getName());
+
+        assertEquals(1, server.getMetadataRequestCount());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testGetPipeline_ExpiredEntryIsRevalidated() throws Exception {
+        final PipelineCache cache = new PipelineCache(0, PipelineCache.DEFAULT_MAX_ENTRIES);
+        final DirectToHerokuClient client = server.newClientBuilder().setPipelineCache(cache).build();
+
+        final Pipeline first = client.getPipeline("war");
+        assertSame(first, client.getPipeline("war"));
+
+        assertEquals(2, server.getMetadataRequestCount());
+        assertEquals(1, server.getNotModifiedCount());
+        assertEquals(1, cache.getRevalidations());
+    }
+
+    @Test
+    public void testGetPipeline_Invalidate() throws Exception {
+        final PipelineCache cache = new PipelineCache();
+        final DirectToHerokuClient client = server.newClientBuilder().setPipelineCache(cache).build();
+
+        client.getPipeline("war");
+        cache.invalidate("war");
+        client.getPipeline("war");
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testGetPipeline_EvictsLeastRecentlyUsed() throws Exception {
+        final PipelineCache cache = new PipelineCache(PipelineCache.DEFAULT_TTL, 1);
+        final DirectToHerokuClient client = server.newClientBuilder().setPipelineCache(cache).build();
+
+        client.getPipeline("war");
+        client.getPipeline("fatjar");
+        client.getPipeline("war");
+
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testGetPipelineNames_Cached() throws Exception {
+        final PipelineCache cache = new PipelineCache();
+        final DirectToHerokuClient client = server.newClientBuilder().setPipelineCache(cache).build();
+
+        assertTrue(client.getPipelineNames().contains("war"));
+        assertTrue(client.getPipelineNames().contains("fatjar"));
+        assertEquals(1, server.getMetadataRequestCount());
+    }
+
+    @Test
+    public void testGetPipelineNames_CachedNamesCannotBeModified() throws Exception {
+        final PipelineCache cache = new PipelineCache();
+        final DirectToHerokuClient client = server.newClientBuilder().setPipelineCache(cache).build();
+
+        try {
+            client.getPipelineNames().remove("war");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertTrue(client.getPipelineNames().contains("war"));
+    }
+
+    @Test
+    public void testGetPipeline_CachedManifestCannotBeModified() throws Exception {
+        final PipelineCache cache = new PipelineCache();
+        final DirectToHerokuClient client = server.newClientBuilder().setPipelineCache(cache).build();
+
+        try {
+            client.getPipeline("war").getManifest().getRequiredFileInfo().remove("war");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertTrue(client.getPipeline("war").getManifest().getRequiredFileInfo().containsKey("war"));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testVerify_SharesCachedPipeline() throws Exception {
+        final PipelineCache cache = new PipelineCache();
+        final DirectToHerokuClient client = server.newClientBuilder().setPipelineCache(cache).build();
+        final Map<String, File> files = Collections.singletonMap("war", new File(ClassLoader.getSystemResource("sample-war.war").getPath()));
+
+        for (int i = 0; i < 5; i++) {
+            client.verify("war", "app-" + i, files);
+        }
+        assertEquals(1, server.getMetadataRequestCount());
+    }
+
+    @Test
+    public void testGetPipeline_WithoutCache() throws Exception {
+        final DirectToHerokuClient client = server.newClientBuilder().build();
+        client.getPipeline("war");
+        client.getPipeline("war");
+        assertEquals(2, server.getMetadataRequestCount());
+    }
+}
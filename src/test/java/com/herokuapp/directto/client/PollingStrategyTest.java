@@ -0,0 +1,118 @@
+package com.herokuapp.directto.client;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Brainard
+ */
+public class PollingStrategyTest {
+
+    @Test
+    public void testExponential_Capped() throws Exception {
+        final PollingStrategy strategy = new ExponentialPollingStrategy(1000, 2, 5000);
+        assertEquals(2000, strategy.nextInterval(1, 0));
+        assertEquals(4000, strategy.nextInterval(2, 2000));
+        assertEquals(5000, strategy.nextInterval(3, 4000));
+        assertEquals(5000, strategy.nextInterval(50, 5000));
+    }
+
+    @Test
+    public void testExponential_DefaultMatchesPollingSettings() throws Exception {
+        final PollingStrategy strategy = new DeployRequest("war", "app", null)
+                .setPollingIntervalInit(100)
+                .setPollingIntervalMultiplier(3)
+                .setPollingIntervalMax(1000)
+                .getPollingStrategy();
+        assertEquals(300, strategy.nextInterval(1, 0));
+        assertEquals(900, strategy.nextInterval(2, 300));
+        assertEquals(1000, strategy.nextInterval(3, 900));
+    }
+
+    @Test
+    public void testDecorrelatedJitter_StaysWithinBounds() throws Exception {
+        final PollingStrategy strategy = new DecorrelatedJitterPollingStrategy(100, 2000, new Random(1));
+        long interval = 0;
+        for (int attempt = 1; attempt < 100; attempt++) {
+            final long next = strategy.nextInterval(attempt, interval);
+            assertTrue(next >= 100);
+            assertTrue(next <= 2000);
+            assertTrue(next <= 3 * Math.max(100, interval));
+            interval = next;
+        }
+    }
+
+    @Test
+    public void testFixedInterval() throws Exception {
+        assertEquals(250, new FixedIntervalPollingStrategy(250).nextInterval(7, 250));
+    }
+
+    @Test
+    public void testParseRetryAfter() throws Exception {
+        assertEquals(-1, PollingSession.parseRetryAfter(null));
+        assertEquals(-1, PollingSession.parseRetryAfter("soon"));
+        assertEquals(3000, PollingSession.parseRetryAfter("3"));
+        assertEquals(0, PollingSession.parseRetryAfter("Thu, 01 Jan 1970 00:00:00 GMT"));
+    }
+
+    @Test
+    public void testDeploy_NoWaitAfterFinalStatus() throws Exception {
+        final DirectToStubServer server = new DirectToStubServer().setBuildPolls(0).start();
+        try {
+            final long start = System.currentTimeMillis();
+            deploy(server, new FixedIntervalPollingStrategy(10000));
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertEquals(1, server.getStatusRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testDeploy_HonorsRetryAfterOnUnavailable() throws Exception {
+        final DirectToStubServer server = new DirectToStubServer().setBuildPolls(0).setUnavailablePolls(2).start();
+        try {
+            final long start = System.currentTimeMillis();
+            deploy(server, new FixedIntervalPollingStrategy(10000));
+            assertTrue("Retry-After: 0 should replace the strategy interval", System.currentTimeMillis() - start < 5000);
+            assertEquals(3, server.getStatusRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testDeploy_TimeoutReportsElapsedTime() throws Exception {
+        final DirectToStubServer server = new DirectToStubServer().setBuildPolls(1000).start();
+        try {
+            deploy(server, new FixedIntervalPollingStrategy(10000), 300);
+        } catch (DeploymentException e) {
+            assertTrue(e.getMessage(), e.getMessage().matches("Polling timed out after \\d+ms"));
+            final long elapsed = Long.parseLong(e.getMessage().replaceAll("\\D", ""));
+            assertTrue(e.getMessage(), elapsed >= 300 && elapsed < 5000);
+            return;
+        } finally {
+            server.stop();
+        }
+        throw new AssertionError("Expected timeout");
+    }
+
+    private static void deploy(DirectToStubServer server, PollingStrategy strategy) {
+        deploy(server, strategy, DeployRequest.DEFAULT_POLLING_TIMEOUT);
+    }
+
+    private static void deploy(DirectToStubServer server, PollingStrategy strategy, long timeout) {
+        final Map<String, File> files = Collections.singletonMap("war", new File(ClassLoader.getSystemResource("sample-war.war").getPath()));
+        final DeployRequest request = new DeployRequest("war", "app", files).setPollingStrategy(strategy).setPollingTimeout(timeout);
+        assertEquals(STATUS_SUCCESS, server.newClientBuilder().build().deploy(request).get(STATUS));
+    }
+}
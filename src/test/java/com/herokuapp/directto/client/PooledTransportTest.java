@@ -0,0 +1,127 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class PooledTransportTest {
+
+    private DirectToStubServer server;
+    private PooledTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        transport = new PooledTransport();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transport.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void testReuse_SequentialCallsShareConnection() throws Exception {
+        final DirectToHerokuClient client = newClient();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(client.getPipelineNames().contains("war"));
+        }
+
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(1, transport.getConnectionsInPool());
+    }
+
+    @Test
+    public void testKeepAlive_BusyConnectionOutlivesKeepAlive() throws Exception {
+        transport.setKeepAlive(300);
+        final DirectToHerokuClient client = newClient();
+        final long end = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < end) {
+            client.getPipelineNames();
+            Thread.sleep(100);
+        }
+
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    public void testKeepAlive_IdleConnectionClosed() throws Exception {
+        transport.setKeepAlive(200);
+        final DirectToHerokuClient client = newClient();
+        client.getPipelineNames();
+        Thread.sleep(400);
+
+        transport.closeIdleConnections();
+        assertEquals(0, transport.getConnectionsInPool());
+        client.getPipelineNames();
+        assertEquals(2, server.getConnectionCount());
+    }
+
+    @Test
+    public void testMaxConnectionsPerRoute_LimitsConcurrentCalls() throws Exception {
+        transport.setMaxConnectionsPerRoute(2);
+        server.setLatency(200);
+        final DirectToHerokuClient client = newClient();
+        final ExecutorService callers = Executors.newFixedThreadPool(6);
+        try {
+            final List<Future<Collection<String>>> calls = new ArrayList<Future<Collection<String>>>();
+            final long start = System.currentTimeMillis();
+            for (int i = 0; i < 6; i++) {
+                calls.add(callers.submit(new Callable<Collection<String>>() {
+                    public Collection<String> call() {
+                        return client.getPipelineNames();
+                    }
+                }));
+            }
+            for (Future<Collection<String>> call : calls) {
+                assertTrue(call.get(5, TimeUnit.SECONDS).contains("war"));
+            }
+
+            assertTrue(System.currentTimeMillis() - start >= 3 * 200);
+            assertEquals(2, server.getConnectionCount());
+            assertEquals(2, transport.getConnectionsInPool());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReadTimeout_FailsStalledCall() throws Exception {
+        transport.setReadTimeout(200);
+        server.stallNextGets(1, 3000);
+        final DirectToHerokuClient client = newClient();
+
+        final long start = System.currentTimeMillis();
+        try {
+            client.getPipelineNames();
+            fail();
+        } catch (ClientHandlerException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertTrue(client.getPipelineNames().contains("war"));
+    }
+
+    private DirectToHerokuClient newClient() {
+        return server.newClientBuilder().setTransport(transport).build();
+    }
+}
@@ -0,0 +1,108 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Map;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class PreflightTest {
+
+    private DirectToStubServer server;
+    private File war;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        war = File.createTempFile("preflight", ".war");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        war.delete();
+    }
+
+    @Test
+    public void testPreflight_RejectsBeforeStreaming() throws Exception {
+        server.rejectUploads("forbidden").setBandwidthLimit(256 * 1024);
+        setSize(war, 64 * 1024 * 1024);
+        assertRejectedEarly(server.newClientBuilder().build());
+    }
+
+    @Test
+    public void testPreflight_RejectsBeforeStreamingOnPooledTransport() throws Exception {
+        server.rejectUploads("forbidden").setBandwidthLimit(256 * 1024);
+        setSize(war, 64 * 1024 * 1024);
+        final PooledTransport transport = new PooledTransport();
+        try {
+            assertRejectedEarly(server.newClientBuilder().setTransport(transport).build());
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    public void testPreflight_AcceptedUploadProceeds() throws Exception {
+        setSize(war, 1024);
+        final Map<String, String> result = server.newClientBuilder().build().deploy(newRequest("allowed").setPreflight(true));
+
+        assertEquals(STATUS_SUCCESS, result.get(STATUS));
+        assertEquals(1, server.getPreflightCount());
+        assertEquals(1, server.getUploadCount("allowed"));
+        assertEquals(1024, server.getReceivedFiles("allowed").get("war").length);
+    }
+
+    @Test
+    public void testNoPreflight_RejectedAfterUpload() throws Exception {
+        server.rejectUploads("forbidden");
+        setSize(war, 1024);
+        try {
+            server.newClientBuilder().build().deploy(newRequest("forbidden"));
+            fail();
+        } catch (DeploymentException e) {
+            assertEquals("Not allowed to deploy to forbidden", e.getMessage());
+        }
+        assertEquals(0, server.getPreflightCount());
+        assertEquals(1, server.getUploadRequestCount());
+    }
+
+    private void assertRejectedEarly(DirectToHerokuClient client) throws Exception {
+        final long start = System.currentTimeMillis();
+        try {
+            client.deploy(newRequest("forbidden").setPreflight(true));
+            fail();
+        } catch (DeploymentException e) {
+            assertEquals("Not allowed to deploy to forbidden", e.getMessage());
+            assertTrue(e.getDetails().contains("Not allowed to deploy to forbidden"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, server.getPreflightCount());
+        assertEquals(0, server.getUploadRequestCount());
+    }
+
+    private DeployRequest newRequest(String appName) {
+        return new DeployRequest("war", appName, Collections.singletonMap("war", war)).setPollingIntervalInit(20);
+    }
+
+    private static void setSize(File file, long size) throws Exception {
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(size);
+        } finally {
+            out.close();
+        }
+    }
+}
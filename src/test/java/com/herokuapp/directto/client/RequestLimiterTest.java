@@ -0,0 +1,121 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.EventSubscription.Event;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static com.herokuapp.directto.client.EventSubscription.Event.UPLOAD_END;
+import static com.herokuapp.directto.client.EventSubscription.Event.UPLOAD_START;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Brainard
+ */
+public class RequestLimiterTest {
+
+    private final Map<String, File> files = Collections.singletonMap("war", new File(ClassLoader.getSystemResource("sample-war.war").getPath()));
+    private DirectToStubServer server;
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testReserveRequest_PacesBeyondBurst() throws Exception {
+        final RequestLimiter limiter = new RequestLimiter(1, 10, 2);
+
+        assertEquals(0, limiter.reserveRequest());
+        assertEquals(0, limiter.reserveRequest());
+        final long third = limiter.reserveRequest();
+        final long fourth = limiter.reserveRequest();
+
+        assertTrue(third > 50 && third <= 100);
+        assertTrue(fourth > 150 && fourth <= 200);
+        assertEquals(2, limiter.getRequestQueueDepth());
+        assertEquals(4, limiter.getRequestWaitTime().getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLimits_MustBePositive() throws Exception {
+        new RequestLimiter(0, 10);
+    }
+
+    @Test
+    public void testDeployAsync_UploadsQueueAcrossClients() throws Exception {
+        server = new DirectToStubServer().setBandwidthLimit(256 * 1024).start();
+        final RequestLimiter limiter = new RequestLimiter(1, 1000);
+        final AtomicInteger activeUploads = new AtomicInteger();
+        final AtomicInteger maxActiveUploads = new AtomicInteger();
+        final EventSubscription subscription = new EventSubscription().subscribe(EnumSet.of(UPLOAD_START, UPLOAD_END), new EventSubscription.Subscriber() {
+            public void handle(Event event) {
+                if (event == UPLOAD_START) {
+                    final int active = activeUploads.incrementAndGet();
+                    synchronized (maxActiveUploads) {
+                        maxActiveUploads.set(Math.max(active, maxActiveUploads.get()));
+                    }
+                } else {
+                    activeUploads.decrementAndGet();
+                }
+            }
+        });
+
+        final List<DeployFuture> futures = new ArrayList<DeployFuture>();
+        for (int i = 0; i < 4; i++) {
+            final DirectToHerokuClient client = server.newClientBuilder().setRequestLimiter(limiter).build();
+            futures.add(client.deployAsync(new DeployRequest("war", "app" + i, files)
+                    .setEventSubscription(subscription)
+                    .setPollingStrategy(new FixedIntervalPollingStrategy(10))));
+        }
+        for (DeployFuture future : futures) {
+            assertEquals(STATUS_SUCCESS, future.get().get(STATUS));
+        }
+
+        assertEquals(1, maxActiveUploads.get());
+        assertEquals(4, limiter.getUploadWaitTime().getCount());
+        assertEquals(0, limiter.getActiveUploads());
+        assertEquals(0, limiter.getUploadQueueDepth());
+    }
+
+    @Test
+    public void testDeploy_PollsArePaced() throws Exception {
+        server = new DirectToStubServer().setBuildPolls(4).start();
+        final RequestLimiter limiter = new RequestLimiter(1, 20, 1);
+        final DirectToHerokuClient client = server.newClientBuilder().setRequestLimiter(limiter).build();
+
+        final long start = System.currentTimeMillis();
+        client.deploy(new DeployRequest("war", "app", files).setPollingStrategy(new FixedIntervalPollingStrategy(1)));
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(5, server.getStatusRequestCount());
+        assertTrue("elapsed " + elapsed, elapsed >= 4 * 50 - 20);
+        assertEquals(5, limiter.getRequestWaitTime().getCount());
+    }
+
+    @Test
+    public void testDeployAsync_PollsArePaced() throws Exception {
+        server = new DirectToStubServer().setBuildPolls(4).start();
+        final RequestLimiter limiter = new RequestLimiter(1, 20, 1);
+        final DirectToHerokuClient client = server.newClientBuilder().setRequestLimiter(limiter).build();
+
+        final long start = System.currentTimeMillis();
+        client.deployAsync(new DeployRequest("war", "app", files).setPollingStrategy(new FixedIntervalPollingStrategy(1))).get();
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(5, server.getStatusRequestCount());
+        assertTrue("elapsed " + elapsed, elapsed >= 4 * 50 - 20);
+    }
+}
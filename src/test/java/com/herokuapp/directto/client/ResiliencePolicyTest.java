@@ -0,0 +1,263 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.herokuapp.directto.client.ClientMetrics.Call;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class ResiliencePolicyTest {
+
+    private DirectToStubServer server;
+    private File war;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        war = File.createTempFile("resilience", ".war");
+        final OutputStream out = new FileOutputStream(war);
+        try {
+            out.write("resilient war".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        war.delete();
+    }
+
+    @Test
+    public void testRetry_TransientMetadataFailures() throws Exception {
+        final DirectToHerokuClient client = server.newClientBuilder()
+                .setResiliencePolicy(new ResiliencePolicy().setRetryBackoff(10))
+                .build();
+        server.failNextGets(2);
+
+        assertTrue(client.getPipelineNames().contains("war"));
+        assertEquals(2, server.getInjectedErrorCount());
+        assertEquals(1, server.getMetadataRequestCount());
+        assertEquals(2, client.getMetrics().getRetries());
+    }
+
+    @Test
+    public void testRetry_TransientPollFailures() throws Exception {
+        server.setBuildPolls(2);
+        final DeployRequest request = new DeployRequest("war", "resilient-app", Collections.singletonMap("war", war)).setPollingIntervalInit(20);
+
+        server.failNextGets(1);
+        try {
+            server.newClientBuilder().build().deploy(request);
+            fail();
+        } catch (UniformInterfaceException e) {
+            assertEquals(500, e.getResponse().getStatus());
+        }
+
+        server.failNextGets(2);
+        final DirectToHerokuClient client = server.newClientBuilder()
+                .setResiliencePolicy(new ResiliencePolicy().setRetryBackoff(10))
+                .build();
+        assertEquals(STATUS_SUCCESS, client.deploy(request).get(STATUS));
+        assertEquals(2, server.getUploadCount("resilient-app"));
+    }
+
+    @Test
+    public void testRetry_NotSentPastDeadline() throws Exception {
+        final DirectToHerokuClient client = server.newClientBuilder()
+                .setResiliencePolicy(new ResiliencePolicy().setRetryBackoff(5000))
+                .build();
+        server.failNextGets(100);
+
+        try {
+            client.deploy(newRequest().setDeployTimeout(500));
+            fail();
+        } catch (DeploymentException e) {
+            assertTrue(e.getMessage().contains("timed out"));
+        }
+        assertEquals(1, server.getInjectedErrorCount());
+    }
+
+    @Test
+    public void testRetry_AsyncPollRescheduledWithoutSleeping() throws Exception {
+        final ThreadPoolExecutor pollingWorkers = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        try {
+            final DirectToHerokuClient client = server.newClientBuilder()
+                    .setPollingExecutor(pollingWorkers)
+                    .setResiliencePolicy(new ResiliencePolicy().setRetryBackoff(2000))
+                    .build();
+            server.failNextGets(1);
+            final DeployFuture future = client.deployAsync(newRequest());
+
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (server.getInjectedErrorCount() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200); // within the backoff of at least one second
+            assertEquals(0, pollingWorkers.getActiveCount());
+            assertEquals(STATUS_SUCCESS, future.get(5, TimeUnit.SECONDS).get(STATUS));
+            assertEquals(1, client.getMetrics().getRetries());
+        } finally {
+            pollingWorkers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLimiter_ChargedForRetriesAndHedges() throws Exception {
+        final RequestLimiter limiter = new RequestLimiter(1, 1000, 100);
+        final ResiliencePolicy policy = new ResiliencePolicy().setRetryBackoff(10).setMinHedgeDelay(50);
+        final DirectToHerokuClient client = server.newClientBuilder()
+                .setRequestLimiter(limiter)
+                .setResiliencePolicy(policy)
+                .build();
+
+        server.failNextGets(2);
+        assertTrue(client.getPipelineNames().contains("war"));
+        assertEquals(3, limiter.getRequestWaitTime().getCount());
+
+        for (int i = 0; i < ResiliencePolicy.MIN_HEDGE_SAMPLES; i++) {
+            client.getPipelineNames();
+        }
+        final long requests = limiter.getRequestWaitTime().getCount();
+        server.stallNextGets(1, 3000);
+        assertTrue(client.getPipelineNames().contains("war"));
+        assertEquals(1, policy.getHedges());
+        assertEquals(requests + 2, limiter.getRequestWaitTime().getCount());
+    }
+
+    @Test
+    public void testHedge_CancelClosesBothAttempts() throws Exception {
+        final ResiliencePolicy policy = new ResiliencePolicy().setMinHedgeDelay(50);
+        for (int i = 0; i < ResiliencePolicy.MIN_HEDGE_SAMPLES; i++) {
+            policy.recordLatency(Call.STATUS, 1000);
+        }
+        final PooledTransport transport = new PooledTransport();
+        try {
+            final DirectToHerokuClient client = server.newClientBuilder().setTransport(transport).setResiliencePolicy(policy).build();
+            server.setBuildDuration(10000).stallNextGets(100, 10000);
+            final DeployFuture future = client.deployAsync(newRequest());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (policy.getHedges() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200); // both attempts are waiting on a stalled poll
+            assertEquals(2, transport.getConnectionsInPool());
+
+            future.cancel(true);
+            deadline = System.currentTimeMillis() + 2000;
+            while (transport.getConnectionsInPool() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, transport.getConnectionsInPool());
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    public void testCircuit_FailsFastAndRecovers() throws Exception {
+        final ResiliencePolicy policy = new ResiliencePolicy()
+                .setMaxRetries(0)
+                .setCircuitFailureThreshold(3)
+                .setCircuitOpenTime(200);
+        final DirectToHerokuClient client = server.newClientBuilder().setResiliencePolicy(policy).build();
+
+        server.failNextGets(100);
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.getPipelineNames();
+                fail();
+            } catch (UniformInterfaceException e) {
+                assertEquals(500, e.getResponse().getStatus());
+            }
+        }
+        assertEquals(ResiliencePolicy.CircuitState.OPEN, policy.getCircuitState());
+
+        try {
+            client.getPipelineNames();
+            fail();
+        } catch (ClientHandlerException e) {
+            assertTrue(e.getMessage().contains("circuit"));
+        }
+        assertEquals(3, server.getInjectedErrorCount());
+        assertEquals(1, policy.getRejections());
+
+        server.failNextGets(0);
+        Thread.sleep(250);
+        assertTrue(client.getPipelineNames().contains("war"));
+        assertEquals(ResiliencePolicy.CircuitState.CLOSED, policy.getCircuitState());
+    }
+
+    @Test
+    public void testCircuit_ExpiredDeployNotCountedAsFailure() throws Exception {
+        final ResiliencePolicy policy = new ResiliencePolicy()
+                .setMaxRetries(0)
+                .setCircuitFailureThreshold(1)
+                .setCircuitOpenTime(100);
+        final DirectToHerokuClient client = server.newClientBuilder().setResiliencePolicy(policy).build();
+
+        server.failNextGets(1);
+        try {
+            client.getPipelineNames();
+            fail();
+        } catch (UniformInterfaceException e) {
+            assertEquals(500, e.getResponse().getStatus());
+        }
+        assertEquals(ResiliencePolicy.CircuitState.OPEN, policy.getCircuitState());
+        Thread.sleep(150);
+
+        server.setBuildDuration(10000).stallNextGets(1, 5000);
+        try {
+            client.deploy(newRequest().setDeployTimeout(500));
+            fail();
+        } catch (DeploymentException e) {
+            assertTrue(e.getMessage().contains("timed out"));
+        }
+
+        server.stallNextGets(0, 0);
+        assertTrue(client.getPipelineNames().contains("war"));
+        assertEquals(ResiliencePolicy.CircuitState.CLOSED, policy.getCircuitState());
+        assertEquals(0, policy.getRejections());
+    }
+
+    @Test
+    public void testHedge_SlowCallAnsweredByDuplicate() throws Exception {
+        final ResiliencePolicy policy = new ResiliencePolicy().setMinHedgeDelay(50);
+        final DirectToHerokuClient client = server.newClientBuilder().setResiliencePolicy(policy).build();
+        for (int i = 0; i < ResiliencePolicy.MIN_HEDGE_SAMPLES; i++) {
+            client.getPipelineNames();
+        }
+        assertEquals(0, policy.getHedges());
+
+        server.stallNextGets(1, 3000);
+        final long start = System.currentTimeMillis();
+        assertTrue(client.getPipelineNames().contains("war"));
+
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertEquals(1, policy.getHedges());
+    }
+
+    private DeployRequest newRequest() {
+        return new DeployRequest("war", "resilient-app", Collections.singletonMap("war", war)).setPollingIntervalInit(20);
+    }
+}
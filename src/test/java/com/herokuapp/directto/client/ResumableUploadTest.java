@@ -0,0 +1,126 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Resumable chunked uploads against the chunk protocol of {@link DirectToStubServer}.
+ *
+ * @author Ryan Brainard
+ */
+public class ResumableUploadTest {
+
+    private static final String APP_NAME = "resumable-app";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNK_COUNT = 20;
+
+    private DirectToStubServer server;
+    private DirectToHerokuClient client;
+    private byte[] warContents;
+    private Map<String, File> files;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        client = server.newClientBuilder().build();
+        warContents = new byte[CHUNK_SIZE * (CHUNK_COUNT - 1) + 123];
+        new Random(7).nextBytes(warContents);
+        files = new HashMap<String, File>();
+        files.put("war", writeTempFile(warContents));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        files.get("war").delete();
+    }
+
+    @Test
+    public void testDeploy_Chunked() throws Exception {
+        assertEquals(STATUS_SUCCESS, client.deploy(newRequest()).get(STATUS));
+        assertReceived();
+        assertEquals(CHUNK_COUNT, server.getStoredChunkCount());
+    }
+
+    @Test
+    public void testDeploy_ChunkedWithGzip() throws Exception {
+        assertEquals(STATUS_SUCCESS, client.deploy(newRequest().setContentEncoding("war", ContentCodecs.GZIP)).get(STATUS));
+        assertReceived();
+    }
+
+    @Test
+    public void testDeploy_RetriesFailedChunks() throws Exception {
+        server.failNextChunkPuts(3);
+        assertEquals(STATUS_SUCCESS, client.deploy(newRequest().setUploadChunkRetries(3)).get(STATUS));
+        assertReceived();
+        assertEquals(CHUNK_COUNT, server.getStoredChunkCount());
+    }
+
+    @Test
+    public void testDeploy_ResumesFromLastAcknowledgedChunk() throws Exception {
+        server.setMaxStoredChunks(CHUNK_COUNT / 2);
+        String uploadUrl = null;
+        try {
+            client.deploy(newRequest().setUploadChunkRetries(1));
+            fail("Upload should fail while chunks are rejected");
+        } catch (ResumableUploadException e) {
+            uploadUrl = e.getUploadUrl();
+        }
+        assertNotNull(uploadUrl);
+        assertEquals(CHUNK_COUNT / 2, server.getStoredChunkCount());
+
+        server.setMaxStoredChunks(-1);
+        assertEquals(STATUS_SUCCESS, client.deploy(newRequest().setResumeUploadUrl(uploadUrl)).get(STATUS));
+        assertReceived();
+        assertEquals("Acknowledged chunks must not be sent again", CHUNK_COUNT, server.getStoredChunkCount());
+    }
+
+    @Test
+    public void testDeploy_UnknownUpload() throws Exception {
+        try {
+            client.deploy(newRequest().setResumeUploadUrl("/uploads/999"));
+            fail();
+        } catch (DeploymentException e) {
+            assertEquals("Upload not found", e.getMessage());
+        }
+    }
+
+    private DeployRequest newRequest() {
+        return new DeployRequest("war", APP_NAME, files)
+                .setResumableUpload(true)
+                .setUploadChunkSize(CHUNK_SIZE)
+                .setUploadChunkRetryBackoff(1)
+                .setPollingIntervalInit(10);
+    }
+
+    private void assertReceived() {
+        assertTrue("Received contents must match", Arrays.equals(warContents, server.getReceivedFiles(APP_NAME).get("war")));
+    }
+
+    private static File writeTempFile(byte[] contents) throws IOException {
+        final File file = File.createTempFile("resumable", ".war");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
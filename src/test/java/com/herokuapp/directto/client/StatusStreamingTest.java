@@ -0,0 +1,121 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Brainard
+ */
+public class StatusStreamingTest {
+
+    private final Map<String, File> files = Collections.singletonMap("war", new File(ClassLoader.getSystemResource("sample-war.war").getPath()));
+    private DirectToStubServer server;
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testDeploy_StreamedStatusCompletesWithoutPolling() throws Exception {
+        server = new DirectToStubServer().setStatusStreaming(true).setBuildPolls(5).start();
+
+        final long start = System.currentTimeMillis();
+        final Map<String, String> result = server.newClientBuilder().build().deploy(newRequest());
+
+        assertEquals(STATUS_SUCCESS, result.get(STATUS));
+        assertEquals("Deployed", result.get("message"));
+        assertEquals(1, server.getStatusRequestCount());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testDeployAsync_StreamedStatus() throws Exception {
+        server = new DirectToStubServer().setStatusStreaming(true).setBuildPolls(5).start();
+
+        assertEquals(STATUS_SUCCESS, server.newClientBuilder().build().deployAsync(newRequest()).get().get(STATUS));
+        assertEquals(1, server.getStatusRequestCount());
+    }
+
+    @Test
+    public void testDeploy_FallsBackToPollingWithoutServerSupport() throws Exception {
+        server = new DirectToStubServer().setStatusStreaming(false).setBuildPolls(2).start();
+
+        final DeployRequest request = newRequest().setPollingStrategy(new FixedIntervalPollingStrategy(10));
+        assertEquals(STATUS_SUCCESS, server.newClientBuilder().build().deploy(request).get(STATUS));
+        assertEquals(3, server.getStatusRequestCount());
+    }
+
+    @Test
+    public void testDeploy_SilentStreamClosedAtPollingTimeout() throws Exception {
+        server = new DirectToStubServer().setStatusStreaming(true).setSilentStreams(true).start();
+        assertClosedAtPollingTimeout(server.newClientBuilder().build());
+    }
+
+    @Test
+    public void testDeploy_SilentStreamClosedAtPollingTimeoutOnPooledTransport() throws Exception {
+        server = new DirectToStubServer().setStatusStreaming(true).setSilentStreams(true).start();
+        final PooledTransport transport = new PooledTransport();
+        try {
+            assertClosedAtPollingTimeout(server.newClientBuilder().setTransport(transport).build());
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeployAsync_SilentStreamClosedAtDeadline() throws Exception {
+        server = new DirectToStubServer().setStatusStreaming(true).setSilentStreams(true).start();
+        final ExecutorService uploadExecutor = Executors.newSingleThreadExecutor();
+        try {
+            final DirectToHerokuClient client = server.newClientBuilder().setUploadExecutor(uploadExecutor).build();
+            final long start = System.currentTimeMillis();
+            try {
+                client.deployAsync(newRequest().setDeployTimeout(300)).get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals("Deploy timed out after 300ms", e.getCause().getMessage());
+            }
+            assertTrue(System.currentTimeMillis() - start < 2000);
+
+            uploadExecutor.submit(new Runnable() {
+                public void run() {
+                }
+            }).get(2, TimeUnit.SECONDS);
+        } finally {
+            uploadExecutor.shutdownNow();
+        }
+    }
+
+    private void assertClosedAtPollingTimeout(DirectToHerokuClient client) {
+        final long start = System.currentTimeMillis();
+        try {
+            client.deploy(newRequest().setPollingTimeout(300));
+            fail();
+        } catch (DeploymentException e) {
+            assertTrue(e.getMessage().startsWith("Polling timed out"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, server.getStatusRequestCount());
+    }
+
+    private DeployRequest newRequest() {
+        return new DeployRequest("war", "app", files)
+                .setStatusStreaming(true)
+                .setPollingStrategy(new FixedIntervalPollingStrategy(10000));
+    }
+}
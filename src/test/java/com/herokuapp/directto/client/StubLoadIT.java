@@ -0,0 +1,129 @@
+package com.herokuapp.directto.client;
+
+import com.herokuapp.directto.client.ClientMetrics.Phase;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives many concurrent deploys against {@link DirectToStubServer} with simulated latency, bandwidth and build time,
+ * and reports throughput and latency percentiles. Needs no credentials; run with {@code mvn test -Dtest=StubLoadIT}.
+ * Size the run with the {@code load.deploys}, {@code load.fileSize}, {@code load.latency}, {@code load.bandwidth}
+ * and {@code load.buildDuration} system properties.
+ *
+ * @author Ryan Brainard
+ */
+public class StubLoadIT {
+
+    private static final int DEPLOYS = Integer.getInteger("load.deploys", 300);
+    private static final int FILE_SIZE = Integer.getInteger("load.fileSize", 256 * 1024);
+    private static final long LATENCY = Long.getLong("load.latency", 20);
+    private static final long BANDWIDTH = Long.getLong("load.bandwidth", 2 * 1024 * 1024);
+    private static final long BUILD_DURATION = Long.getLong("load.buildDuration", 500);
+
+    private DirectToStubServer server;
+    private File war;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer()
+                .setDiscardUploads(true)
+                .setLatency(LATENCY)
+                .setBandwidthLimit(BANDWIDTH)
+                .setBuildDuration(BUILD_DURATION)
+                .setBuildPolls(0)
+                .start();
+        war = File.createTempFile("load-test", ".war");
+        final RandomAccessFile contents = new RandomAccessFile(war, "rw");
+        contents.setLength(FILE_SIZE);
+        contents.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        war.delete();
+    }
+
+    @Test
+    public void testConcurrentDeploys() throws Exception {
+        final LoadResult result = runLoad(server.newClientBuilder().build());
+
+        assertEquals(DEPLOYS, result.successes);
+    }
+
+    @Test
+    public void testConcurrentDeploys_WithInjectedErrors() throws Exception {
+        server.setErrorRate(0.02);
+
+        final LoadResult result = runLoad(server.newClientBuilder().build());
+
+        assertEquals(DEPLOYS, result.successes + result.failures.size());
+        assertTrue(result.failures.size() <= server.getInjectedErrorCount());
+        for (Throwable failure : result.failures) {
+            assertTrue(String.valueOf(failure), failure instanceof DeploymentException || failure instanceof UniformInterfaceException);
+        }
+    }
+
+    private LoadResult runLoad(DirectToHerokuClient client) throws InterruptedException {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final List<DeployFuture> futures = new ArrayList<DeployFuture>(DEPLOYS);
+        final long start = System.nanoTime();
+        for (int i = 0; i < DEPLOYS; i++) {
+            final long deployStart = System.nanoTime();
+            final DeployRequest request = new DeployRequest("war", "load-" + i, Collections.singletonMap("war", war))
+                    .setPollingStrategy(new DecorrelatedJitterPollingStrategy(100, 1000));
+            futures.add(client.deployAsync(request).addListener(new Runnable() {
+                public void run() {
+                    latencies.record((System.nanoTime() - deployStart) / 1000);
+                }
+            }));
+        }
+
+        final LoadResult result = new LoadResult();
+        for (DeployFuture future : futures) {
+            try {
+                final Map<String, String> deployResult = future.get();
+                assertEquals(STATUS_SUCCESS, deployResult.get(STATUS));
+                result.successes++;
+            } catch (ExecutionException e) {
+                result.failures.add(e.getCause());
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d deploys of %d bytes in %.2fs: %.1f deploys/s, %.2f MB/s uploaded, %d failed%n",
+                DEPLOYS, FILE_SIZE, seconds, DEPLOYS / seconds, (double) result.successes * FILE_SIZE / seconds / (1024 * 1024),
+                result.failures.size());
+        System.out.println("  deploy latency:  " + millis(latencies));
+        final ClientMetrics metrics = client.getMetrics();
+        for (Phase phase : new Phase[]{Phase.UPLOAD, Phase.FIRST_POLL, Phase.POLLING}) {
+            System.out.println("  " + (phase.name().toLowerCase() + ":                ").substring(0, 16) + millis(metrics.getPhaseLatency(phase)));
+        }
+        return result;
+    }
+
+    private static String millis(LatencyHistogram histogram) {
+        return String.format("p50=%dms p90=%dms p99=%dms max=%dms", histogram.getPercentile(50) / 1000,
+                histogram.getPercentile(90) / 1000, histogram.getPercentile(99) / 1000, histogram.getMax() / 1000);
+    }
+
+    private static final class LoadResult {
+        int successes;
+        final List<Throwable> failures = new ArrayList<Throwable>();
+    }
+}
@@ -0,0 +1,149 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Offline verification tests against {@link DirectToStubServer}
+ *
+ * @author Ryan Brainard
+ */
+public class VerificationTest {
+
+    private DirectToStubServer server;
+    private DirectToHerokuClient client;
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        client = server.newClientBuilder().build();
+        dir = File.createTempFile("verify", "dir");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testVerify_SameFileThroughRelativePath() throws Exception {
+        final File war = createFile("app.war", "war");
+        final Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put("targz", war);
+        files.put("procfile", new File(new File(dir, "sub/.."), "app.war"));
+
+        assertProblems(files, "All files must be unique");
+    }
+
+    @Test
+    public void testVerify_CollectsPipelineAndFileProblemsTogether() throws Exception {
+        final Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put("war", new File(dir, "missing.war"));
+
+        final VerificationException e = verifyExpectingProblems("BAD_PIPELINE_NAME", files);
+        assertEquals("Invalid pipeline name: BAD_PIPELINE_NAME", e.getMessages().get(0));
+        assertTrue(e.getMessages().contains("File not found for: war (" + new File(dir, "missing.war") + ")"));
+    }
+
+    @Test
+    public void testVerify_MissingProcfileIsReportedNotThrown() throws Exception {
+        final Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put("targz", createFile("app.tar.gz", "tgz"));
+        files.put("procfile", new File(dir, "Procfile"));
+
+        assertProblems(files, "File not found for: procfile (" + new File(dir, "Procfile") + ")");
+    }
+
+    @Test
+    public void testVerify_EmptyProcfile() throws Exception {
+        final Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put("targz", createFile("app.tar.gz", "tgz"));
+        files.put("procfile", createFile("Procfile", ""));
+
+        assertProblems(files, "Procfile must not be empty");
+    }
+
+    @Test
+    public void testVerify_LargeFileMapCheckedInBatches() throws Exception {
+        final Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put("war", createFile("app.war", "war"));
+        for (int i = 0; i < FileChecks.BATCH_SIZE * 3 + 1; i++) {
+            files.put("extra" + i, i % 10 == 0 ? new File(dir, "missing" + i) : createFile("extra" + i, "x"));
+        }
+
+        final VerificationException e = verifyExpectingProblems("war", files);
+        assertEquals(5, e.getMessages().size());
+        assertEquals("File not found for: extra0 (" + new File(dir, "missing0") + ")", e.getMessages().get(0));
+    }
+
+    @Test
+    public void testVerify_FromTaskOnBusyUploadExecutor() throws Exception {
+        final ExecutorService uploads = Executors.newSingleThreadExecutor();
+        try {
+            final DirectToHerokuClient client = server.newClientBuilder().setUploadExecutor(uploads).build();
+            final Map<String, File> files = new LinkedHashMap<String, File>();
+            files.put("war", createFile("app.war", "war"));
+            for (int i = 0; i < FileChecks.BATCH_SIZE * 2; i++) {
+                files.put("extra" + i, createFile("extra" + i, "x"));
+            }
+
+            final Boolean verified = uploads.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    client.verify("war", "app", files);
+                    return true;
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertTrue(verified);
+        } finally {
+            uploads.shutdownNow();
+        }
+    }
+
+    private void assertProblems(Map<String, File> files, String expected) {
+        final VerificationException e = verifyExpectingProblems("targz", files);
+        assertTrue(e.getMessages() + " should contain " + expected, e.getMessages().contains(expected));
+    }
+
+    private VerificationException verifyExpectingProblems(String pipelineName, Map<String, File> files) {
+        try {
+            client.verify(pipelineName, "app", files);
+        } catch (VerificationException e) {
+            return e;
+        }
+        fail("Expected verification problems");
+        return null;
+    }
+
+    private File createFile(String name, String contents) throws IOException {
+        final File file = new File(dir, name);
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,212 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.ClientHandler;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.RequestWriter;
+import com.sun.jersey.core.header.InBoundHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Sends Jersey requests with a JDK {@link HttpClient}.
+ * <p/>
+ * Small entities are serialized up front. Entities of unknown or large size, such as multipart uploads, are written
+ * by a separate task into a pipe that the {@link HttpClient} drains as the connection accepts data.
+ * Requests are sent asynchronously so that a cancelled deploy can abandon the exchange it is waiting on.
+ * <p/>
+ * Cancelling a deploy cancels the exchange it is waiting on, and once the response has arrived, closes its body
+ * instead, so reading a slow body or status stream stops too. Cancelling the exchange aborts the request on the wire
+ * only from Java 16; on Java 11 to 15 it just stops the wait, and a streamed upload is aborted by closing its pipe,
+ * which fails the {@link HttpClient}'s next read of the body.
+ *
+ * @author Ryan Brainard
+ */
+final class JdkHttpClientHandler extends RequestWriter implements ClientHandler {
+
+    private static final int BUFFERED_ENTITY_MAX = 64 * 1024;
+    private static final int PIPE_SIZE = 64 * 1024;
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "content-length", "date", "expect", "from", "host", "origin", "referer", "upgrade", "via", "warning"));
+
+    private final HttpClient httpClient;
+    private final Executor bodyWriterExecutor;
+    private final Duration requestTimeout;
+
+    JdkHttpClientHandler(HttpClient httpClient, Executor bodyWriterExecutor, Duration requestTimeout) {
+        this.httpClient = httpClient;
+        this.bodyWriterExecutor = bodyWriterExecutor;
+        this.requestTimeout = requestTimeout;
+    }
+
+    public ClientResponse handle(ClientRequest clientRequest) throws ClientHandlerException {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(clientRequest.getURI());
+
+        final RequestEntityWriter entityWriter = clientRequest.getEntity() != null ? getRequestEntityWriter(clientRequest) : null;
+        final boolean streamed = entityWriter != null && (entityWriter.getSize() < 0 || entityWriter.getSize() > BUFFERED_ENTITY_MAX);
+        final StreamedBody streamedBody = streamed ? new StreamedBody(entityWriter) : null;
+        request.method(clientRequest.getMethod(), bodyPublisher(entityWriter, streamedBody));
+        if (requestTimeout != null && !streamed) {
+            request.timeout(requestTimeout);
+        }
+
+        for (Map.Entry<String, List<Object>> header : clientRequest.getHeaders().entrySet()) {
+            if (RESTRICTED_HEADERS.contains(header.getKey().toLowerCase())) {
+                continue;
+            }
+            for (Object value : header.getValue()) {
+                request.header(header.getKey(), ClientRequest.getHeaderValue(value));
+            }
+        }
+
+        final CompletableFuture<HttpResponse<InputStream>> exchange = httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (streamedBody != null) {
+            exchange.whenComplete((r, t) -> streamedBody.close());
+        }
+        DeployCancellation.connectionOpened(() -> exchange.cancel(true));
+        final HttpResponse<InputStream> response;
+        try {
+            response = exchange.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = streamedBody != null && streamedBody.failure != null ? streamedBody.failure : e.getCause();
+            throw new ClientHandlerException(cause instanceof IOException ? cause : new IOException(cause));
+        } catch (CancellationException e) {
+            throw new ClientHandlerException(new InterruptedIOException("Request cancelled: " + clientRequest.getURI()));
+        } catch (InterruptedException e) {
+            exchange.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ClientHandlerException(new InterruptedIOException("Interrupted waiting for " + clientRequest.getURI()));
+        }
+
+        DeployCancellation.connectionOpened(response.body());
+
+        final InBoundHeaders headers = new InBoundHeaders();
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            if (!header.getKey().startsWith(":")) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        return new ClientResponse(response.statusCode(), headers, response.body(), getMessageBodyWorkers());
+    }
+
+    private HttpRequest.BodyPublisher bodyPublisher(RequestEntityWriter entityWriter, StreamedBody streamedBody) {
+        if (entityWriter == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        } else if (streamedBody != null) {
+            return HttpRequest.BodyPublishers.ofInputStream(streamedBody::open);
+        }
+
+        final ByteArrayOutputStream entity = new ByteArrayOutputStream();
+        try {
+            entityWriter.writeRequestEntity(entity);
+        } catch (IOException e) {
+            throw new ClientHandlerException(e);
+        }
+        return HttpRequest.BodyPublishers.ofByteArray(entity.toByteArray());
+    }
+
+    /**
+     * Entity written on the body writer executor into a pipe read by the {@link HttpClient}.
+     * A failure while writing is reported to the reader instead of ending the body early.
+     * <p/>
+     * The pipe is closed once the exchange completes, so a writer the {@link HttpClient} stopped reading from, e.g.
+     * because the server answered before reading the whole body, fails instead of blocking with its buffer held.
+     */
+    private final class StreamedBody {
+        private final RequestEntityWriter entityWriter;
+        private volatile IOException failure;
+        private PipedInputStream pipe;
+        private boolean closed;
+
+        StreamedBody(RequestEntityWriter entityWriter) {
+            this.entityWriter = entityWriter;
+        }
+
+        InputStream open() {
+            final PipedInputStream in = new PipedInputStream(PIPE_SIZE) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) throws IOException {
+                    final int read = super.read(b, off, len);
+                    if (read < 0 && failure != null) {
+                        throw failure;
+                    }
+                    return read;
+                }
+            };
+            final PipedOutputStream out;
+            try {
+                out = new PipedOutputStream(in);
+            } catch (IOException e) {
+                throw new ClientHandlerException(e);
+            }
+            synchronized (this) {
+                pipe = in;
+                if (closed) {
+                    close(in);
+                }
+            }
+
+            bodyWriterExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        entityWriter.writeRequestEntity(out);
+                    } catch (IOException e) {
+                        fail(e);
+                    } catch (RuntimeException e) {
+                        fail(new IOException(e));
+                    } finally {
+                        try {
+                            out.close();
+                        } catch (IOException e) {
+                            // reader already gone
+                        }
+                    }
+                }
+            });
+            return in;
+        }
+
+        /**
+         * Records a failure to write the body, unless it was caused by closing the pipe after the exchange completed
+         */
+        private synchronized void fail(IOException e) {
+            if (!closed) {
+                failure = e;
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            if (pipe != null) {
+                close(pipe);
+            }
+        }
+
+        private void close(PipedInputStream in) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // swallow
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.herokuapp.directto.client;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Transport backed by the JDK's {@link HttpClient}, available from Java 11.
+ * <p/>
+ * Metadata and status requests to the same host are multiplexed over a single HTTP/2 connection when the server
+ * supports it, and upload bodies are streamed to the connection as they are written, without buffering.
+ * Each call still blocks its calling thread until the response arrives, which is cheap on virtual threads: with
+ * {@code Executors.newVirtualThreadPerTaskExecutor()} as the client's upload executor on Java 21, thousands of
+ * concurrent deploys need neither a large thread pool nor a large connection pool.
+ *
+ * @author Ryan Brainard
+ */
+public class JdkHttpTransport implements Transport {
+
+    private static final Executor sharedBodyWriterExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("direct-to-body-writer"));
+
+    private HttpClient.Version version = HttpClient.Version.HTTP_2;
+    private Duration connectTimeout;
+    private Duration requestTimeout;
+    private Executor executor;
+    private HttpClient httpClient;
+
+    /**
+     * HTTP version to prefer; {@link HttpClient.Version#HTTP_2} by default, falling back to HTTP/1.1 if the server does not support it
+     */
+    public JdkHttpTransport setVersion(HttpClient.Version version) {
+        this.version = version;
+        return this;
+    }
+
+    /**
+     * @param connectTimeout in milliseconds; 0 for no timeout
+     */
+    public JdkHttpTransport setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout > 0 ? Duration.ofMillis(connectTimeout) : null;
+        return this;
+    }
+
+    /**
+     * Time allowed for each metadata and status request to complete.
+     * Uploads are not subject to it, as their duration depends on their size.
+     *
+     * @param requestTimeout in milliseconds; 0 for no timeout
+     */
+    public JdkHttpTransport setRequestTimeout(int requestTimeout) {
+        this.requestTimeout = requestTimeout > 0 ? Duration.ofMillis(requestTimeout) : null;
+        return this;
+    }
+
+    /**
+     * Executor for the {@link HttpClient}'s asynchronous work and for writing streamed upload bodies,
+     * e.g. a virtual thread per task executor. Defaults to a shared pool of daemon threads.
+     */
+    public JdkHttpTransport setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public Client createClient(ClientConfig config) {
+        final JdkHttpClientHandler handler = new JdkHttpClientHandler(getHttpClient(),
+                executor != null ? executor : sharedBodyWriterExecutor, requestTimeout);
+        final Client client = new Client(handler, config);
+        handler.setMessageBodyWorkers(client.getMessageBodyWorkers());
+        return client;
+    }
+
+    /**
+     * The underlying client, shared by all Jersey clients created by this transport
+     */
+    public synchronized HttpClient getHttpClient() {
+        if (httpClient == null) {
+            final HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(version)
+                    .followRedirects(HttpClient.Redirect.NORMAL);
+            if (connectTimeout != null) {
+                builder.connectTimeout(connectTimeout);
+            }
+            if (executor != null) {
+                builder.executor(executor);
+            }
+            httpClient = builder.build();
+        }
+        return httpClient;
+    }
+}
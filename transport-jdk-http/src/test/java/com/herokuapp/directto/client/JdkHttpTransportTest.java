@@ -0,0 +1,233 @@
+package com.herokuapp.directto.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS;
+import static com.herokuapp.directto.client.DirectToHerokuClient.STATUS_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Deploys through {@link JdkHttpTransport} against {@link DirectToStubServer}.
+ *
+ * @author Ryan Brainard
+ */
+public class JdkHttpTransportTest {
+
+    private DirectToStubServer server;
+    private JdkHttpTransport transport;
+    private byte[] warContents;
+    private Map<String, File> files;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DirectToStubServer().start();
+        transport = new JdkHttpTransport().setConnectTimeout(5000).setRequestTimeout(10000);
+        warContents = new byte[1024 * 1024 + 17];
+        new Random(11).nextBytes(warContents);
+        files = new HashMap<String, File>();
+        files.put("war", writeTempFile(warContents));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        files.get("war").delete();
+    }
+
+    @Test
+    public void testDeploy() throws Exception {
+        final DirectToHerokuClient client = server.newClientBuilder().setTransport(transport).build();
+        assertEquals(STATUS_SUCCESS, client.deploy(newRequest("jdk-app")).get(STATUS));
+        assertReceived("jdk-app");
+    }
+
+    @Test
+    public void testDeploy_Resumable() throws Exception {
+        final DirectToHerokuClient client = server.newClientBuilder().setTransport(transport).build();
+        assertEquals(STATUS_SUCCESS, client.deploy(newRequest("jdk-app").setResumableUpload(true).setUploadChunkSize(128 * 1024)).get(STATUS));
+        assertReceived("jdk-app");
+    }
+
+    @Test
+    public void testDeploy_StreamedStatus() throws Exception {
+        server.setStatusStreaming(true).setBuildPolls(3);
+        final DirectToHerokuClient client = server.newClientBuilder().setTransport(transport).build();
+        assertEquals(STATUS_SUCCESS, client.deploy(newRequest("jdk-app").setStatusStreaming(true)).get(STATUS));
+        assertEquals(1, server.getStatusRequestCount());
+    }
+
+    @Test
+    public void testDeploy_ErrorMessage() throws Exception {
+        final DirectToHerokuClient client = server.newClientBuilder().setTransport(transport).build();
+        try {
+            client.deploy(newRequest("jdk-app").setResumableUpload(true).setResumeUploadUrl("/uploads/999"));
+            fail();
+        } catch (DeploymentException e) {
+            assertEquals("Upload not found", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDeploy_PreflightRejected() throws Exception {
+        server.rejectUploads("jdk-app");
+        final DirectToHerokuClient client = server.newClientBuilder().setTransport(transport).build();
+        try {
+            client.deploy(newRequest("jdk-app").setPreflight(true));
+            fail();
+        } catch (DeploymentException e) {
+            assertEquals("Not allowed to deploy to jdk-app", e.getMessage());
+        }
+        assertEquals(1, server.getPreflightCount());
+        assertEquals(0, server.getUploadRequestCount());
+    }
+
+    @Test
+    public void testDeploy_RejectedWithoutReadingBody() throws Exception {
+        server.rejectUploads("jdk-app").setRejectUnread(true);
+        final File war = File.createTempFile("jdk-http", ".war");
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 64, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        try {
+            setSize(war, 64 * 1024 * 1024);
+            final DirectToHerokuClient client = server.newClientBuilder().setTransport(transport.setExecutor(executor)).build();
+            try {
+                client.deploy(new DeployRequest("war", "jdk-app", Collections.singletonMap("war", war)));
+                fail();
+            } catch (RuntimeException e) {
+                // rejected, or the connection was closed while still sending
+            }
+
+            final long deadline = System.currentTimeMillis() + 3000;
+            while (executor.getActiveCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals("Body writer must not be left blocked", 0, executor.getActiveCount());
+        } finally {
+            executor.shutdownNow();
+            war.delete();
+        }
+    }
+
+    @Test
+    public void testDeploy_SilentStreamClosedAtPollingTimeout() throws Exception {
+        server.setStatusStreaming(true).setSilentStreams(true);
+        final DirectToHerokuClient client = server.newClientBuilder().setTransport(transport).build();
+
+        final long start = System.currentTimeMillis();
+        try {
+            client.deploy(newRequest("jdk-app").setStatusStreaming(true).setPollingTimeout(500));
+            fail();
+        } catch (DeploymentException e) {
+            assertTrue(e.getMessage().startsWith("Polling timed out"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+
+    /**
+     * Cancelling the exchange aborts it only from Java 16; on earlier versions closing the body pipe must do it
+     */
+    @Test
+    public void testCancel_AbortsUploadInProgress() throws Exception {
+        server.setBandwidthLimit(256 * 1024);
+        final File war = File.createTempFile("jdk-http", ".war");
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 64, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        try {
+            setSize(war, 64 * 1024 * 1024);
+            final DirectToHerokuClient client = server.newClientBuilder().setTransport(transport.setExecutor(executor)).build();
+            final DeployFuture future = client.deployAsync(new DeployRequest("war", "jdk-app", Collections.singletonMap("war", war)));
+            Thread.sleep(300);
+            assertTrue(future.cancel(true));
+
+            final long deadline = System.currentTimeMillis() + 3000;
+            while (executor.getActiveCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals("Body writer must stop", 0, executor.getActiveCount());
+            assertEquals(0, server.getUploadCount("jdk-app"));
+        } finally {
+            executor.shutdownNow();
+            war.delete();
+        }
+    }
+
+    @Test
+    public void testDeployAsync_Concurrent() throws Exception {
+        final ExecutorService uploadExecutor = newVirtualThreadExecutor();
+        try {
+            final DirectToHerokuClient client = server.newClientBuilder()
+                    .setTransport(transport.setExecutor(uploadExecutor))
+                    .setUploadExecutor(uploadExecutor)
+                    .build();
+
+            final List<DeployFuture> futures = new ArrayList<DeployFuture>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(client.deployAsync(newRequest("jdk-app-" + i)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(STATUS_SUCCESS, futures.get(i).get().get(STATUS));
+                assertReceived("jdk-app-" + i);
+            }
+        } finally {
+            uploadExecutor.shutdown();
+        }
+    }
+
+    /**
+     * A virtual thread per task executor on Java 21 and later, otherwise a cached thread pool
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private DeployRequest newRequest(String appName) {
+        return new DeployRequest("war", appName, files).setPollingIntervalInit(10);
+    }
+
+    private void assertReceived(String appName) {
+        assertTrue("Received contents must match", Arrays.equals(warContents, server.getReceivedFiles(appName).get("war")));
+    }
+
+    private static void setSize(File file, long size) throws IOException {
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(size);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static File writeTempFile(byte[] contents) throws IOException {
+        final File file = File.createTempFile("jdk-http", ".war");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}